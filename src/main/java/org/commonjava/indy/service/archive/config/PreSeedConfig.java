@@ -29,6 +29,84 @@ public class PreSeedConfig
     @ConfigProperty( name = "storage-dir" )
     public Optional<String> storageDir;
 
+    @ConfigProperty( name = "content-cache-enabled" )
+    public Optional<Boolean> contentCacheEnabled;
+
+    @ConfigProperty( name = "content-cache-max-size-mb" )
+    public Optional<Long> contentCacheMaxSizeMb;
+
+    @ConfigProperty( name = "archive-pipelined" )
+    public Optional<Boolean> archivePipelined;
+
+    @ConfigProperty( name = "archive-incremental" )
+    public Optional<Boolean> archiveIncremental;
+
+    @ConfigProperty( name = "archive-send-file" )
+    public Optional<Boolean> archiveSendFile;
+
+    @ConfigProperty( name = "archive-compression-threads" )
+    public Optional<Integer> archiveCompressionThreads;
+
+    @ConfigProperty( name = "archive-compression-level" )
+    public Optional<Integer> archiveCompressionLevel;
+
+    @ConfigProperty( name = "archive-compression-levels" )
+    public Optional<String> archiveCompressionLevels;
+
+    @ConfigProperty( name = "archive-stored-extensions" )
+    public Optional<String> archiveStoredExtensions;
+
+    @ConfigProperty( name = "archive-default-format" )
+    public Optional<String> archiveDefaultFormat;
+
+    @ConfigProperty( name = "archive-formats" )
+    public Optional<String> archiveFormats;
+
+    @ConfigProperty( name = "archive-transcode-threads" )
+    public Optional<Integer> archiveTranscodeThreads;
+
+    @ConfigProperty( name = "download-engine" )
+    public Optional<String> downloadEngine;
+
+    @ConfigProperty( name = "download-max-concurrency" )
+    public Optional<Integer> downloadMaxConcurrency;
+
+    @ConfigProperty( name = "download-coalescing-enabled" )
+    public Optional<Boolean> downloadCoalescingEnabled;
+
+    @ConfigProperty( name = "generate-max-jobs" )
+    public Optional<Integer> generateMaxJobs;
+
+    @ConfigProperty( name = "generate-queue-size" )
+    public Optional<Integer> generateQueueSize;
+
+    @ConfigProperty( name = "generate-retry-after-seconds" )
+    public Optional<Integer> generateRetryAfterSeconds;
+
+    @ConfigProperty( name = "download-retry-max-attempts" )
+    public Optional<Integer> downloadRetryMaxAttempts;
+
+    @ConfigProperty( name = "download-retry-initial-delay-ms" )
+    public Optional<Long> downloadRetryInitialDelayMs;
+
+    @ConfigProperty( name = "download-retry-max-delay-ms" )
+    public Optional<Long> downloadRetryMaxDelayMs;
+
+    @ConfigProperty( name = "circuit-breaker-window-size" )
+    public Optional<Integer> circuitBreakerWindowSize;
+
+    @ConfigProperty( name = "circuit-breaker-failure-rate" )
+    public Optional<Integer> circuitBreakerFailureRate;
+
+    @ConfigProperty( name = "circuit-breaker-open-seconds" )
+    public Optional<Integer> circuitBreakerOpenSeconds;
+
+    @ConfigProperty( name = "missing-cache-max-entries" )
+    public Optional<Integer> missingCacheMaxEntries;
+
+    @ConfigProperty( name = "missing-cache-ttl-seconds" )
+    public Optional<Long> missingCacheTtlSeconds;
+
     public Optional<String> getMainIndy()
     {
         return mainIndy;
@@ -48,4 +126,264 @@ public class PreSeedConfig
     {
         this.storageDir = storageDir;
     }
+
+    public Optional<Boolean> getContentCacheEnabled()
+    {
+        return contentCacheEnabled;
+    }
+
+    public void setContentCacheEnabled( Optional<Boolean> contentCacheEnabled )
+    {
+        this.contentCacheEnabled = contentCacheEnabled;
+    }
+
+    public Optional<Long> getContentCacheMaxSizeMb()
+    {
+        return contentCacheMaxSizeMb;
+    }
+
+    public void setContentCacheMaxSizeMb( Optional<Long> contentCacheMaxSizeMb )
+    {
+        this.contentCacheMaxSizeMb = contentCacheMaxSizeMb;
+    }
+
+    public Optional<Boolean> getArchivePipelined()
+    {
+        return archivePipelined;
+    }
+
+    public void setArchivePipelined( Optional<Boolean> archivePipelined )
+    {
+        this.archivePipelined = archivePipelined;
+    }
+
+    public Optional<Boolean> getArchiveIncremental()
+    {
+        return archiveIncremental;
+    }
+
+    public void setArchiveIncremental( Optional<Boolean> archiveIncremental )
+    {
+        this.archiveIncremental = archiveIncremental;
+    }
+
+    public Optional<Boolean> getArchiveSendFile()
+    {
+        return archiveSendFile;
+    }
+
+    public void setArchiveSendFile( Optional<Boolean> archiveSendFile )
+    {
+        this.archiveSendFile = archiveSendFile;
+    }
+
+    public Optional<Integer> getArchiveCompressionThreads()
+    {
+        return archiveCompressionThreads;
+    }
+
+    public void setArchiveCompressionThreads( Optional<Integer> archiveCompressionThreads )
+    {
+        this.archiveCompressionThreads = archiveCompressionThreads;
+    }
+
+    public Optional<Integer> getArchiveCompressionLevel()
+    {
+        return archiveCompressionLevel;
+    }
+
+    public void setArchiveCompressionLevel( Optional<Integer> archiveCompressionLevel )
+    {
+        this.archiveCompressionLevel = archiveCompressionLevel;
+    }
+
+    public Optional<String> getArchiveCompressionLevels()
+    {
+        return archiveCompressionLevels;
+    }
+
+    public void setArchiveCompressionLevels( Optional<String> archiveCompressionLevels )
+    {
+        this.archiveCompressionLevels = archiveCompressionLevels;
+    }
+
+    public Optional<String> getArchiveStoredExtensions()
+    {
+        return archiveStoredExtensions;
+    }
+
+    public void setArchiveStoredExtensions( Optional<String> archiveStoredExtensions )
+    {
+        this.archiveStoredExtensions = archiveStoredExtensions;
+    }
+
+    public Optional<String> getArchiveDefaultFormat()
+    {
+        return archiveDefaultFormat;
+    }
+
+    public void setArchiveDefaultFormat( Optional<String> archiveDefaultFormat )
+    {
+        this.archiveDefaultFormat = archiveDefaultFormat;
+    }
+
+    public Optional<String> getArchiveFormats()
+    {
+        return archiveFormats;
+    }
+
+    public void setArchiveFormats( Optional<String> archiveFormats )
+    {
+        this.archiveFormats = archiveFormats;
+    }
+
+    public Optional<Integer> getArchiveTranscodeThreads()
+    {
+        return archiveTranscodeThreads;
+    }
+
+    public void setArchiveTranscodeThreads( Optional<Integer> archiveTranscodeThreads )
+    {
+        this.archiveTranscodeThreads = archiveTranscodeThreads;
+    }
+
+    public Optional<Integer> getGenerateMaxJobs()
+    {
+        return generateMaxJobs;
+    }
+
+    public void setGenerateMaxJobs( Optional<Integer> generateMaxJobs )
+    {
+        this.generateMaxJobs = generateMaxJobs;
+    }
+
+    public Optional<Integer> getGenerateQueueSize()
+    {
+        return generateQueueSize;
+    }
+
+    public void setGenerateQueueSize( Optional<Integer> generateQueueSize )
+    {
+        this.generateQueueSize = generateQueueSize;
+    }
+
+    public Optional<Integer> getGenerateRetryAfterSeconds()
+    {
+        return generateRetryAfterSeconds;
+    }
+
+    public void setGenerateRetryAfterSeconds( Optional<Integer> generateRetryAfterSeconds )
+    {
+        this.generateRetryAfterSeconds = generateRetryAfterSeconds;
+    }
+
+    public Optional<String> getDownloadEngine()
+    {
+        return downloadEngine;
+    }
+
+    public void setDownloadEngine( Optional<String> downloadEngine )
+    {
+        this.downloadEngine = downloadEngine;
+    }
+
+    public Optional<Integer> getDownloadMaxConcurrency()
+    {
+        return downloadMaxConcurrency;
+    }
+
+    public void setDownloadMaxConcurrency( Optional<Integer> downloadMaxConcurrency )
+    {
+        this.downloadMaxConcurrency = downloadMaxConcurrency;
+    }
+
+    public Optional<Boolean> getDownloadCoalescingEnabled()
+    {
+        return downloadCoalescingEnabled;
+    }
+
+    public void setDownloadCoalescingEnabled( Optional<Boolean> downloadCoalescingEnabled )
+    {
+        this.downloadCoalescingEnabled = downloadCoalescingEnabled;
+    }
+
+    public Optional<Integer> getDownloadRetryMaxAttempts()
+    {
+        return downloadRetryMaxAttempts;
+    }
+
+    public void setDownloadRetryMaxAttempts( Optional<Integer> downloadRetryMaxAttempts )
+    {
+        this.downloadRetryMaxAttempts = downloadRetryMaxAttempts;
+    }
+
+    public Optional<Long> getDownloadRetryInitialDelayMs()
+    {
+        return downloadRetryInitialDelayMs;
+    }
+
+    public void setDownloadRetryInitialDelayMs( Optional<Long> downloadRetryInitialDelayMs )
+    {
+        this.downloadRetryInitialDelayMs = downloadRetryInitialDelayMs;
+    }
+
+    public Optional<Long> getDownloadRetryMaxDelayMs()
+    {
+        return downloadRetryMaxDelayMs;
+    }
+
+    public void setDownloadRetryMaxDelayMs( Optional<Long> downloadRetryMaxDelayMs )
+    {
+        this.downloadRetryMaxDelayMs = downloadRetryMaxDelayMs;
+    }
+
+    public Optional<Integer> getCircuitBreakerWindowSize()
+    {
+        return circuitBreakerWindowSize;
+    }
+
+    public void setCircuitBreakerWindowSize( Optional<Integer> circuitBreakerWindowSize )
+    {
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+    }
+
+    public Optional<Integer> getCircuitBreakerFailureRate()
+    {
+        return circuitBreakerFailureRate;
+    }
+
+    public void setCircuitBreakerFailureRate( Optional<Integer> circuitBreakerFailureRate )
+    {
+        this.circuitBreakerFailureRate = circuitBreakerFailureRate;
+    }
+
+    public Optional<Integer> getCircuitBreakerOpenSeconds()
+    {
+        return circuitBreakerOpenSeconds;
+    }
+
+    public void setCircuitBreakerOpenSeconds( Optional<Integer> circuitBreakerOpenSeconds )
+    {
+        this.circuitBreakerOpenSeconds = circuitBreakerOpenSeconds;
+    }
+
+    public Optional<Integer> getMissingCacheMaxEntries()
+    {
+        return missingCacheMaxEntries;
+    }
+
+    public void setMissingCacheMaxEntries( Optional<Integer> missingCacheMaxEntries )
+    {
+        this.missingCacheMaxEntries = missingCacheMaxEntries;
+    }
+
+    public Optional<Long> getMissingCacheTtlSeconds()
+    {
+        return missingCacheTtlSeconds;
+    }
+
+    public void setMissingCacheTtlSeconds( Optional<Long> missingCacheTtlSeconds )
+    {
+        this.missingCacheTtlSeconds = missingCacheTtlSeconds;
+    }
 }
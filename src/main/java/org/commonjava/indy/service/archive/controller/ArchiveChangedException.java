@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+/**
+ * The archive file was replaced, e.g. by a regeneration, between its lookup and the moment it was opened to be served.
+ * Its metadata (size, checksum, last modified) no longer describes the file, so nothing of it is sent.
+ */
+public class ArchiveChangedException
+                extends RuntimeException
+{
+    public ArchiveChangedException( final String buildConfigId )
+    {
+        super( "Archive " + buildConfigId + " changed while it was looked up" );
+    }
+}
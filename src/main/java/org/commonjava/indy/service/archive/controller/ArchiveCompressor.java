@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Prepares archive entries, deflated or stored as the {@link CompressionPolicy} says, on a pool of
+ * {@code pre-seed.archive-compression-threads} threads (the number of cores by default) shared by all generations, so
+ * zipping a build scales with the cores rather than running on the generating thread alone. Each entry is deflated
+ * into its own buffer, the archive writer then only copies the compressed bytes.
+ */
+@ApplicationScoped
+public class ArchiveCompressor
+{
+    private static final String SPOOL_DIR = "/spool/deflate";
+
+    // entries up to this size are deflated into memory, bigger ones into a spool file
+    private static final long IN_MEMORY_LIMIT = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    CompressionPolicy compressionPolicy;
+
+    private ExecutorService executor;
+
+    private int threads;
+
+    private File spoolDir;
+
+    public ArchiveCompressor()
+    {
+    }
+
+    public ArchiveCompressor( PreSeedConfig preSeedConfig, CompressionPolicy compressionPolicy )
+    {
+        this.preSeedConfig = preSeedConfig;
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        threads = Math.max( 1, preSeedConfig.archiveCompressionThreads.orElse(
+                        Runtime.getRuntime().availableProcessors() ) );
+        final AtomicInteger counter = new AtomicInteger( 0 );
+        executor = Executors.newFixedThreadPool( threads, ( final Runnable r ) -> {
+            final Thread t = new Thread( r );
+            t.setName( "Archive-Compress-" + counter.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        spoolDir = new File( String.format( "%s%s", storeDir, SPOOL_DIR ) );
+        logger.info( "Archive compression threads: {}", threads );
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return how many entries a generation should have in compression ahead of its writer, enough to keep all the
+     * threads busy while it copies one
+     */
+    public int getWindow()
+    {
+        return 2 * threads;
+    }
+
+    Future<CompressedEntry> submit( final String name, final File source )
+    {
+        return executor.submit( () -> compress( name, source ) );
+    }
+
+    CompressedEntry compress( final String name, final File source ) throws IOException
+    {
+        if ( compressionPolicy.isStored( name ) )
+        {
+            // only the crc is needed up front, the writer copies the artifact itself
+            return CompressedEntry.stored( name, FileUtils.checksumCRC32( source ), source );
+        }
+
+        final long length = source.length();
+        ByteArrayOutputStream memory = null;
+        File spool = null;
+        OutputStream target;
+        if ( length <= IN_MEMORY_LIMIT )
+        {
+            memory = new ByteArrayOutputStream( (int) Math.max( 32, length / 2 ) );
+            target = memory;
+        }
+        else
+        {
+            spoolDir.mkdirs();
+            spool = new File( spoolDir, UUID.randomUUID().toString() );
+            target = new BufferedOutputStream( new FileOutputStream( spool ), BUFFER_SIZE );
+        }
+
+        final CRC32 crc = new CRC32();
+        // raw deflate, zip entries have no zlib header
+        final Deflater deflater = new Deflater( compressionPolicy.levelFor( name ), true );
+        long size;
+        try (InputStream in = new CheckedInputStream( FileUtils.openInputStream( source ), crc );
+             DeflaterOutputStream out = new DeflaterOutputStream( target, deflater, BUFFER_SIZE ))
+        {
+            size = IOUtils.copyLarge( in, out, new byte[BUFFER_SIZE] );
+        }
+        catch ( final IOException e )
+        {
+            if ( spool != null )
+            {
+                spool.delete();
+            }
+            throw e;
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        return memory != null ?
+                        CompressedEntry.deflated( name, crc.getValue(), size, memory.toByteArray() ) :
+                        CompressedEntry.spooled( name, crc.getValue(), size, spool );
+    }
+}
@@ -16,7 +16,15 @@
 package org.commonjava.indy.service.archive.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -27,9 +35,22 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
+import org.commonjava.indy.service.archive.format.ArchiveFormats;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.commonjava.indy.service.archive.model.ArchiveJob;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.model.ArchiveProgress;
 import org.commonjava.indy.service.archive.model.ArchiveStatus;
+import org.commonjava.indy.service.archive.model.dto.ArchiveResultDTO;
+import org.commonjava.indy.service.archive.model.dto.ArchiveStatusDTO;
 import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.commonjava.indy.service.archive.util.ArtifactVerificationException;
+import org.commonjava.indy.service.archive.util.ChecksumVerifier;
+import org.commonjava.indy.service.archive.util.ContentFingerprint;
 import org.commonjava.indy.service.archive.util.HistoricalContentListReader;
+import org.commonjava.indy.service.archive.util.ZipArchiveWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,25 +58,55 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -65,18 +116,36 @@ public class ArchiveController
 
     public final static String EVENT_GENERATE_ARCHIVE = "generate-archive";
 
+    public final static String DOWNLOAD_ENGINE_POOL = "pool";
+
+    public final static String DOWNLOAD_ENGINE_VIRTUAL = "virtual";
+
+    public final static String DOWNLOAD_ENGINE_REACTIVE = "reactive";
+
+    private final static int DEFAULT_DOWNLOAD_MAX_CONCURRENCY = 128;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final String CONTENT_DIR = "/content";
 
+    private final String SPOOL_DIR = "/spool";
+
     private final String ARCHIVE_DIR = "/archive";
 
+    // tracked content of the generate requests, under the spool directory
+    private final String REQUEST_SPOOL_DIR = "/request";
+
     private final String ARCHIVE_SUFFIX = ".zip";
 
     private final String PART_SUFFIX = ".part";
 
     private final String PART_ARCHIVE_SUFFIX = PART_SUFFIX + ARCHIVE_SUFFIX;
 
+    private final Pattern CONTENT_RANGE_PATTERN = Pattern.compile( "bytes (\\d+)-(\\d+)/(\\d+|\\*)" );
+
+    // artifacts up to this size are kept in memory between download and zip in pipelined mode
+    private final long PIPELINE_IN_MEMORY_LIMIT = 8 * 1024 * 1024;
+
     @Inject
     HistoricalContentListReader reader;
 
@@ -86,6 +155,54 @@ public class ArchiveController
     @Inject
     ObjectMapper objectMapper;
 
+    @Inject
+    ArtifactCache artifactCache;
+
+    @Inject
+    ArchiveJobScheduler scheduler;
+
+    @Inject
+    ReactiveDownloader reactiveDownloader;
+
+    @Inject
+    DownloadCoalescer coalescer;
+
+    @Inject
+    MissingArtifactCache missingArtifacts;
+
+    @Inject
+    ArchiveResults archiveResults;
+
+    @Inject
+    DownloadRetryPolicy retryPolicy;
+
+    @Inject
+    HostCircuitBreaker circuitBreaker;
+
+    @Inject
+    ArchiveIndex archiveIndex;
+
+    @Inject
+    ArchiveJobRegistry jobRegistry;
+
+    @Inject
+    ArchiveDirectoryCache directoryCache;
+
+    @Inject
+    ArchiveManifestCache manifestCache;
+
+    @Inject
+    ArchiveCompressor compressor;
+
+    @Inject
+    CompressionPolicy compressionPolicy;
+
+    @Inject
+    ArchiveVariantCache variantCache;
+
+    @Inject
+    ArchiveFormats formats;
+
     private ExecutorService executorService;
 
     private CloseableHttpClient client;
@@ -94,157 +211,655 @@ public class ArchiveController
 
     private String archiveDir;
 
-    private final Map<String, String> treated = new HashMap<>();
+    private String spoolDir;
+
+    private int downloadConcurrency;
+
+    private Semaphore downloadPermits;
+
+    private boolean reactive;
 
     @PostConstruct
     public void init() throws IOException
     {
-        int threads = 4 * Runtime.getRuntime().availableProcessors();
-        executorService = Executors.newFixedThreadPool( threads, ( final Runnable r ) -> {
-            final Thread t = new Thread( r );
-            t.setName( "Content-Download" );
-            t.setDaemon( true );
-            return t;
-        } );
+        String engine = preSeedConfig.downloadEngine.orElse( DOWNLOAD_ENGINE_POOL );
+        if ( DOWNLOAD_ENGINE_VIRTUAL.equals( engine ) )
+        {
+            downloadConcurrency =
+                            Math.max( 1, preSeedConfig.downloadMaxConcurrency.orElse( DEFAULT_DOWNLOAD_MAX_CONCURRENCY ) );
+            executorService = newVirtualThreadExecutor();
+        }
+        else
+        {
+            // the reactive engine transfers on the event loop, the pool only runs the local file work around it
+            reactive = DOWNLOAD_ENGINE_REACTIVE.equals( engine );
+            downloadConcurrency = reactive ?
+                            reactiveDownloader.getConcurrency() :
+                            4 * Runtime.getRuntime().availableProcessors();
+            executorService = newFixedDownloadPool( downloadConcurrency );
+        }
+        downloadPermits = new Semaphore( downloadConcurrency );
+        logger.info( "Download engine: {}, max concurrent downloads: {}", engine, downloadConcurrency );
 
         final PoolingHttpClientConnectionManager ccm = new PoolingHttpClientConnectionManager();
-        ccm.setMaxTotal( 500 );
+        ccm.setMaxTotal( Math.max( 500, downloadConcurrency ) );
+        // all artifacts come from the same Indy, so the per-route limit (2 by default) is the effective one
+        ccm.setDefaultMaxPerRoute( downloadConcurrency );
 
         RequestConfig rc = RequestConfig.custom().build();
-        client = HttpClients.custom().setConnectionManager( ccm ).setDefaultRequestConfig( rc ).build();
+        // no transparent gzip, byte ranges of resumed transfers must refer to the artifact content itself
+        client = HttpClients.custom()
+                            .setConnectionManager( ccm )
+                            .setDefaultRequestConfig( rc )
+                            .disableContentCompression()
+                            .build();
 
         String storeDir = preSeedConfig.storageDir.orElse( "data" );
         contentDir = String.format( "%s%s", storeDir, CONTENT_DIR );
         archiveDir = String.format( "%s%s", storeDir, ARCHIVE_DIR );
-        restoreGenerateStatusFromDisk();
+        spoolDir = String.format( "%s%s", storeDir, SPOOL_DIR );
+        // the jobs they were received for didn't survive the restart
+        FileUtils.deleteQuietly( new File( spoolDir + REQUEST_SPOOL_DIR ) );
     }
 
     @PreDestroy
     public void destroy()
     {
+        executorService.shutdownNow();
         IOUtils.closeQuietly( client, null );
     }
 
-    public void generate( HistoricalContentDTO content )
+    /**
+     * One virtual thread per artifact when the running JVM supports them (the service is compiled for Java 11, so
+     * they're looked up reflectively), the number of transfers in flight is then bounded by {@link #downloadPermits}.
+     * Older JVMs get a fixed pool of {@code pre-seed.download-max-concurrency} platform threads instead, rather than a
+     * platform thread per artifact.
+     */
+    private ExecutorService newVirtualThreadExecutor()
+    {
+        return newVirtualThreadExecutor( "newVirtualThreadPerTaskExecutor" );
+    }
+
+    /**
+     * @param factoryName the {@link Executors} method creating the virtual thread executor
+     */
+    ExecutorService newVirtualThreadExecutor( final String factoryName )
+    {
+        try
+        {
+            Method factory = Executors.class.getMethod( factoryName );
+            return (ExecutorService) factory.invoke( null );
+        }
+        catch ( final ReflectiveOperationException e )
+        {
+            logger.warn( "Virtual threads are not available on Java {}, using a pool of {} download threads instead.",
+                         System.getProperty( "java.version" ), downloadConcurrency );
+            return newFixedDownloadPool( downloadConcurrency );
+        }
+    }
+
+    private ExecutorService newFixedDownloadPool( final int threads )
     {
-        ExecutorService generateExecutor = Executors.newFixedThreadPool( 2, ( final Runnable r ) -> {
+        return Executors.newFixedThreadPool( threads, ( final Runnable r ) -> {
             final Thread t = new Thread( r );
-            t.setName( "Archive-Generate" );
+            t.setName( "Content-Download" );
             t.setDaemon( true );
             return t;
         } );
-        generateExecutor.execute( () -> doGenerate( content ) );
+    }
+
+    /**
+     * Queue the generation of the archive, unless it was generated from the same tracked content already and nothing
+     * failed then: the request is answered without any download or compression, or a job in the queue.
+     *
+     * @param force generate the archive even if it's up to date
+     * @return true if the generation is queued, false if the archive is up to date
+     * @throws java.util.concurrent.RejectedExecutionException if too many generate jobs are already pending
+     * @throws ArchiveJobConflictException if a generation of the archive is already queued or running
+     */
+    public boolean generate( final HistoricalContentDTO content, final boolean force )
+    {
+        if ( content.getFingerprint() == null && content.getSpool() == null )
+        {
+            content.setFingerprint( ContentFingerprint.of( content.getDownloads() ) );
+        }
+        if ( !force && isUpToDate( content ) )
+        {
+            logger.info( "Archive is up to date with the tracked content, build config id: {}",
+                         content.getBuildConfigId() );
+            discard( content );
+            return false;
+        }
+        generate( content );
+        return true;
+    }
+
+    private boolean isUpToDate( final HistoricalContentDTO content )
+    {
+        final String buildConfigId = content.getBuildConfigId();
+        // a generation in flight is going to replace the archive, whatever it was generated from
+        boolean idle = jobRegistry.get( buildConfigId ).map( job -> job.getStatus().isFinished() ).orElse( true );
+        return idle && content.getFingerprint() != null && archiveIndex.getFingerprint( buildConfigId )
+                                                                       .map( content.getFingerprint()::equals )
+                                                                       .orElse( false );
+    }
+
+    /**
+     * Queue the generation of the archive on the shared job scheduler.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if too many generate jobs are already pending
+     * @throws ArchiveJobConflictException if a generation of the archive is already queued or running
+     */
+    public void generate( HistoricalContentDTO content )
+    {
+        final String buildConfigId = content.getBuildConfigId();
+        final ArchiveJob previous;
+        try
+        {
+            previous = jobRegistry.queue( buildConfigId );
+        }
+        catch ( final ArchiveJobConflictException e )
+        {
+            discard( content );
+            throw e;
+        }
+        try
+        {
+            scheduler.submit( buildConfigId, () -> {
+                try
+                {
+                    doGenerate( content );
+                }
+                catch ( final RuntimeException e )
+                {
+                    logger.error( "Archive generating failed, build config id: " + buildConfigId, e );
+                    jobRegistry.transition( buildConfigId, ArchiveStatus.failed );
+                }
+                finally
+                {
+                    discard( content );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            jobRegistry.restore( buildConfigId, previous );
+            discard( content );
+            throw e;
+        }
+    }
+
+    /**
+     * Receive the tracked content of a generate request, its downloads are spooled to disk as they're parsed so a
+     * queued job holds no more than a file name.
+     *
+     * @return the tracked content, or nothing if the body is empty
+     */
+    public Optional<HistoricalContentDTO> receive( final InputStream body ) throws IOException
+    {
+        File spool = new File( spoolDir + REQUEST_SPOOL_DIR, UUID.randomUUID() + ".json" );
+        HistoricalContentDTO content = null;
+        try
+        {
+            content = reader.spool( body, spool );
+            return Optional.ofNullable( content );
+        }
+        finally
+        {
+            if ( content == null )
+            {
+                spool.delete();
+            }
+        }
+    }
+
+    /**
+     * Remove the spooled downloads of the tracked content, once it's generated or if it's not going to be.
+     */
+    public void discard( final HistoricalContentDTO content )
+    {
+        if ( content.getSpool() != null )
+        {
+            content.getSpool().delete();
+        }
     }
 
     protected Boolean doGenerate( HistoricalContentDTO content )
     {
         logger.info( "Handle generate event: {}, build config id: {}", EVENT_GENERATE_ARCHIVE,
                      content.getBuildConfigId() );
-        recordInProgress( content.getBuildConfigId() );
+        ArchiveProgress progress = jobRegistry.newProgress( content.getBuildConfigId() );
+        ArchiveResultDTO result = new ArchiveResultDTO( content.getBuildConfigId() );
+        result.setFingerprint( content.getFingerprint() != null ?
+                                               content.getFingerprint() :
+                                               ContentFingerprint.of( content.getDownloads() ) );
+        jobRegistry.transition( content.getBuildConfigId(), ArchiveStatus.downloading );
 
-        Map<String, String> downloadPaths = reader.readPaths( content );
+        // the archive is digested while it's written, to be indexed with its checksum
+        MessageDigest digest = DigestUtils.getSha256Digest();
         Optional<File> archive;
         try
         {
-            downloadArtifacts( downloadPaths, content );
-            archive = generateArchive( content );
+            Map<String, HistoricalEntryDTO> downloadEntries = content.getSpool() != null ?
+                            reader.readEntries( content.getSpool() ) :
+                            reader.readEntries( content );
+            progress.start( downloadEntries.size(), downloadEntries.values()
+                                                                 .stream()
+                                                                 .mapToLong( e -> e.getSize() == null ?
+                                                                                 0 :
+                                                                                 e.getSize() )
+                                                                 .sum() );
+            Optional<ArchiveDiff> diff = diffPreviousArchive( content.getBuildConfigId(), downloadEntries );
+            if ( diff.isPresent() )
+            {
+                // copying the unchanged entries as they are saves more than overlapping the few changed downloads
+                // with their compression, so an incremental generation isn't pipelined
+                if ( preSeedConfig.archivePipelined.orElse( Boolean.FALSE ) )
+                {
+                    logger.info( "Archive {} is regenerated incrementally, its changed downloads are not pipelined",
+                                 content.getBuildConfigId() );
+                }
+                archive = generateIncrementalArchive( diff.get(), content, digest, progress, result );
+            }
+            else if ( preSeedConfig.archivePipelined.orElse( Boolean.FALSE ) )
+            {
+                archive = generatePipelinedArchive( downloadEntries, content, digest, progress, result );
+            }
+            else
+            {
+                downloadArtifacts( downloadEntries, content, progress, result );
+                jobRegistry.transition( content.getBuildConfigId(), ArchiveStatus.zipping );
+                archive = generateArchive( content, digest, progress, null );
+            }
         }
         catch ( final InterruptedException e )
         {
             logger.error( "Artifacts downloading is interrupted, build config id: " + content.getBuildConfigId(), e );
+            jobRegistry.transition( content.getBuildConfigId(), ArchiveStatus.failed );
             return false;
         }
         catch ( final ExecutionException e )
         {
             logger.error( "Artifacts download execution manager failed, build config id: " + content.getBuildConfigId(),
                           e );
+            jobRegistry.transition( content.getBuildConfigId(), ArchiveStatus.failed );
             return false;
         }
         catch ( final IOException e )
         {
             logger.error( "Failed to generate historical archive from content, build config id: "
                                           + content.getBuildConfigId(), e );
+            jobRegistry.transition( content.getBuildConfigId(), ArchiveStatus.failed );
             return false;
         }
 
         boolean created = false;
         if ( archive.isPresent() && archive.get().exists() )
         {
-            created = renderArchive( archive.get(), content.getBuildConfigId() );
+            created = renderArchive( archive.get(), content.getBuildConfigId(), Hex.encodeHexString( digest.digest() ) );
+        }
+        if ( created )
+        {
+            recordResult( result );
+            // an archive missing some of the tracked content is generated again when it's posted again
+            archiveIndex.recordFingerprint( content.getBuildConfigId(),
+                                            result.getFailed().isEmpty() ? result.getFingerprint() : null );
         }
 
-        recordCompleted( content.getBuildConfigId() );
+        jobRegistry.transition( content.getBuildConfigId(), created ? ArchiveStatus.completed : ArchiveStatus.failed );
         return created;
     }
 
-    public Optional<File> getArchiveInputStream( final String buildConfigId ) throws IOException
+    /**
+     * Queue the download of the entries which failed in the last generation of the archive. They are added to a copy
+     * of the archive, whose entries are taken over as they are: nothing else is downloaded or compressed again.
+     *
+     * @return the number of entries to retry, nothing if there is no archive or no recorded result of its generation
+     * @throws java.util.concurrent.RejectedExecutionException if too many generate jobs are already pending
+     * @throws ArchiveJobConflictException if a generation of the archive is already queued or running
+     */
+    public Optional<Integer> retryFailed( final String buildConfigId ) throws IOException
     {
-        File targetDir = new File( archiveDir );
-        if ( !targetDir.exists() )
+        if ( jobRegistry.get( buildConfigId ).map( job -> !job.getStatus().isFinished() ).orElse( false ) )
+        {
+            // the running generation is going to record a result of its own
+            throw new ArchiveJobConflictException( buildConfigId );
+        }
+        Optional<ArchiveResultDTO> previous = archiveResults.get( buildConfigId );
+        if ( !previous.isPresent() || !archiveIndex.get( buildConfigId ).isPresent() )
         {
             return Optional.empty();
         }
+        final ArchiveResultDTO result = previous.get();
+        if ( result.getFailed().isEmpty() )
+        {
+            return Optional.of( 0 );
+        }
+
+        final ArchiveJob job = jobRegistry.queue( buildConfigId );
+        try
+        {
+            scheduler.submit( buildConfigId, () -> {
+                try
+                {
+                    doRetry( result );
+                }
+                catch ( final RuntimeException e )
+                {
+                    logger.error( "Archive retry failed, build config id: " + buildConfigId, e );
+                    jobRegistry.transition( buildConfigId, ArchiveStatus.failed );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            jobRegistry.restore( buildConfigId, job );
+            throw e;
+        }
+        return Optional.of( result.getFailed().size() );
+    }
+
+    protected Boolean doRetry( final ArchiveResultDTO previous )
+    {
+        final String buildConfigId = previous.getBuildConfigId();
+        logger.info( "Retry {} failed entries, build config id: {}", previous.getFailed().size(), buildConfigId );
+        ArchiveProgress progress = jobRegistry.newProgress( buildConfigId );
+        ArchiveResultDTO retried = new ArchiveResultDTO( buildConfigId );
+        jobRegistry.transition( buildConfigId, ArchiveStatus.downloading );
+
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        Optional<File> archive;
+        try
+        {
+            Map<String, HistoricalEntryDTO> downloadEntries = reader.readEntries(
+                            new HistoricalContentDTO( buildConfigId,
+                                                      previous.getFailed().toArray( new HistoricalEntryDTO[0] ) ) );
+            progress.start( downloadEntries.size(), downloadEntries.values()
+                                                                 .stream()
+                                                                 .mapToLong( e -> e.getSize() == null ?
+                                                                                 0 :
+                                                                                 e.getSize() )
+                                                                 .sum() );
+            // a retry is asked for when the artifacts are expected to be there now, Indy is asked for them again
+            downloadEntries.keySet().forEach( missingArtifacts::forget );
+            // failed transfers of a non-pipelined generation left their .part files here, they're resumed
+            String contentBuildDir = String.format( "%s/%s", contentDir, buildConfigId );
+            downloadTo( contentBuildDir, downloadEntries, progress, retried );
+            List<HistoricalEntryDTO> recovered = new ArrayList<>( retried.getDownloaded() );
+            recovered.addAll( retried.getCached() );
+            if ( recovered.isEmpty() )
+            {
+                logger.info( "None of the failed entries could be downloaded, archive {} is unchanged", buildConfigId );
+                jobRegistry.transition( buildConfigId, ArchiveStatus.completed );
+                return true;
+            }
+
+            jobRegistry.transition( buildConfigId, ArchiveStatus.zipping );
+            archive = patchArchive( buildConfigId, contentBuildDir, recovered, digest, progress );
+        }
+        catch ( final InterruptedException | ExecutionException | IOException e )
+        {
+            logger.error( "Failed to retry the failed entries of historical archive, build config id: "
+                                          + buildConfigId, e );
+            jobRegistry.transition( buildConfigId, ArchiveStatus.failed );
+            return false;
+        }
 
-        List<File> contents = walkAllFiles( archiveDir );
-        for ( File content : contents )
+        boolean patched = false;
+        if ( archive.isPresent() && archive.get().exists() )
+        {
+            patched = renderArchive( archive.get(), buildConfigId, Hex.encodeHexString( digest.digest() ) );
+        }
+        if ( patched )
         {
-            if ( content.getName().equals( buildConfigId + ARCHIVE_SUFFIX ) )
+            ArchiveResultDTO result = new ArchiveResultDTO( buildConfigId );
+            result.getDownloaded().addAll( previous.getDownloaded() );
+            result.getDownloaded().addAll( retried.getDownloaded() );
+            result.getCached().addAll( previous.getCached() );
+            result.getCached().addAll( retried.getCached() );
+            result.getFailed().addAll( retried.getFailed() );
+            result.setFingerprint( previous.getFingerprint() );
+            recordResult( result );
+            if ( result.getFailed().isEmpty() )
             {
-                return Optional.of( content );
+                archiveIndex.recordFingerprint( buildConfigId, result.getFingerprint() );
             }
         }
-        return Optional.empty();
+
+        jobRegistry.transition( buildConfigId, patched ? ArchiveStatus.completed : ArchiveStatus.failed );
+        return patched;
     }
 
-    public void deleteArchive( final String buildConfigId ) throws IOException
+    private void recordResult( final ArchiveResultDTO result )
     {
-        File targetDir = new File( archiveDir );
-        if ( !targetDir.exists() )
+        try
         {
-            return;
+            archiveResults.put( result );
         }
-        List<File> contents = walkAllFiles( archiveDir );
-        for ( File content : contents )
+        catch ( final IOException e )
+        {
+            // only a retry of the failed entries needs it, a full generation still works
+            logger.warn( "Failed to record the result of archive generation: {}", result, e );
+        }
+    }
+
+    /**
+     * @return the outcome of each entry of the last generation of the archive
+     */
+    public Optional<File> getArchiveResult( final String buildConfigId )
+    {
+        File result = archiveResults.getFile( buildConfigId );
+        return result.exists() && archiveIndex.get( buildConfigId ).isPresent() ?
+                        Optional.of( result ) :
+                        Optional.empty();
+    }
+
+    public Optional<File> getArchiveInputStream( final String buildConfigId ) throws IOException
+    {
+        return archiveIndex.get( buildConfigId ).map( ArchiveMetadata::getFile );
+    }
+
+    /**
+     * @return the indexed archive with its sha256, which is computed once and recorded if the archive was generated
+     * before checksums were kept
+     */
+    public Optional<ArchiveMetadata> getArchive( final String buildConfigId ) throws IOException
+    {
+        Optional<ArchiveMetadata> metadata = archiveIndex.get( buildConfigId );
+        if ( metadata.isPresent() && metadata.get().getChecksum() == null )
         {
-            if ( content.getName().equals( buildConfigId + ARCHIVE_SUFFIX ) )
+            File file = metadata.get().getFile();
+            String checksum;
+            try (InputStream in = new FileInputStream( file ))
             {
-                content.delete();
+                checksum = DigestUtils.sha256Hex( in );
             }
+            logger.info( "Recorded the missing checksum of archive {}", file );
+            return Optional.of( archiveIndex.register( buildConfigId, file, checksum ) );
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the archive in the given format, transcoded from the zip archive in the background on the first request
+     * if it's not one of the formats transcoded on generation
+     * @throws ArchiveVariantPendingException if the archive exists but isn't transcoded to the format yet
+     */
+    public Optional<ArchiveMetadata> getArchive( final String buildConfigId, final ArchiveFormat format )
+                    throws IOException
+    {
+        Optional<ArchiveMetadata> archive = getArchive( buildConfigId );
+        if ( !archive.isPresent() )
+        {
+            return archive;
+        }
+        Optional<ArchiveMetadata> variant = variantCache.getVariant( archive.get(), format );
+        if ( !variant.isPresent() )
+        {
+            throw new ArchiveVariantPendingException( buildConfigId, format.getName() );
+        }
+        return variant;
+    }
+
+    /**
+     * Open the file of the archive to serve it. A regeneration moves a new file in place, the channel keeps reading the
+     * file it was opened on, so the body matches the ETag and length taken from the metadata.
+     *
+     * @throws ArchiveChangedException if the file was already replaced since the archive was looked up
+     */
+    public FileChannel openArchive( final ArchiveMetadata archive ) throws IOException
+    {
+        FileChannel channel;
+        try
+        {
+            channel = FileChannel.open( archive.getFile().toPath(), StandardOpenOption.READ );
+        }
+        catch ( final NoSuchFileException e )
+        {
+            throw new ArchiveChangedException( archive.getBuildConfigId() );
         }
+        if ( channel.size() != archive.getSize() || archive.getFile().lastModified() != archive.getLastModified() )
+        {
+            channel.close();
+            throw new ArchiveChangedException( archive.getBuildConfigId() );
+        }
+        return channel;
+    }
+
+    /**
+     * @return false if the file of the archive was replaced or removed since the archive was looked up
+     */
+    public boolean isCurrent( final ArchiveMetadata archive )
+    {
+        File file = archive.getFile();
+        return file.length() == archive.getSize() && file.lastModified() == archive.getLastModified();
+    }
+
+    /**
+     * @param channel opened by {@link #openArchive(ArchiveMetadata)}, the entry is to be read from it
+     * @return the entry of the archive at the given path, looked up in the cached central directory of the archive
+     */
+    public Optional<ArchiveEntry> getArchiveEntry( final ArchiveMetadata archive, final FileChannel channel,
+                                                   final String path ) throws IOException
+    {
+        return directoryCache.getEntry( archive, channel, path );
+    }
+
+    /**
+     * @return the JSON listing of the entries of the archive, if there is one
+     */
+    public Optional<File> getArchiveManifest( final String buildConfigId ) throws IOException
+    {
+        Optional<ArchiveMetadata> archive = getArchive( buildConfigId );
+        return archive.isPresent() ? Optional.of( manifestCache.getManifest( archive.get() ) ) : Optional.empty();
+    }
+
+    public void deleteArchive( final String buildConfigId ) throws IOException
+    {
+        archiveIndex.remove( buildConfigId );
+        directoryCache.invalidate( buildConfigId );
+        manifestCache.invalidate( buildConfigId );
+        variantCache.invalidate( buildConfigId );
+        archiveResults.remove( buildConfigId );
+        // the name is known, archives which aren't indexed (e.g. copied in by hand) are removed as well
+        Files.deleteIfExists( new File( archiveDir, buildConfigId + ARCHIVE_SUFFIX ).toPath() );
     }
 
     public boolean statusExists( final String buildConfigId )
     {
-        return treated.containsKey( buildConfigId );
+        return jobRegistry.exists( buildConfigId );
     }
 
     public String getStatus( String buildConfigId )
     {
-        return treated.get( buildConfigId );
+        return jobRegistry.get( buildConfigId ).map( job -> job.getStatus().getArchiveStatus() ).orElse( null );
     }
 
-    private void downloadArtifacts( final Map<String, String> downloadPaths, final HistoricalContentDTO content )
-                    throws InterruptedException, ExecutionException
+    /**
+     * @return the state and progress of the last generation of the archive, if there was any
+     */
+    public Optional<ArchiveStatusDTO> getJobStatus( final String buildConfigId )
     {
-        BasicCookieStore cookieStore = new BasicCookieStore();
-        ExecutorCompletionService<Boolean> executor = new ExecutorCompletionService<>( executorService );
+        return jobRegistry.getStatus( buildConfigId );
+    }
+
+    /**
+     * @return the statuses of the given jobs, unknown ids are left out
+     */
+    public Stream<ArchiveStatusDTO> getJobStatuses( final Collection<String> buildConfigIds )
+    {
+        return buildConfigIds.stream().distinct().map( this::getJobStatus ).flatMap( Optional::stream );
+    }
+
+    public Stream<ArchiveStatusDTO> getJobStatusesByPrefix( final String prefix )
+    {
+        return jobRegistry.getJobs()
+                          .stream()
+                          .map( ArchiveJob::getBuildConfigId )
+                          .filter( id -> id.startsWith( prefix ) )
+                          .map( this::getJobStatus )
+                          .flatMap( Optional::stream );
+    }
 
+    private void downloadArtifacts( final Map<String, HistoricalEntryDTO> downloadEntries,
+                                    final HistoricalContentDTO content, final ArchiveProgress progress,
+                                    final ArchiveResultDTO result )
+                    throws InterruptedException, ExecutionException
+    {
         String contentBuildDir = String.format( "%s/%s", contentDir, content.getBuildConfigId() );
         File dir = new File( contentBuildDir );
         dir.delete();
 
         fileTrackedContent( contentBuildDir, content );
 
-        for ( String path : downloadPaths.keySet() )
-        {
-            String filePath = downloadPaths.get( path );
-            executor.submit( download( contentBuildDir, path, filePath, cookieStore ) );
-        }
+        downloadTo( contentBuildDir, downloadEntries, progress, result );
+    }
+
+    private void downloadTo( final String contentBuildDir, final Map<String, HistoricalEntryDTO> downloadEntries,
+                             final ArchiveProgress progress, final ArchiveResultDTO result )
+                    throws InterruptedException, ExecutionException
+    {
+        BasicCookieStore cookieStore = new BasicCookieStore();
+        ExecutorCompletionService<StagedArtifact> executor = new ExecutorCompletionService<>( executorService );
+
         int success = 0;
         int failed = 0;
-        for ( int i = 0; i < downloadPaths.size(); i++ )
+        if ( reactive )
+        {
+            List<StagedArtifact> results =
+                            downloadReactive( downloadEntries, entry -> new File( contentBuildDir, entry.getPath() ),
+                                              progress )
+                                            .onItem()
+                                            .invoke( staged -> recordProgress( progress, result, staged ) )
+                                            .collectItems()
+                                            .asList()
+                                            .await()
+                                            .indefinitely();
+            for ( StagedArtifact staged : results )
+            {
+                if ( staged.isFailed() )
+                {
+                    failed++;
+                }
+                else
+                {
+                    success++;
+                }
+            }
+            logger.info( "Artifacts download completed, success:{}, failed:{}", success, failed );
+            return;
+        }
+
+        for ( String path : downloadEntries.keySet() )
+        {
+            HistoricalEntryDTO entry = downloadEntries.get( path );
+            executor.submit( download( contentBuildDir, path, entry, cookieStore, progress ) );
+        }
+        for ( int i = 0; i < downloadEntries.size(); i++ )
         {
-            if ( executor.take().get() )
+            StagedArtifact staged = executor.take().get();
+            recordProgress( progress, result, staged );
+            if ( !staged.isFailed() )
             {
                 success++;
             }
@@ -256,71 +871,423 @@ public class ArchiveController
         logger.info( "Artifacts download completed, success:{}, failed:{}", success, failed );
     }
 
-    private Optional<File> generateArchive( final HistoricalContentDTO content ) throws IOException
+    /**
+     * Diff the tracked content against the previous archive of the build, if there is one along with the result of its
+     * generation, which tells what each of its entries was archived from.
+     */
+    private Optional<ArchiveDiff> diffPreviousArchive( final String buildConfigId,
+                                                       final Map<String, HistoricalEntryDTO> downloadEntries )
     {
-        String contentBuildDir = String.format( "%s/%s", contentDir, content.getBuildConfigId() );
-        File dir = new File( contentBuildDir );
-        if ( !dir.exists() )
+        if ( !preSeedConfig.archiveIncremental.orElse( Boolean.TRUE ) )
         {
             return Optional.empty();
         }
-
-        final File part = new File( archiveDir, content.getBuildConfigId() + PART_ARCHIVE_SUFFIX );
-        part.getParentFile().mkdirs();
-
-        logger.info( "Writing archive to: '{}'", part.getAbsolutePath() );
-        ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( part ) );
-        List<File> artifacts = walkAllFiles( contentBuildDir );
-
-        byte[] buffer = new byte[1024];
-        for ( File artifact : artifacts )
+        Optional<ArchiveMetadata> archive = archiveIndex.get( buildConfigId );
+        if ( !archive.isPresent() )
         {
-            logger.trace( "Adding {} to archive {} in folder {}", artifact.getName(), part.getName(), archiveDir );
-            FileInputStream fis = new FileInputStream( artifact );
-            String entryPath = artifact.getPath().split( contentBuildDir )[1];
-
-            zip.putNextEntry( new ZipEntry( entryPath ) );
-
-            int length;
-            while ( ( length = fis.read( buffer ) ) > 0 )
+            return Optional.empty();
+        }
+        try
+        {
+            Optional<ArchiveResultDTO> previous = archiveResults.get( buildConfigId );
+            if ( !previous.isPresent() )
             {
-                zip.write( buffer, 0, length );
+                return Optional.empty();
             }
-            zip.closeEntry();
-            fis.close();
+            return Optional.of( ArchiveDiff.compute( archive.get().getFile(), previous.get(), downloadEntries ) );
         }
-        zip.close();
-
-        //clean obsolete build contents
-        for ( File artifact : artifacts )
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to diff the tracked content against archive {}, generating it from scratch",
+                         archive.get().getFile(), e );
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Download the changed artifacts only, and write them to the archive along with the unchanged entries of the
+     * previous archive, copied as they are.
+     */
+    private Optional<File> generateIncrementalArchive( final ArchiveDiff diff, final HistoricalContentDTO content,
+                                                       final MessageDigest digest, final ArchiveProgress progress,
+                                                       final ArchiveResultDTO result )
+                    throws InterruptedException, ExecutionException, IOException
+    {
+        logger.info( "Generating archive {} from {}, unchanged entries: {}, changed: {}, dropped: {}",
+                     content.getBuildConfigId(), diff.getArchive(), diff.getUnchangedDownloads().size(),
+                     diff.getChanged().size(), diff.getDropped() );
+        for ( HistoricalEntryDTO entry : diff.getUnchangedDownloads() )
+        {
+            progress.skipped( entry.getSize() == null ? 0 : entry.getSize() );
+            result.getCached().add( entry );
+        }
+        downloadArtifacts( diff.getChanged(), content, progress, result );
+        jobRegistry.transition( content.getBuildConfigId(), ArchiveStatus.zipping );
+        return generateArchive( content, digest, progress, diff );
+    }
+
+    /**
+     * @param diff the previous archive to copy the unchanged entries from, null to archive the downloads only
+     */
+    private Optional<File> generateArchive( final HistoricalContentDTO content, final MessageDigest digest,
+                                            final ArchiveProgress progress, final ArchiveDiff diff )
+                    throws IOException, InterruptedException
+    {
+        String contentBuildDir = String.format( "%s/%s", contentDir, content.getBuildConfigId() );
+        File dir = new File( contentBuildDir );
+        if ( !dir.exists() )
+        {
+            return Optional.empty();
+        }
+
+        final File part = new File( archiveDir, content.getBuildConfigId() + PART_ARCHIVE_SUFFIX );
+        part.getParentFile().mkdirs();
+
+        logger.info( "Writing archive to: '{}'", part.getAbsolutePath() );
+        // unfinished transfers are not archived, they are kept to be resumed by the next generation
+        List<File> artifacts = walkAllFiles( contentBuildDir ).stream()
+                                                             .filter( f -> !f.getName().endsWith( PART_SUFFIX ) )
+                                                             .collect( Collectors.toList() );
+        Map<String, File> entries = new LinkedHashMap<>();
+        for ( File artifact : artifacts )
+        {
+            entries.put( artifact.getPath().split( contentBuildDir )[1], artifact );
+        }
+
+        try (ZipArchiveWriter zip = new ZipArchiveWriter(
+                        new BufferedOutputStream( new DigestOutputStream( new FileOutputStream( part ), digest ) ) ))
+        {
+            if ( diff != null )
+            {
+                copyUnchanged( zip, diff, entries.keySet(), progress );
+            }
+            writeEntries( zip, entries, content.getBuildConfigId(), progress );
+        }
+
+        //clean obsolete build contents
+        for ( File artifact : artifacts )
         {
             artifact.delete();
         }
-        dir.delete();
+        deleteEmptyDirectories( contentBuildDir );
         return Optional.of( part );
     }
 
-    private boolean renderArchive( File part, final String buildConfigId )
+    private void copyUnchanged( final ZipArchiveWriter zip, final ArchiveDiff diff, final Set<String> downloaded,
+                                final ArchiveProgress progress ) throws IOException
     {
-        final File target = new File( archiveDir, buildConfigId + ARCHIVE_SUFFIX );
+        try (FileChannel source = FileChannel.open( diff.getArchive().toPath(), StandardOpenOption.READ ))
+        {
+            for ( ArchiveEntry entry : diff.getUnchanged() )
+            {
+                // a download of the same path, e.g. from another store, takes the place of the entry
+                if ( !downloaded.contains( entry.getName() ) )
+                {
+                    zip.copyEntry( source, entry );
+                    progress.archived();
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a copy of the stored archive with the recovered entries added to it. The entries of the archive are copied
+     * as they are, only the recovered ones are compressed.
+     */
+    private Optional<File> patchArchive( final String buildConfigId, final String contentBuildDir,
+                                         final List<HistoricalEntryDTO> recovered, final MessageDigest digest,
+                                         final ArchiveProgress progress )
+                    throws IOException, InterruptedException
+    {
+        Optional<ArchiveMetadata> archive = archiveIndex.get( buildConfigId );
+        if ( !archive.isPresent() )
+        {
+            logger.warn( "Archive {} was deleted while its failed entries were retried", buildConfigId );
+            return Optional.empty();
+        }
+
+        final File part = new File( archiveDir, buildConfigId + PART_ARCHIVE_SUFFIX );
+        logger.info( "Adding {} entries to a copy of archive {} at: '{}'", recovered.size(), archive.get().getFile(),
+                     part.getAbsolutePath() );
+        Map<String, File> entries = new LinkedHashMap<>();
+        try (ZipArchiveWriter zip = ZipArchiveWriter.append( archive.get().getFile(), new BufferedOutputStream(
+                        new DigestOutputStream( new FileOutputStream( part ), digest ) ) ))
+        {
+            for ( HistoricalEntryDTO entry : recovered )
+            {
+                if ( !zip.contains( entry.getPath() ) )
+                {
+                    entries.put( entry.getPath(), new File( contentBuildDir, entry.getPath() ) );
+                }
+            }
+            writeEntries( zip, entries, buildConfigId, progress );
+        }
+        finally
+        {
+            for ( HistoricalEntryDTO entry : recovered )
+            {
+                new File( contentBuildDir, entry.getPath() ).delete();
+            }
+            deleteEmptyDirectories( contentBuildDir );
+        }
+        return Optional.of( part );
+    }
+
+    /**
+     * Entries are deflated concurrently up to a window ahead, and written in order as they're ready.
+     */
+    private void writeEntries( final ZipArchiveWriter zip, final Map<String, File> entries,
+                               final String buildConfigId, final ArchiveProgress progress )
+                    throws IOException, InterruptedException
+    {
+        Deque<Future<CompressedEntry>> compressing = new ArrayDeque<>();
+        try
+        {
+            for ( Map.Entry<String, File> entry : entries.entrySet() )
+            {
+                compressing.add( compressor.submit( entry.getKey(), entry.getValue() ) );
+                if ( compressing.size() >= compressor.getWindow() )
+                {
+                    writeCompressed( zip, compressing.poll(), buildConfigId, progress );
+                }
+            }
+            while ( !compressing.isEmpty() )
+            {
+                writeCompressed( zip, compressing.poll(), buildConfigId, progress );
+            }
+        }
+        finally
+        {
+            // after a failure, wait for the entries still in compression so their spool files are removed
+            for ( Future<CompressedEntry> pending : compressing )
+            {
+                try
+                {
+                    pending.get().release();
+                }
+                catch ( final ExecutionException e )
+                {
+                    logger.trace( "Discarded entry failed to compress", e );
+                }
+            }
+        }
+    }
+
+    private void writeCompressed( final ZipArchiveWriter zip, final Future<CompressedEntry> compressed,
+                                  final String buildConfigId, final ArchiveProgress progress )
+                    throws IOException, InterruptedException
+    {
+        CompressedEntry entry;
         try
         {
-            if ( target.exists() )
+            entry = compressed.get();
+        }
+        catch ( final ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException( "Failed to compress archive entry", e.getCause() );
+        }
+
+        logger.trace( "Adding {} to archive, {} bytes deflated to {}", entry.getName(), entry.getSize(),
+                      entry.getCompressedSize() );
+        try
+        {
+            entry.writeTo( zip );
+        }
+        finally
+        {
+            entry.release();
+        }
+        if ( !entry.getName().equals( "/" + buildConfigId ) )
+        {
+            // the tracked content is archived along, it's not one of the entries though
+            progress.archived();
+        }
+    }
+
+    /**
+     * Download the artifacts and zip them in one pass: completed downloads are handed to this (the only) archive
+     * writer thread through a bounded queue, so compression overlaps the network I/O and nothing is staged in the
+     * content directory.
+     */
+    private Optional<File> generatePipelinedArchive( final Map<String, HistoricalEntryDTO> downloadEntries,
+                                                     final HistoricalContentDTO content, final MessageDigest digest,
+                                                     final ArchiveProgress progress, final ArchiveResultDTO result )
+                    throws InterruptedException, IOException
+    {
+        BasicCookieStore cookieStore = new BasicCookieStore();
+        BlockingQueue<StagedArtifact> pipeline = new ArrayBlockingQueue<>( downloadConcurrency );
+        File spoolBuildDir = new File( spoolDir, content.getBuildConfigId() );
+
+        final File part = new File( archiveDir, content.getBuildConfigId() + PART_ARCHIVE_SUFFIX );
+        part.getParentFile().mkdirs();
+
+        if ( reactive )
+        {
+            pipe( downloadReactive( downloadEntries,
+                                    entry -> new File( spoolBuildDir, UUID.randomUUID().toString() ), progress ),
+                  downloadEntries.values(), pipeline );
+        }
+        else
+        {
+            for ( String path : downloadEntries.keySet() )
+            {
+                HistoricalEntryDTO entry = downloadEntries.get( path );
+                executorService.submit(
+                                downloadToPipeline( spoolBuildDir, path, entry, cookieStore, progress, pipeline ) );
+            }
+        }
+
+        logger.info( "Writing archive to: '{}'", part.getAbsolutePath() );
+        int pending = downloadEntries.size();
+        int success = 0;
+        int failed = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(
+                        new BufferedOutputStream( new DigestOutputStream( new FileOutputStream( part ), digest ) ) ))
+        {
+            zip.setLevel( compressionPolicy.levelFor( "/" + content.getBuildConfigId() ) );
+            zip.putNextEntry( new ZipEntry( "/" + content.getBuildConfigId() ) );
+            writeTrackedContent( content, zip );
+            zip.closeEntry();
+
+            Set<String> written = new HashSet<>();
+            while ( pending > 0 )
+            {
+                StagedArtifact staged = pipeline.take();
+                pending--;
+                recordProgress( progress, result, staged );
+                try
+                {
+                    if ( staged.isFailed() )
+                    {
+                        failed++;
+                        continue;
+                    }
+                    if ( written.add( staged.getEntryPath() ) )
+                    {
+                        logger.trace( "Adding {} to archive {}", staged.getEntryPath(), part.getName() );
+                        zip.putNextEntry( newZipEntry( zip, staged ) );
+                        staged.writeTo( zip );
+                        zip.closeEntry();
+                        progress.archived();
+                    }
+                    success++;
+                }
+                finally
+                {
+                    staged.release();
+                }
+            }
+        }
+        finally
+        {
+            // keep consuming so no download stays blocked on the full queue after a failure
+            while ( pending > 0 )
             {
-                Files.delete( target.toPath() );
+                pipeline.take().release();
+                pending--;
             }
+            spoolBuildDir.delete();
+        }
+        logger.info( "Artifacts download completed, success:{}, failed:{}", success, failed );
+        return Optional.of( part );
+    }
+
+    /**
+     * Hand the downloads to the archive writer as they complete. The writer waits for every entry, so if the stream
+     * fails (e.g. the download pool rejects a task) the entries which never arrived are handed to it as failed.
+     */
+    void pipe( final Multi<StagedArtifact> downloads, final Collection<HistoricalEntryDTO> entries,
+               final BlockingQueue<StagedArtifact> pipeline )
+    {
+        final Set<HistoricalEntryDTO> arrived = Collections.synchronizedSet( Collections.newSetFromMap(
+                        new IdentityHashMap<>() ) );
+        downloads.subscribe().with( staged -> {
+            arrived.add( staged.getEntry() );
+            enqueue( pipeline, staged );
+        }, failure -> {
+            logger.error( "Downloads failed before all of them completed", failure );
+            for ( HistoricalEntryDTO entry : entries )
+            {
+                if ( !arrived.contains( entry ) )
+                {
+                    enqueue( pipeline, StagedArtifact.failed( entry ) );
+                }
+            }
+        } );
+    }
+
+    /**
+     * ZipOutputStream needs the size and crc of a stored entry before its content; the deflate level it takes applies
+     * to the entries which follow.
+     */
+    private ZipEntry newZipEntry( final ZipOutputStream zip, final StagedArtifact staged ) throws IOException
+    {
+        final ZipEntry zipEntry = new ZipEntry( staged.getEntryPath() );
+        if ( compressionPolicy.isStored( staged.getEntryPath() ) )
+        {
+            zipEntry.setMethod( ZipEntry.STORED );
+            zipEntry.setSize( staged.getLength() );
+            zipEntry.setCompressedSize( staged.getLength() );
+            zipEntry.setCrc( staged.getCrc32() );
+        }
+        else
+        {
+            zip.setLevel( compressionPolicy.levelFor( staged.getEntryPath() ) );
+        }
+        return zipEntry;
+    }
+
+    private boolean renderArchive( File part, final String buildConfigId, final String checksum )
+    {
+        final File target = new File( archiveDir, buildConfigId + ARCHIVE_SUFFIX );
+        target.getParentFile().mkdirs();
+        try
+        {
+            // the obsolete archive is replaced in one step, readers see either the old file or the new one
+            Files.move( part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING );
         }
         catch ( final SecurityException | IOException e )
         {
-            e.printStackTrace();
-            logger.error( "Failed to delete the obsolete archive file {}", target.getPath() );
+            logger.error( "Failed to move the generated archive {} to {}", part.getPath(), target.getPath(), e );
+            FileUtils.deleteQuietly( part );
             return false;
         }
-        target.getParentFile().mkdirs();
-        part.renameTo( target );
+        ArchiveMetadata archive = archiveIndex.register( buildConfigId, target, checksum );
+        directoryCache.invalidate( buildConfigId );
+        manifestCache.invalidate( buildConfigId );
+        variantCache.invalidate( buildConfigId );
+        for ( ArchiveFormat format : formats.getStored() )
+        {
+            variantCache.schedule( archive, format );
+        }
         return true;
     }
 
+    /**
+     * Remove the directories left empty under the content dir of a build, the ones still holding unfinished transfers
+     * are kept for them to be resumed.
+     */
+    private void deleteEmptyDirectories( final String path )
+    {
+        try (Stream<Path> walk = Files.walk( Paths.get( path ) ))
+        {
+            // deepest first, so parents are empty by the time they're reached
+            walk.filter( Files::isDirectory )
+                .sorted( Comparator.reverseOrder() )
+                .map( Path::toFile )
+                .forEach( File::delete );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to clean content dir {}", path, e );
+        }
+    }
+
     private List<File> walkAllFiles( String path ) throws IOException
     {
         List<File> contents = Files.walk( Paths.get( path ) )
@@ -335,111 +1302,591 @@ public class ArchiveController
         File tracked = new File( contentBuildDir, content.getBuildConfigId() );
         tracked.getParentFile().mkdirs();
 
-        ByteArrayInputStream input = null;
-        try (FileOutputStream out = new FileOutputStream( tracked ))
+        try (OutputStream out = new BufferedOutputStream( new FileOutputStream( tracked ) ))
         {
-            String json = objectMapper.writeValueAsString( content );
-            input = new ByteArrayInputStream( json.getBytes() );
-            IOUtils.copy( input, out );
+            writeTrackedContent( content, out );
         }
         catch ( final IOException e )
         {
             logger.error( "Failed to file tracked content, path: " + tracked.getPath(), e );
         }
-        finally
+    }
+
+    private void writeTrackedContent( final HistoricalContentDTO content, final OutputStream out ) throws IOException
+    {
+        if ( content.getSpool() != null )
         {
-            IOUtils.closeQuietly( input, null );
+            Files.copy( content.getSpool().toPath(), out );
+        }
+        else
+        {
+            out.write( objectMapper.writeValueAsBytes( content ) );
         }
     }
 
-    private Callable<Boolean> download( String contentBuildDir, final String path, final String filePath,
-                                        final CookieStore cookieStore )
+    private Callable<StagedArtifact> download( String contentBuildDir, final String path, final HistoricalEntryDTO entry,
+                                        final CookieStore cookieStore, final ArchiveProgress progress )
     {
         return () -> {
             Thread.currentThread().setName( "download--" + path );
 
-            final File target = new File( contentBuildDir, filePath );
+            final File target = new File( contentBuildDir, entry.getPath() );
+            if ( artifactCache.fetch( entry, target ) )
+            {
+                return StagedArtifact.cached( entry, target );
+            }
+
+            Optional<CompletableFuture<Boolean>> flight = coalescer.follow( path, entry, target );
+            if ( flight.isPresent() )
+            {
+                return awaitFlight( path, flight.get() ) ?
+                                StagedArtifact.cached( entry, target ) :
+                                StagedArtifact.failed( entry );
+            }
+
             final File dir = target.getParentFile();
             dir.mkdirs();
             final File part = new File( dir, target.getName() + PART_SUFFIX );
 
-            final HttpClientContext context = new HttpClientContext();
-            context.setCookieStore( cookieStore );
-            final HttpGet request = new HttpGet( path );
-            InputStream input = null;
+            File downloaded = null;
             try
             {
-                CloseableHttpResponse response = client.execute( request, context );
-                int statusCode = response.getStatusLine().getStatusCode();
-                if ( statusCode == 200 )
+                // a .part left by an interrupted transfer is resumed rather than fetched again from byte zero
+                if ( fetch( path, entry, cookieStore, fileSink( part, progress ) ) )
                 {
-                    try (FileOutputStream out = new FileOutputStream( part ))
+                    try
+                    {
+                        Files.move( part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                                    StandardCopyOption.REPLACE_EXISTING );
+                    }
+                    catch ( final IOException e )
                     {
-                        input = response.getEntity().getContent();
-                        IOUtils.copy( input, out );
+                        logger.warn( "Failed to move the download of path: {} to {}", path, target, e );
+                        return StagedArtifact.failed( entry );
                     }
-                    part.renameTo( target );
-                    return true;
+                    downloaded = target;
+                    artifactCache.store( entry, target );
+                    return StagedArtifact.spooled( entry, target );
+                }
+                return StagedArtifact.failed( entry );
+            }
+            finally
+            {
+                coalescer.land( path, downloaded );
+            }
+        };
+    }
+
+    private Callable<Boolean> downloadToPipeline( final File spoolBuildDir, final String path,
+                                                  final HistoricalEntryDTO entry, final CookieStore cookieStore,
+                                                  final ArchiveProgress progress,
+                                                  final BlockingQueue<StagedArtifact> pipeline )
+    {
+        return () -> {
+            Thread.currentThread().setName( "download--" + path );
+
+            StagedArtifact staged = StagedArtifact.failed( entry );
+            try
+            {
+                staged = stage( spoolBuildDir, path, entry, cookieStore, progress );
+            }
+            catch ( final Exception e )
+            {
+                logger.warn( "Download failed for path: {}", path, e );
+            }
+            finally
+            {
+                pipeline.put( staged );
+            }
+            return !staged.isFailed();
+        };
+    }
+
+    private StagedArtifact stage( final File spoolBuildDir, final String path, final HistoricalEntryDTO entry,
+                                  final CookieStore cookieStore, final ArchiveProgress progress )
+    {
+        final File spooled = new File( spoolBuildDir, UUID.randomUUID().toString() );
+        if ( artifactCache.fetch( entry, spooled ) )
+        {
+            return StagedArtifact.cached( entry, spooled );
+        }
+
+        Optional<CompletableFuture<Boolean>> flight = coalescer.follow( path, entry, spooled );
+        if ( flight.isPresent() )
+        {
+            return awaitFlight( path, flight.get() ) ?
+                            StagedArtifact.cached( entry, spooled ) :
+                            StagedArtifact.failed( entry );
+        }
+
+        Long size = entry.getSize();
+        if ( size != null && size <= PIPELINE_IN_MEMORY_LIMIT )
+        {
+            byte[] bytes = null;
+            try
+            {
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream( size.intValue() );
+                if ( fetch( path, entry, cookieStore, memorySink( buffer, progress ) ) )
+                {
+                    bytes = buffer.toByteArray();
+                    artifactCache.store( entry, bytes );
+                    return StagedArtifact.inMemory( entry, bytes );
                 }
-                else if ( statusCode == 404 )
+                return StagedArtifact.failed( entry );
+            }
+            finally
+            {
+                coalescer.land( path, bytes );
+            }
+        }
+
+        File downloaded = null;
+        try
+        {
+            spoolBuildDir.mkdirs();
+            if ( fetch( path, entry, cookieStore, fileSink( spooled, progress ) ) )
+            {
+                downloaded = spooled;
+                artifactCache.store( entry, spooled );
+                return StagedArtifact.spooled( entry, spooled );
+            }
+            spooled.delete();
+            return StagedArtifact.failed( entry );
+        }
+        finally
+        {
+            coalescer.land( path, downloaded );
+        }
+    }
+
+    /**
+     * Wait for the transfer another generation leads, on a download thread which doesn't hold a download permit.
+     */
+    private boolean awaitFlight( final String path, final CompletableFuture<Boolean> flight )
+    {
+        try
+        {
+            return flight.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch ( final ExecutionException e )
+        {
+            logger.warn( "Shared download failed for path: {}", path, e.getCause() );
+            return false;
+        }
+    }
+
+    /**
+     * Download the entries with the reactive engine. Items are emitted on the download pool, so consumers may block
+     * and the (blocking) cache updates stay off the event loop.
+     */
+    private Multi<StagedArtifact> downloadReactive( final Map<String, HistoricalEntryDTO> downloadEntries,
+                                                    final Function<HistoricalEntryDTO, File> targets,
+                                                    final ArchiveProgress progress )
+    {
+        return Multi.createFrom()
+                    .iterable( downloadEntries.entrySet() )
+                    .onItem()
+                    .transformToUni( e -> stageReactive( e.getKey(), e.getValue(), targets.apply( e.getValue() ),
+                                                         progress )
+                                    .onFailure()
+                                    .recoverWithItem( failure -> {
+                                        // one entry failing doesn't end the stream of the others
+                                        logger.warn( "Download failed for path: {}", e.getKey(), failure );
+                                        return StagedArtifact.failed( e.getValue() );
+                                    } ) )
+                    .merge( downloadConcurrency )
+                    .emitOn( executorService )
+                    .onItem()
+                    .invoke( staged -> {
+                        if ( !staged.isFailed() && !staged.isCached() )
+                        {
+                            artifactCache.store( staged.getEntry(), staged.getFile() );
+                        }
+                    } );
+    }
+
+    private Uni<StagedArtifact> stageReactive( final String path, final HistoricalEntryDTO entry, final File target,
+                                               final ArchiveProgress progress )
+    {
+        return Uni.createFrom()
+                  .item( () -> artifactCache.fetch( entry, target ) )
+                  .runSubscriptionOn( executorService )
+                  .onItem()
+                  .transformToUni( cached -> cached ?
+                                  Uni.createFrom().item( StagedArtifact.cached( entry, target ) ) :
+                                  downloadShared( path, entry, target, progress ) );
+    }
+
+    private Uni<StagedArtifact> downloadShared( final String path, final HistoricalEntryDTO entry, final File target,
+                                                final ArchiveProgress progress )
+    {
+        Optional<CompletableFuture<Boolean>> flight = coalescer.follow( path, entry, target );
+        if ( flight.isPresent() )
+        {
+            return Uni.createFrom()
+                      .completionStage( flight.get() )
+                      .onItem()
+                      .transform( shared -> shared ?
+                                      StagedArtifact.cached( entry, target ) :
+                                      StagedArtifact.failed( entry ) );
+        }
+        // followers get their copy on the download pool rather than on the event loop
+        return reactiveDownloader.download( path, entry, target, progress::transferred )
+                                 .emitOn( executorService )
+                                 .onTermination()
+                                 .invoke( ( downloaded, failure, cancelled ) -> {
+                                     File content = Boolean.TRUE.equals( downloaded ) ? target : null;
+                                     coalescer.land( path, content );
+                                 } )
+                                 .onItem()
+                                 .transform( downloaded -> downloaded ?
+                                                 StagedArtifact.spooled( entry, target ) :
+                                                 StagedArtifact.failed( entry ) );
+    }
+
+    /**
+     * Called by one thread at a time, the consumer of the downloads of the generation.
+     */
+    private void recordProgress( final ArchiveProgress progress, final ArchiveResultDTO result,
+                                 final StagedArtifact staged )
+    {
+        if ( staged.isFailed() )
+        {
+            progress.failed( staged.getSize() );
+            result.getFailed().add( staged.getEntry() );
+        }
+        else if ( staged.isCached() )
+        {
+            progress.skipped( staged.getSize() );
+            result.getCached().add( staged.getEntry() );
+        }
+        else
+        {
+            progress.downloaded( staged.getSize() );
+            result.getDownloaded().add( staged.getEntry() );
+        }
+    }
+
+    private void enqueue( final BlockingQueue<StagedArtifact> pipeline, final StagedArtifact staged )
+    {
+        try
+        {
+            pipeline.put( staged );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            staged.release();
+        }
+    }
+
+    /**
+     * Fetch the path into the sink, retrying transient failures with backoff. While the circuit of the target host is
+     * open the fetch waits without using up its attempts, for at most as many open periods as it has attempts.
+     */
+    private boolean fetch( final String path, final HistoricalEntryDTO entry, final CookieStore cookieStore,
+                           final DownloadSink sink )
+    {
+        if ( missingArtifacts.isMissing( path ) )
+        {
+            logger.trace( "<<<Known missing path: {}", path );
+            return false;
+        }
+
+        final long pauseLimit =
+                        System.currentTimeMillis() + retryPolicy.getMaxAttempts() * circuitBreaker.getOpenMillis();
+        int attempt = 0;
+        while ( true )
+        {
+            long delay;
+            HostCircuitBreaker.Ticket ticket = circuitBreaker.acquire( path );
+            long pause = ticket.getPauseMillis();
+            if ( pause > 0 )
+            {
+                if ( System.currentTimeMillis() + pause > pauseLimit )
                 {
-                    logger.trace( "<<<Not Found path: {}", path );
+                    logger.warn( "Giving up path: {}, the circuit of its host stays open", path );
                     return false;
                 }
+                delay = pause;
+            }
+            else
+            {
+                attempt++;
+                FetchResult result = fetchWithPermit( path, entry, cookieStore, sink );
+                if ( result == FetchResult.TRANSIENT )
+                {
+                    ticket.recordFailure();
+                }
                 else
                 {
-                    logger.trace( "<<<Error path: {}", path );
+                    // a transfer which failed the verification still got an answer from the host
+                    ticket.recordSuccess();
+                    if ( result != FetchResult.CORRUPTED )
+                    {
+                        return result == FetchResult.DONE;
+                    }
+                }
+                if ( attempt >= retryPolicy.getMaxAttempts() )
+                {
+                    logger.warn( "Giving up path: {} after {} attempts", path, attempt );
                     return false;
                 }
+                delay = retryPolicy.backoffMillis( attempt );
+                logger.debug( "Retrying path: {} in {}ms, attempt {} failed", path, delay, attempt );
             }
-            catch ( final Exception e )
+
+            try
             {
-                e.printStackTrace();
-                logger.trace( "Download failed for path: {}", path );
+                Thread.sleep( delay );
             }
-            finally
+            catch ( final InterruptedException e )
             {
-                request.releaseConnection();
-                request.reset();
-                IOUtils.closeQuietly( input, null );
+                Thread.currentThread().interrupt();
+                return false;
             }
-            return false;
-        };
+        }
     }
 
-    private void restoreGenerateStatusFromDisk() throws IOException
+    private FetchResult fetchWithPermit( final String path, final HistoricalEntryDTO entry,
+                                         final CookieStore cookieStore, final DownloadSink sink )
     {
-        File targetDir = new File( archiveDir );
-        if ( !targetDir.exists() )
+        try
         {
-            return;
+            downloadPermits.acquire();
         }
-        List<File> contents = walkAllFiles( archiveDir );
-        for ( File content : contents )
+        catch ( final InterruptedException e )
         {
-            if ( content.getName().endsWith( PART_ARCHIVE_SUFFIX ) )
+            Thread.currentThread().interrupt();
+            return FetchResult.FAILED;
+        }
+        try
+        {
+            return doFetch( path, entry, cookieStore, sink, true );
+        }
+        finally
+        {
+            downloadPermits.release();
+        }
+    }
+
+    private FetchResult doFetch( final String path, final HistoricalEntryDTO entry, final CookieStore cookieStore,
+                                 final DownloadSink sink, final boolean resume )
+    {
+        final Long expectedSize = entry.getSize();
+        long offset = resume ? sink.partialLength() : 0;
+        if ( expectedSize != null && offset >= expectedSize )
+        {
+            // nothing tells a complete leftover from a corrupted one, start over
+            offset = 0;
+        }
+
+        final HttpClientContext context = new HttpClientContext();
+        context.setCookieStore( cookieStore );
+        final HttpGet request = new HttpGet( path );
+        if ( offset > 0 )
+        {
+            request.setHeader( HttpHeaders.RANGE, "bytes=" + offset + "-" );
+        }
+        InputStream input = null;
+        try
+        {
+            CloseableHttpResponse response = client.execute( request, context );
+            int statusCode = response.getStatusLine().getStatusCode();
+            if ( statusCode == 200 || ( statusCode == 206 && isResumedRange( response, offset, expectedSize ) ) )
+            {
+                // a 200 answer to a range request means the server ignored it, so the full content is written
+                final boolean append = statusCode == 206;
+                final ChecksumVerifier verifier = new ChecksumVerifier( entry );
+                verifier.checkContentLength( response.getEntity().getContentLength(), append ? offset : 0 );
+                if ( append )
+                {
+                    try (InputStream partial = sink.openPartial())
+                    {
+                        verifier.updatePartial( partial );
+                    }
+                }
+                try (OutputStream out = verifier.wrap( sink.open( append ) ))
+                {
+                    input = response.getEntity().getContent();
+                    IOUtils.copy( input, out );
+                }
+                verifier.verify();
+                if ( append )
+                {
+                    logger.trace( "<<<Resumed path: {} from byte {}", path, offset );
+                }
+                return FetchResult.DONE;
+            }
+            else if ( offset > 0 && ( statusCode == 206 || statusCode == 416 ) )
+            {
+                logger.trace( "<<<Unusable range response {} for path: {}, fetching it from the start", statusCode,
+                              path );
+                request.releaseConnection();
+                return doFetch( path, entry, cookieStore, sink, false );
+            }
+            else if ( statusCode == 404 )
             {
-                treated.put( content.getName().split( PART_ARCHIVE_SUFFIX )[0],
-                             ArchiveStatus.inProgress.getArchiveStatus() );
-                continue;
+                logger.trace( "<<<Not Found path: {}", path );
+                missingArtifacts.recordMissing( path );
+                return FetchResult.FAILED;
             }
-            else if ( content.getName().endsWith( ARCHIVE_SUFFIX ) )
+            else
             {
-                treated.put( content.getName().split( ARCHIVE_SUFFIX )[0], ArchiveStatus.completed.getArchiveStatus() );
-                continue;
+                logger.trace( "<<<Error {} path: {}", statusCode, path );
+                return DownloadRetryPolicy.isTransient( statusCode ) ? FetchResult.TRANSIENT : FetchResult.FAILED;
             }
         }
+        catch ( final ArtifactVerificationException e )
+        {
+            logger.warn( "Rejected download of path: {}, {}", path, e.getMessage() );
+            sink.discard();
+            return FetchResult.CORRUPTED;
+        }
+        catch ( final IOException e )
+        {
+            // connection resets and timeouts, a partially written file sink is resumed by the next attempt
+            logger.trace( "Download failed for path: {}", path, e );
+            return FetchResult.TRANSIENT;
+        }
+        catch ( final Exception e )
+        {
+            e.printStackTrace();
+            logger.trace( "Download failed for path: {}", path );
+        }
+        finally
+        {
+            request.releaseConnection();
+            request.reset();
+            IOUtils.closeQuietly( input, null );
+        }
+        return FetchResult.FAILED;
+    }
+
+    /**
+     * Check the Content-Range of a partial response continues exactly where the local content stops and, when the
+     * tracked content knows the size, that it describes the same artifact.
+     */
+    private boolean isResumedRange( final CloseableHttpResponse response, final long offset, final Long expectedSize )
+    {
+        Header header = response.getFirstHeader( HttpHeaders.CONTENT_RANGE );
+        if ( offset <= 0 || header == null )
+        {
+            return false;
+        }
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher( header.getValue().trim() );
+        if ( !matcher.matches() || Long.parseLong( matcher.group( 1 ) ) != offset )
+        {
+            return false;
+        }
+        String total = matcher.group( 3 );
+        return expectedSize == null || "*".equals( total ) || Long.parseLong( total ) == expectedSize;
+    }
+
+    private DownloadSink fileSink( final File file, final ArchiveProgress progress )
+    {
+        return new DownloadSink()
+        {
+            @Override
+            public long partialLength()
+            {
+                return file.exists() ? file.length() : 0;
+            }
+
+            @Override
+            public InputStream openPartial() throws IOException
+            {
+                return new FileInputStream( file );
+            }
+
+            @Override
+            public OutputStream open( final boolean append ) throws IOException
+            {
+                return counted( new FileOutputStream( file, append ), progress );
+            }
+
+            @Override
+            public void discard()
+            {
+                file.delete();
+            }
+        };
+    }
+
+    private DownloadSink memorySink( final ByteArrayOutputStream buffer, final ArchiveProgress progress )
+    {
+        return new DownloadSink()
+        {
+            @Override
+            public long partialLength()
+            {
+                return 0;
+            }
+
+            @Override
+            public InputStream openPartial()
+            {
+                return new ByteArrayInputStream( new byte[0] );
+            }
+
+            @Override
+            public OutputStream open( final boolean append )
+            {
+                buffer.reset();
+                return counted( buffer, progress );
+            }
+
+            @Override
+            public void discard()
+            {
+                buffer.reset();
+            }
+        };
+    }
+
+    /**
+     * Count the bytes of a transfer into the progress of the generation as they're written.
+     */
+    private OutputStream counted( final OutputStream out, final ArchiveProgress progress )
+    {
+        return new ProxyOutputStream( out )
+        {
+            @Override
+            protected void afterWrite( final int n )
+            {
+                progress.transferred( n );
+            }
+        };
     }
 
-    private void recordInProgress( String buildConfigId )
+    private enum FetchResult
     {
-        treated.remove( buildConfigId );
-        treated.put( buildConfigId, ArchiveStatus.inProgress.getArchiveStatus() );
+        DONE, FAILED, TRANSIENT,
+        /**
+         * The host answered but the content failed the verification, retried without counting against the host.
+         */
+        CORRUPTED
     }
 
-    private void recordCompleted( String buildConfigId )
+    /**
+     * Where a transfer is written to. Only a sink which reports partial content is resumed with a range request.
+     */
+    private interface DownloadSink
     {
-        treated.remove( buildConfigId );
-        treated.put( buildConfigId, ArchiveStatus.completed.getArchiveStatus() );
+        long partialLength();
+
+        InputStream openPartial() throws IOException;
+
+        OutputStream open( boolean append ) throws IOException;
+
+        /**
+         * Drop content which failed the verification, the next attempt starts from scratch.
+         */
+        void discard();
     }
 }
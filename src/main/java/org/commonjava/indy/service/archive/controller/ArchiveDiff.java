@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.commonjava.indy.service.archive.model.dto.ArchiveResultDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.commonjava.indy.service.archive.util.ContentFingerprint;
+import org.commonjava.indy.service.archive.util.ZipCentralDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Difference between the downloads of a tracked content and the previous archive of the build. A download is unchanged
+ * when the archive still has its entry and the recorded result of the previous generation archived the same artifact:
+ * same store key, path and checksums. Unchanged entries are copied from the archive as they are, the other downloads
+ * are fetched, and the entries the tracked content doesn't list any more are dropped.
+ */
+class ArchiveDiff
+{
+    private final File archive;
+
+    // entries of the previous archive by name, they're named after the path of the download
+    private final Map<String, ArchiveEntry> unchanged = new LinkedHashMap<>();
+
+    private final List<HistoricalEntryDTO> unchangedDownloads = new ArrayList<>();
+
+    // by url, as the download entries are
+    private final Map<String, HistoricalEntryDTO> changed = new HashMap<>();
+
+    private int dropped;
+
+    private ArchiveDiff( final File archive )
+    {
+        this.archive = archive;
+    }
+
+    static ArchiveDiff compute( final File archive, final ArchiveResultDTO previous,
+                                final Map<String, HistoricalEntryDTO> downloads ) throws IOException
+    {
+        // downloads without any checksum can't be told unchanged, they're fetched again
+        Map<String, String> archived = Stream.concat( previous.getDownloaded().stream(), previous.getCached().stream() )
+                                             .filter( ArchiveDiff::hasChecksum )
+                                             .collect( Collectors.toMap( HistoricalEntryDTO::getPath,
+                                                                         ContentFingerprint::of,
+                                                                         ( first, second ) -> first ) );
+        Map<String, ArchiveEntry> entries = new HashMap<>();
+        ZipCentralDirectory.read( archive, entry -> entries.put( entry.getName(), entry ) );
+
+        ArchiveDiff diff = new ArchiveDiff( archive );
+        for ( Map.Entry<String, HistoricalEntryDTO> download : downloads.entrySet() )
+        {
+            HistoricalEntryDTO entry = download.getValue();
+            ArchiveEntry archivedEntry = entries.get( entry.getPath() );
+            if ( archivedEntry != null && !diff.unchanged.containsKey( entry.getPath() ) && hasChecksum( entry )
+                            && ContentFingerprint.of( entry ).equals( archived.get( entry.getPath() ) ) )
+            {
+                diff.unchanged.put( entry.getPath(), archivedEntry );
+                diff.unchangedDownloads.add( entry );
+            }
+            else
+            {
+                diff.changed.put( download.getKey(), entry );
+            }
+        }
+        diff.dropped = entries.size() - diff.unchanged.size();
+        return diff;
+    }
+
+    File getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * @return the entries to copy, in the order they are stored in the archive so it's read sequentially
+     */
+    List<ArchiveEntry> getUnchanged()
+    {
+        return unchanged.values()
+                        .stream()
+                        .sorted( Comparator.comparingLong( ArchiveEntry::getHeaderOffset ) )
+                        .collect( Collectors.toList() );
+    }
+
+    List<HistoricalEntryDTO> getUnchangedDownloads()
+    {
+        return unchangedDownloads;
+    }
+
+    Map<String, HistoricalEntryDTO> getChanged()
+    {
+        return changed;
+    }
+
+    /**
+     * @return the number of entries of the archive which are not copied, replaced or no longer tracked
+     */
+    int getDropped()
+    {
+        return dropped;
+    }
+
+    private static boolean hasChecksum( final HistoricalEntryDTO entry )
+    {
+        return entry.getMd5() != null || entry.getSha1() != null || entry.getSha256() != null;
+    }
+}
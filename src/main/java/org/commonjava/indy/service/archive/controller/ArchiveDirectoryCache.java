@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.util.ZipCentralDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Central directories of the stored archives by build config id, so an entry can be read from its offset without
+ * parsing the directory on every request. The number of cached entries over all archives is capped, the least
+ * recently used archives are evicted first. A cached directory is only used while the checksum of the archive it was
+ * read from is the indexed one, a regenerated archive is read again.
+ */
+@ApplicationScoped
+public class ArchiveDirectoryCache
+{
+    private static final long MAX_CACHED_ENTRIES = 500_000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    // access-ordered, so the iteration starts with the least recently used directory
+    private final Map<String, CachedDirectory> directories = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private long cachedEntries;
+
+    /**
+     * @param channel open on the file of the archive, a directory which isn't cached yet is read from it so the offsets
+     * are the ones of the file the entry is served from
+     */
+    public Optional<ArchiveEntry> getEntry( final ArchiveMetadata archive, final FileChannel channel,
+                                            final String path ) throws IOException
+    {
+        Map<String, ArchiveEntry> entries = getDirectory( archive, channel );
+        ArchiveEntry entry = entries.get( path );
+        if ( entry == null && !path.startsWith( "/" ) )
+        {
+            // archived paths start with a slash
+            entry = entries.get( "/" + path );
+        }
+        return Optional.ofNullable( entry );
+    }
+
+    public void invalidate( final String buildConfigId )
+    {
+        synchronized ( directories )
+        {
+            CachedDirectory removed = directories.remove( buildConfigId );
+            if ( removed != null )
+            {
+                cachedEntries -= removed.entries.size();
+            }
+        }
+    }
+
+    private Map<String, ArchiveEntry> getDirectory( final ArchiveMetadata archive, final FileChannel channel )
+                    throws IOException
+    {
+        final String buildConfigId = archive.getBuildConfigId();
+        synchronized ( directories )
+        {
+            CachedDirectory cached = directories.get( buildConfigId );
+            if ( cached != null && Objects.equals( cached.checksum, archive.getChecksum() ) )
+            {
+                return cached.entries;
+            }
+        }
+
+        // read outside of the lock, concurrent first lookups of one archive may both read it, which is harmless
+        Map<String, ArchiveEntry> entries = new HashMap<>();
+        ZipCentralDirectory.read( channel, archive.getFile(), entry -> entries.put( entry.getName(), entry ) );
+        logger.debug( "Read {} entries from the central directory of {}", entries.size(), archive.getFile() );
+
+        synchronized ( directories )
+        {
+            CachedDirectory previous =
+                            directories.put( buildConfigId, new CachedDirectory( archive.getChecksum(), entries ) );
+            if ( previous != null )
+            {
+                cachedEntries -= previous.entries.size();
+            }
+            cachedEntries += entries.size();
+
+            Iterator<Map.Entry<String, CachedDirectory>> it = directories.entrySet().iterator();
+            while ( cachedEntries > MAX_CACHED_ENTRIES && directories.size() > 1 && it.hasNext() )
+            {
+                Map.Entry<String, CachedDirectory> eldest = it.next();
+                if ( eldest.getKey().equals( buildConfigId ) )
+                {
+                    continue;
+                }
+                cachedEntries -= eldest.getValue().entries.size();
+                it.remove();
+            }
+        }
+        return entries;
+    }
+
+    private static final class CachedDirectory
+    {
+        private final String checksum;
+
+        private final Map<String, ArchiveEntry> entries;
+
+        private CachedDirectory( final String checksum, final Map<String, ArchiveEntry> entries )
+        {
+            this.checksum = checksum;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generated archives by build config id, so serving or deleting an archive doesn't have to list the archive directory.
+ * The index is maintained as archives are rendered and deleted, and rebuilt from the archive directory at startup. The
+ * sha256 of each archive is kept next to it in a {@code .sha256} file, and the fingerprint of the tracked content it
+ * was generated from, when all of it made it into the archive, in a {@code .fingerprint} file.
+ */
+@ApplicationScoped
+public class ArchiveIndex
+{
+    private static final String ARCHIVE_DIR = "/archive";
+
+    private static final String ARCHIVE_SUFFIX = ".zip";
+
+    private static final String PART_ARCHIVE_SUFFIX = ".part" + ARCHIVE_SUFFIX;
+
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private String archiveDir;
+
+    private final Map<String, ArchiveMetadata> archives = new ConcurrentHashMap<>();
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    public ArchiveIndex()
+    {
+    }
+
+    public ArchiveIndex( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init() throws IOException
+    {
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        archiveDir = String.format( "%s%s", storeDir, ARCHIVE_DIR );
+        rebuild();
+    }
+
+    public Optional<ArchiveMetadata> get( final String buildConfigId )
+    {
+        ArchiveMetadata metadata = archives.get( buildConfigId );
+        if ( metadata != null && !metadata.getFile().exists() )
+        {
+            logger.warn( "Archive {} was removed from disk behind the index", metadata.getFile() );
+            archives.remove( buildConfigId, metadata );
+            return Optional.empty();
+        }
+        return Optional.ofNullable( metadata );
+    }
+
+    /**
+     * Index the archive which has just been moved to its final place.
+     */
+    public ArchiveMetadata register( final String buildConfigId, final File archive, final String checksum )
+    {
+        File checksumFile = checksumFile( archive );
+        try
+        {
+            if ( checksum != null )
+            {
+                FileUtils.writeStringToFile( checksumFile, checksum, StandardCharsets.UTF_8 );
+            }
+            else
+            {
+                Files.deleteIfExists( checksumFile.toPath() );
+            }
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to record the checksum of archive {}", archive, e );
+        }
+
+        ArchiveMetadata metadata =
+                        new ArchiveMetadata( buildConfigId, archive, archive.length(), archive.lastModified(),
+                                             checksum );
+        archives.put( buildConfigId, metadata );
+        return metadata;
+    }
+
+    /**
+     * Record the fingerprint of the tracked content the archive was generated from.
+     *
+     * @param fingerprint null if the archive doesn't hold all of its tracked content
+     */
+    public void recordFingerprint( final String buildConfigId, final String fingerprint )
+    {
+        File fingerprintFile = fingerprintFile( new File( archiveDir, buildConfigId + ARCHIVE_SUFFIX ) );
+        if ( fingerprint == null )
+        {
+            fingerprints.remove( buildConfigId );
+            fingerprintFile.delete();
+            return;
+        }
+        try
+        {
+            FileUtils.writeStringToFile( fingerprintFile, fingerprint, StandardCharsets.UTF_8 );
+            fingerprints.put( buildConfigId, fingerprint );
+        }
+        catch ( final IOException e )
+        {
+            // without it, the same tracked content is generated again rather than recognized
+            logger.warn( "Failed to record the fingerprint of archive {}", buildConfigId, e );
+            fingerprints.remove( buildConfigId );
+            fingerprintFile.delete();
+        }
+    }
+
+    /**
+     * @return the fingerprint of the tracked content the archive was generated from, nothing if it's not known
+     */
+    public Optional<String> getFingerprint( final String buildConfigId )
+    {
+        return get( buildConfigId ).isPresent() ? Optional.ofNullable( fingerprints.get( buildConfigId ) ) :
+                        Optional.empty();
+    }
+
+    public Optional<ArchiveMetadata> remove( final String buildConfigId )
+    {
+        ArchiveMetadata metadata = archives.remove( buildConfigId );
+        fingerprints.remove( buildConfigId );
+        File archive = new File( archiveDir, buildConfigId + ARCHIVE_SUFFIX );
+        checksumFile( archive ).delete();
+        fingerprintFile( archive ).delete();
+        return Optional.ofNullable( metadata );
+    }
+
+    public Set<String> getBuildConfigIds()
+    {
+        return Collections.unmodifiableSet( archives.keySet() );
+    }
+
+    public int size()
+    {
+        return archives.size();
+    }
+
+    private void rebuild() throws IOException
+    {
+        archives.clear();
+        fingerprints.clear();
+        Path dir = Paths.get( archiveDir );
+        if ( !Files.isDirectory( dir ) )
+        {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( dir, "*" + ARCHIVE_SUFFIX ))
+        {
+            for ( Path path : stream )
+            {
+                String name = path.getFileName().toString();
+                if ( name.endsWith( PART_ARCHIVE_SUFFIX ) || !Files.isRegularFile( path ) )
+                {
+                    continue;
+                }
+                File archive = path.toFile();
+                String buildConfigId = name.substring( 0, name.length() - ARCHIVE_SUFFIX.length() );
+                archives.put( buildConfigId,
+                              new ArchiveMetadata( buildConfigId, archive, archive.length(), archive.lastModified(),
+                                                   readChecksum( archive ) ) );
+                readSidecar( fingerprintFile( archive ) ).ifPresent(
+                                fingerprint -> fingerprints.put( buildConfigId, fingerprint ) );
+            }
+        }
+        logger.info( "Indexed {} archives in {}", archives.size(), archiveDir );
+    }
+
+    private String readChecksum( final File archive )
+    {
+        return readSidecar( checksumFile( archive ) ).orElse( null );
+    }
+
+    private Optional<String> readSidecar( final File sidecar )
+    {
+        if ( !sidecar.exists() )
+        {
+            return Optional.empty();
+        }
+        try
+        {
+            return Optional.of( FileUtils.readFileToString( sidecar, StandardCharsets.UTF_8 ).trim() );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to read {}", sidecar, e );
+            return Optional.empty();
+        }
+    }
+
+    private File checksumFile( final File archive )
+    {
+        return new File( archive.getParentFile(), archive.getName() + CHECKSUM_SUFFIX );
+    }
+
+    private File fingerprintFile( final File archive )
+    {
+        return new File( archive.getParentFile(), archive.getName() + FINGERPRINT_SUFFIX );
+    }
+}
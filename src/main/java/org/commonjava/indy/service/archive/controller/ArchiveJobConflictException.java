@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+/**
+ * A generation of the archive is already queued or running. Jobs of the same build share its content directory and
+ * its part archive, so they're never run side by side.
+ */
+public class ArchiveJobConflictException
+                extends RuntimeException
+{
+    public ArchiveJobConflictException( final String buildConfigId )
+    {
+        super( "A generation of archive " + buildConfigId + " is already in progress" );
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.ArchiveJob;
+import org.commonjava.indy.service.archive.model.ArchiveProgress;
+import org.commonjava.indy.service.archive.model.ArchiveStatus;
+import org.commonjava.indy.service.archive.model.dto.ArchiveStatusDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The state of the archive generation jobs. Every transition is appended to a journal under the storage dir before the
+ * call making it returns, and the journal is replayed (then compacted) at startup. Reads go to a concurrent map of
+ * immutable snapshots and never lock.
+ * <p>
+ * The journal is written outside of the map updates: a transition only queues its record there, then the records queued
+ * so far are written and synced together under the journal lock, so concurrent transitions share one sync. The journal
+ * is compacted again whenever it outgrows twice its last compacted size.
+ * <p>
+ * Jobs which were not finished when the service stopped are recorded as failed on replay, nothing resumes them.
+ */
+@ApplicationScoped
+public class ArchiveJobRegistry
+{
+    private static final String JOURNAL_FILE = "/jobs.journal";
+
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    ArchiveIndex archiveIndex;
+
+    private File journal;
+
+    private FileChannel journalChannel;
+
+    // records of the transitions made in the map, not written yet. They are queued while the map entry is locked, so
+    // the records of a job stay in the order of its transitions
+    private final Queue<ArchiveJob> unjournaled = new ConcurrentLinkedQueue<>();
+
+    private long journalSize;
+
+    private long compactedSize;
+
+    // the journal is never compacted below this size, package-private for tests
+    long compactMinSize = COMPACT_MIN_SIZE;
+
+    private final Map<String, ArchiveJob> jobs = new ConcurrentHashMap<>();
+
+    // live counters of the jobs run since the service started, they are not journaled
+    private final Map<String, ArchiveProgress> progress = new ConcurrentHashMap<>();
+
+    public ArchiveJobRegistry()
+    {
+    }
+
+    public ArchiveJobRegistry( PreSeedConfig preSeedConfig, ObjectMapper objectMapper, ArchiveIndex archiveIndex )
+    {
+        this.preSeedConfig = preSeedConfig;
+        this.objectMapper = objectMapper;
+        this.archiveIndex = archiveIndex;
+    }
+
+    @PostConstruct
+    public void init() throws IOException
+    {
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        journal = new File( String.format( "%s%s", storeDir, JOURNAL_FILE ) );
+        journal.getParentFile().mkdirs();
+
+        if ( journal.exists() )
+        {
+            replay();
+        }
+        else
+        {
+            // first start with a journal, the archives generated so far are the only history there is
+            long now = System.currentTimeMillis();
+            archiveIndex.getBuildConfigIds()
+                        .forEach( id -> jobs.put( id, new ArchiveJob( id ).transition( ArchiveStatus.completed,
+                                                                                       now ) ) );
+        }
+        compact();
+        openJournal();
+        logger.info( "Restored {} archive jobs from {}", jobs.size(), journal );
+    }
+
+    @PreDestroy
+    public synchronized void destroy()
+    {
+        try
+        {
+            journalChannel.close();
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to close job journal {}", journal, e );
+        }
+    }
+
+    public Optional<ArchiveJob> get( final String buildConfigId )
+    {
+        return Optional.ofNullable( jobs.get( buildConfigId ) );
+    }
+
+    public Optional<ArchiveStatusDTO> getStatus( final String buildConfigId )
+    {
+        ArchiveJob job = jobs.get( buildConfigId );
+        return job == null ? Optional.empty() : Optional.of( new ArchiveStatusDTO( job, progress.get( buildConfigId ) ) );
+    }
+
+    /**
+     * Reset the progress counters of the job, at the start of a generation.
+     */
+    public ArchiveProgress newProgress( final String buildConfigId )
+    {
+        ArchiveProgress started = new ArchiveProgress();
+        progress.put( buildConfigId, started );
+        return started;
+    }
+
+    public boolean exists( final String buildConfigId )
+    {
+        return jobs.containsKey( buildConfigId );
+    }
+
+    public Collection<ArchiveJob> getJobs()
+    {
+        return Collections.unmodifiableCollection( jobs.values() );
+    }
+
+    public ArchiveJob transition( final String buildConfigId, final ArchiveStatus status )
+    {
+        final long now = System.currentTimeMillis();
+        ArchiveJob transitioned = jobs.compute( buildConfigId, ( id, current ) -> {
+            ArchiveJob next = ( current == null ? new ArchiveJob( id ) : current ).transition( status, now );
+            unjournaled.add( next );
+            if ( status == ArchiveStatus.queued )
+            {
+                progress.remove( id );
+            }
+            else if ( status.isFinished() )
+            {
+                ArchiveProgress finished = progress.get( id );
+                if ( finished != null )
+                {
+                    finished.finish();
+                }
+            }
+            return next;
+        } );
+        flush();
+        return transitioned;
+    }
+
+    /**
+     * Queue a job for the build, unless one is queued or running already.
+     *
+     * @return the former state of the job, to {@link #restore} if it's not submitted after all; null if there was none
+     * @throws ArchiveJobConflictException if the job of the build is not finished
+     */
+    public ArchiveJob queue( final String buildConfigId )
+    {
+        final ArchiveJob[] previous = new ArchiveJob[1];
+        final long now = System.currentTimeMillis();
+        jobs.compute( buildConfigId, ( id, current ) -> {
+            if ( current != null && !current.getStatus().isFinished() )
+            {
+                throw new ArchiveJobConflictException( id );
+            }
+            previous[0] = current;
+            ArchiveJob next = ( current == null ? new ArchiveJob( id ) : current ).transition( ArchiveStatus.queued,
+                                                                                               now );
+            unjournaled.add( next );
+            progress.remove( id );
+            return next;
+        } );
+        flush();
+        return previous[0];
+    }
+
+    /**
+     * Put back the state a job had before a transition which didn't happen after all, e.g. a rejected submission.
+     *
+     * @param previous the former state, null if there was no job
+     */
+    public void restore( final String buildConfigId, final ArchiveJob previous )
+    {
+        jobs.compute( buildConfigId, ( id, current ) -> {
+            // a job without a status is the tombstone of a removed one
+            unjournaled.add( previous == null ? new ArchiveJob( id ) : previous );
+            return previous;
+        } );
+        flush();
+    }
+
+    /**
+     * Write and sync the queued records. A record queued by another thread may have been written already by the time
+     * the lock is held, then its sync is complete too and there is nothing left to do.
+     */
+    private synchronized void flush()
+    {
+        if ( unjournaled.isEmpty() )
+        {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        ArchiveJob job;
+        while ( ( job = unjournaled.poll() ) != null )
+        {
+            try
+            {
+                lines.append( objectMapper.writeValueAsString( job ) ).append( '\n' );
+            }
+            catch ( final IOException e )
+            {
+                logger.error( "Failed to journal archive job {}", job, e );
+            }
+        }
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( lines.toString().getBytes( StandardCharsets.UTF_8 ) );
+            journalSize += buffer.remaining();
+            while ( buffer.hasRemaining() )
+            {
+                journalChannel.write( buffer );
+            }
+            journalChannel.force( false );
+        }
+        catch ( final IOException e )
+        {
+            logger.error( "Failed to journal archive jobs to {}", journal, e );
+        }
+
+        if ( journalSize > Math.max( compactMinSize, 2 * compactedSize ) )
+        {
+            try
+            {
+                journalChannel.close();
+                compact();
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( "Failed to compact job journal {}", journal, e );
+            }
+            finally
+            {
+                try
+                {
+                    openJournal();
+                }
+                catch ( final IOException e )
+                {
+                    logger.error( "Failed to reopen job journal {}", journal, e );
+                }
+            }
+        }
+    }
+
+    private void openJournal() throws IOException
+    {
+        journalChannel = FileChannel.open( journal.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+        journalSize = journalChannel.size();
+    }
+
+    private void replay() throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader( journal.toPath(), StandardCharsets.UTF_8 ))
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.trim().isEmpty() )
+                {
+                    continue;
+                }
+                ArchiveJob job;
+                try
+                {
+                    job = objectMapper.readValue( line, ArchiveJob.class );
+                }
+                catch ( final IOException e )
+                {
+                    // the tail of a journal written while the service went down
+                    logger.warn( "Skipping unreadable job journal line: {}", line );
+                    continue;
+                }
+                if ( job.getStatus() == null )
+                {
+                    jobs.remove( job.getBuildConfigId() );
+                }
+                else
+                {
+                    jobs.put( job.getBuildConfigId(), job );
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        jobs.replaceAll( ( id, job ) -> job.getStatus().isFinished() ?
+                        job :
+                        job.transition( ArchiveStatus.failed, now ) );
+    }
+
+    /**
+     * Rewrite the journal with the last state of each job only. At runtime, the map may already hold the states of
+     * records still queued, they are appended after the compacted content and replay the same state again.
+     */
+    private void compact() throws IOException
+    {
+        File compacted = new File( journal.getPath() + ".tmp" );
+        StringBuilder content = new StringBuilder();
+        for ( ArchiveJob job : jobs.values() )
+        {
+            content.append( objectMapper.writeValueAsString( job ) ).append( '\n' );
+        }
+        try (FileChannel channel = FileChannel.open( compacted.toPath(), StandardOpenOption.CREATE,
+                                                     StandardOpenOption.WRITE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING ))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( content.toString().getBytes( StandardCharsets.UTF_8 ) );
+            while ( buffer.hasRemaining() )
+            {
+                channel.write( buffer );
+            }
+            channel.force( true );
+        }
+        Files.move( compacted.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+        compactedSize = Files.size( journal.toPath() );
+    }
+}
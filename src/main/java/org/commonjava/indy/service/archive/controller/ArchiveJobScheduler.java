@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the archive generation jobs of the whole service on a fixed number of threads with a bounded pending queue.
+ * Submissions beyond the queue capacity are rejected, so callers can push back on the client instead of piling up
+ * jobs which all compete for the same download pool.
+ */
+@ApplicationScoped
+public class ArchiveJobScheduler
+{
+    private static final int DEFAULT_MAX_JOBS = 2;
+
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 60;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private ThreadPoolExecutor executor;
+
+    private int maxJobs;
+
+    private int queueSize;
+
+    @PostConstruct
+    public void init()
+    {
+        maxJobs = Math.max( 1, preSeedConfig.generateMaxJobs.orElse( DEFAULT_MAX_JOBS ) );
+        queueSize = Math.max( 1, preSeedConfig.generateQueueSize.orElse( DEFAULT_QUEUE_SIZE ) );
+
+        final AtomicInteger counter = new AtomicInteger( 0 );
+        executor = new ThreadPoolExecutor( maxJobs, maxJobs, 0L, TimeUnit.MILLISECONDS,
+                                           new ArrayBlockingQueue<>( queueSize ), ( final Runnable r ) -> {
+            final Thread t = new Thread( r );
+            t.setName( "Archive-Generate-" + counter.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy() );
+        logger.info( "Archive job scheduler started, max concurrent jobs: {}, queue size: {}", maxJobs, queueSize );
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the pending queue is full or the scheduler is shutting down
+     */
+    public void submit( final String buildConfigId, final Runnable job )
+    {
+        executor.execute( () -> {
+            // the pool thread is reused by the next job, which must not show up under the name of this one
+            final Thread thread = Thread.currentThread();
+            final String name = thread.getName();
+            thread.setName( "Archive-Generate-" + buildConfigId );
+            try
+            {
+                job.run();
+            }
+            finally
+            {
+                thread.setName( name );
+            }
+        } );
+    }
+
+    public boolean isSaturated()
+    {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    public boolean isShutdown()
+    {
+        return executor.isShutdown();
+    }
+
+    public int getRunningJobs()
+    {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedJobs()
+    {
+        return executor.getQueue().size();
+    }
+
+    public int getMaxJobs()
+    {
+        return maxJobs;
+    }
+
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    public int getRetryAfterSeconds()
+    {
+        return preSeedConfig.generateRetryAfterSeconds.orElse( DEFAULT_RETRY_AFTER_SECONDS );
+    }
+}
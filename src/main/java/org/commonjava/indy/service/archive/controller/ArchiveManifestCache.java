@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.util.ZipCentralDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Entry listings of the stored archives, kept as JSON files under {@code <storage-dir>/manifest} so they're served
+ * without reading the archives. A manifest is written on its first request by streaming the central directory of
+ * the archive into it, one entry at a time, and dropped when its archive is regenerated or deleted.
+ */
+@ApplicationScoped
+public class ArchiveManifestCache
+{
+    private static final String MANIFEST_DIR = "/manifest";
+
+    private static final String MANIFEST_SUFFIX = ".json";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private File manifestDir;
+
+    public ArchiveManifestCache()
+    {
+    }
+
+    public ArchiveManifestCache( PreSeedConfig preSeedConfig, ObjectMapper objectMapper )
+    {
+        this.preSeedConfig = preSeedConfig;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        manifestDir = new File( String.format( "%s%s", storeDir, MANIFEST_DIR ) );
+    }
+
+    /**
+     * @return the manifest file of the archive, written first if there is none or it's older than the archive
+     */
+    public File getManifest( final ArchiveMetadata archive ) throws IOException
+    {
+        File manifest = manifestFile( archive.getBuildConfigId() );
+        if ( manifest.exists() && manifest.lastModified() >= archive.getLastModified() )
+        {
+            return manifest;
+        }
+
+        manifestDir.mkdirs();
+        File part = new File( manifestDir, archive.getBuildConfigId() + "." + UUID.randomUUID() + ".part" );
+        try
+        {
+            long total;
+            try (OutputStream out = new BufferedOutputStream( Files.newOutputStream( part.toPath() ) );
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator( out ))
+            {
+                generator.writeStartObject();
+                generator.writeStringField( "buildConfigId", archive.getBuildConfigId() );
+                generator.writeStringField( "checksum", archive.getChecksum() );
+                generator.writeNumberField( "size", archive.getSize() );
+                generator.writeArrayFieldStart( "entries" );
+                total = ZipCentralDirectory.read( archive.getFile(), entry -> {
+                    generator.writeStartObject();
+                    generator.writeStringField( "name", entry.getName() );
+                    generator.writeNumberField( "size", entry.getSize() );
+                    generator.writeNumberField( "compressedSize", entry.getCompressedSize() );
+                    generator.writeStringField( "crc32", String.format( "%08x", entry.getCrc() ) );
+                    generator.writeEndObject();
+                } );
+                generator.writeEndArray();
+                generator.writeNumberField( "total", total );
+                generator.writeEndObject();
+            }
+            // concurrent first requests may both write it, the last move wins and both are complete
+            Files.move( part.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+            logger.info( "Wrote manifest of {} entries for archive {}", total, archive.getFile() );
+        }
+        finally
+        {
+            Files.deleteIfExists( part.toPath() );
+        }
+        return manifest;
+    }
+
+    public void invalidate( final String buildConfigId )
+    {
+        try
+        {
+            Files.deleteIfExists( manifestFile( buildConfigId ).toPath() );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to delete the manifest of archive {}", buildConfigId, e );
+        }
+    }
+
+    private File manifestFile( final String buildConfigId )
+    {
+        return new File( manifestDir, buildConfigId + MANIFEST_SUFFIX );
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.dto.ArchiveResultDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Per entry outcomes of the generation of each stored archive, kept as JSON files under
+ * {@code <storage-dir>/result}. A result is written when its archive is rendered, so it always describes the archive
+ * on disk, and removed with the archive.
+ */
+@ApplicationScoped
+public class ArchiveResults
+{
+    private static final String RESULT_DIR = "/result";
+
+    private static final String RESULT_SUFFIX = ".json";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private File resultDir;
+
+    public ArchiveResults()
+    {
+    }
+
+    public ArchiveResults( PreSeedConfig preSeedConfig, ObjectMapper objectMapper )
+    {
+        this.preSeedConfig = preSeedConfig;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        resultDir = new File( String.format( "%s%s", storeDir, RESULT_DIR ) );
+    }
+
+    public Optional<ArchiveResultDTO> get( final String buildConfigId ) throws IOException
+    {
+        File result = getFile( buildConfigId );
+        if ( !result.exists() )
+        {
+            return Optional.empty();
+        }
+        // entries are written with their derived properties, e.g. storePath
+        return Optional.of( objectMapper.readerFor( ArchiveResultDTO.class )
+                                        .without( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES )
+                                        .readValue( result ) );
+    }
+
+    public void put( final ArchiveResultDTO result ) throws IOException
+    {
+        resultDir.mkdirs();
+        File part = new File( resultDir, result.getBuildConfigId() + "." + UUID.randomUUID() + ".part" );
+        try
+        {
+            objectMapper.writeValue( part, result );
+            Files.move( part.toPath(), getFile( result.getBuildConfigId() ).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            Files.deleteIfExists( part.toPath() );
+        }
+        logger.info( "Recorded the result of archive generation: {}", result );
+    }
+
+    public void remove( final String buildConfigId )
+    {
+        try
+        {
+            Files.deleteIfExists( getFile( buildConfigId ).toPath() );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to delete the generation result of archive {}", buildConfigId, e );
+        }
+    }
+
+    public File getFile( final String buildConfigId )
+    {
+        return new File( resultDir, buildConfigId + RESULT_SUFFIX );
+    }
+}
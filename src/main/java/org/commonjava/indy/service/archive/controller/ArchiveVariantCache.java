@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
+import org.commonjava.indy.service.archive.format.ArchiveFormats;
+import org.commonjava.indy.service.archive.format.ZipArchiveFormat;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The archives transcoded to the formats other than zip, stored next to their zip as {@code <id>.tar.gz} etc. with
+ * their sha256 in a {@code .sha256} file. A variant is transcoded once, in the background on at most
+ * {@code pre-seed.archive-transcode-threads} threads, and dropped when its archive is regenerated or deleted.
+ */
+@ApplicationScoped
+public class ArchiveVariantCache
+{
+    private static final String ARCHIVE_DIR = "/archive";
+
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final int DEFAULT_TRANSCODE_THREADS = 1;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    ArchiveFormats formats;
+
+    private File archiveDir;
+
+    private final Map<String, ArchiveMetadata> variants = new ConcurrentHashMap<>();
+
+    // one transcoding per variant at a time
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    // variants queued or being transcoded
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService transcoder;
+
+    public ArchiveVariantCache()
+    {
+    }
+
+    public ArchiveVariantCache( PreSeedConfig preSeedConfig, ArchiveFormats formats )
+    {
+        this.preSeedConfig = preSeedConfig;
+        this.formats = formats;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        archiveDir = new File( String.format( "%s%s", storeDir, ARCHIVE_DIR ) );
+
+        final int threads = Math.max( 1, preSeedConfig.archiveTranscodeThreads.orElse( DEFAULT_TRANSCODE_THREADS ) );
+        final AtomicInteger counter = new AtomicInteger( 0 );
+        transcoder = Executors.newFixedThreadPool( threads, ( final Runnable r ) -> {
+            final Thread t = new Thread( r );
+            t.setName( "Archive-Transcode-" + counter.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        transcoder.shutdownNow();
+    }
+
+    /**
+     * @return the archive in the given format, or nothing while it's transcoded; a missing or outdated variant is
+     * scheduled for transcoding, so the request thread never waits on it
+     */
+    public Optional<ArchiveMetadata> getVariant( final ArchiveMetadata archive, final ArchiveFormat format )
+    {
+        if ( isSource( format ) )
+        {
+            return Optional.of( archive );
+        }
+
+        final String key = archive.getBuildConfigId() + format.getExtension();
+        ArchiveMetadata variant = variants.get( key );
+        if ( isFresh( variant, archive ) )
+        {
+            return Optional.of( variant );
+        }
+        if ( pending.contains( key ) )
+        {
+            return Optional.empty();
+        }
+
+        synchronized ( locks.computeIfAbsent( key, k -> new Object() ) )
+        {
+            variant = variants.get( key );
+            if ( isFresh( variant, archive ) )
+            {
+                return Optional.of( variant );
+            }
+
+            File file = new File( archiveDir, key );
+            if ( file.exists() && file.lastModified() >= archive.getLastModified() )
+            {
+                // transcoded before a restart
+                String checksum = readChecksum( file );
+                if ( checksum != null )
+                {
+                    variant = new ArchiveMetadata( archive.getBuildConfigId(), file, file.length(),
+                                                   file.lastModified(), checksum );
+                    variants.put( key, variant );
+                    return Optional.of( variant );
+                }
+            }
+        }
+        schedule( archive, format );
+        return Optional.empty();
+    }
+
+    /**
+     * Transcode the archive to the format in the background, unless that's already queued or running.
+     */
+    public void schedule( final ArchiveMetadata archive, final ArchiveFormat format )
+    {
+        if ( isSource( format ) )
+        {
+            return;
+        }
+        final String key = archive.getBuildConfigId() + format.getExtension();
+        if ( !pending.add( key ) )
+        {
+            return;
+        }
+        try
+        {
+            transcoder.execute( () -> {
+                try
+                {
+                    build( archive, format, key );
+                }
+                catch ( final IOException e )
+                {
+                    // it's scheduled again on its next request
+                    logger.warn( "Failed to transcode archive {} to {}", archive.getFile(), format.getName(), e );
+                }
+                finally
+                {
+                    pending.remove( key );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            pending.remove( key );
+            logger.warn( "Skipped transcoding archive {} to {}, shutting down", archive.getFile(), format.getName() );
+        }
+    }
+
+    private void build( final ArchiveMetadata archive, final ArchiveFormat format, final String key )
+                    throws IOException
+    {
+        synchronized ( locks.computeIfAbsent( key, k -> new Object() ) )
+        {
+            if ( isFresh( variants.get( key ), archive ) )
+            {
+                return;
+            }
+            if ( archive.getFile().lastModified() != archive.getLastModified() )
+            {
+                // regenerated since it was scheduled, the new archive gets its own variant
+                return;
+            }
+
+            File file = new File( archiveDir, key );
+            String checksum = transcode( archive, format, file );
+            variants.put( key, new ArchiveMetadata( archive.getBuildConfigId(), file, file.length(),
+                                                    file.lastModified(), checksum ) );
+        }
+    }
+
+    public void invalidate( final String buildConfigId )
+    {
+        for ( ArchiveFormat format : formats.getAll() )
+        {
+            if ( isSource( format ) )
+            {
+                continue;
+            }
+            final String key = buildConfigId + format.getExtension();
+            synchronized ( locks.computeIfAbsent( key, k -> new Object() ) )
+            {
+                variants.remove( key );
+                File file = new File( archiveDir, key );
+                try
+                {
+                    Files.deleteIfExists( file.toPath() );
+                    Files.deleteIfExists( checksumFile( file ).toPath() );
+                }
+                catch ( final IOException e )
+                {
+                    logger.warn( "Failed to delete the archive variant {}", file, e );
+                }
+            }
+        }
+    }
+
+    private static boolean isSource( final ArchiveFormat format )
+    {
+        return ZipArchiveFormat.NAME.equals( format.getName() );
+    }
+
+    private boolean isFresh( final ArchiveMetadata variant, final ArchiveMetadata archive )
+    {
+        return variant != null && variant.getLastModified() >= archive.getLastModified()
+                        && variant.getFile().exists();
+    }
+
+    private String transcode( final ArchiveMetadata archive, final ArchiveFormat format, final File file )
+                    throws IOException
+    {
+        archiveDir.mkdirs();
+        File part = new File( archiveDir, file.getName() + "." + UUID.randomUUID() + ".part" );
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        long start = System.currentTimeMillis();
+        try
+        {
+            try (OutputStream out = new DigestOutputStream(
+                            new BufferedOutputStream( Files.newOutputStream( part.toPath() ) ), digest ))
+            {
+                format.transcode( archive.getFile(), out );
+            }
+            Files.move( part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            Files.deleteIfExists( part.toPath() );
+        }
+
+        String checksum = Hex.encodeHexString( digest.digest() );
+        try
+        {
+            FileUtils.writeStringToFile( checksumFile( file ), checksum, StandardCharsets.UTF_8 );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to record the checksum of archive variant {}", file, e );
+        }
+        logger.info( "Transcoded archive {} to {} in {}ms", archive.getFile(), file,
+                     System.currentTimeMillis() - start );
+        return checksum;
+    }
+
+    private String readChecksum( final File file )
+    {
+        File checksumFile = checksumFile( file );
+        if ( !checksumFile.exists() )
+        {
+            return null;
+        }
+        try
+        {
+            return FileUtils.readFileToString( checksumFile, StandardCharsets.UTF_8 ).trim();
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to read the checksum of archive variant {}", file, e );
+            return null;
+        }
+    }
+
+    private File checksumFile( final File file )
+    {
+        return new File( file.getParentFile(), file.getName() + CHECKSUM_SUFFIX );
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+/**
+ * The archive exists but its variant in the requested format is still being transcoded in the background.
+ */
+public class ArchiveVariantPendingException
+                extends RuntimeException
+{
+    public ArchiveVariantPendingException( final String buildConfigId, final String format )
+    {
+        super( "Archive " + buildConfigId + " is being transcoded to " + format );
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.commonjava.indy.service.archive.util.ArtifactFiles.linkOrCopy;
+
+/**
+ * Content-addressable store of downloaded artifacts shared by all builds. Entries are keyed by the checksum given in
+ * the tracked content (sha256, then sha1, then md5) and kept under {@code <storage-dir>/cache}. The total size is
+ * capped by {@code pre-seed.content-cache-max-size-mb}, the least recently used entries are evicted first.
+ */
+@ApplicationScoped
+public class ArtifactCache
+{
+    private static final String CACHE_DIR = "/cache";
+
+    private static final long DEFAULT_MAX_SIZE_MB = 10240;
+
+    private static final Pattern CHECKSUM_PATTERN = Pattern.compile( "[0-9a-f]+" );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private String cacheDir;
+
+    private boolean enabled;
+
+    private long maxSize;
+
+    private long totalSize;
+
+    // access-ordered, so the iteration starts with the least recently used entry
+    private final Map<String, Long> entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+    public ArtifactCache()
+    {
+    }
+
+    public ArtifactCache( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        String storeDir = preSeedConfig.storageDir.orElse( "data" );
+        cacheDir = String.format( "%s%s", storeDir, CACHE_DIR );
+        maxSize = preSeedConfig.contentCacheMaxSizeMb.orElse( DEFAULT_MAX_SIZE_MB ) * 1024 * 1024;
+        enabled = preSeedConfig.contentCacheEnabled.orElse( Boolean.TRUE ) && maxSize > 0;
+        if ( enabled )
+        {
+            restoreFromDisk();
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Hard-link (or copy, when links are not supported) the cached content of the entry to the target file.
+     *
+     * @return true if the entry was cached and the target is in place
+     */
+    public boolean fetch( final HistoricalEntryDTO entry, final File target )
+    {
+        String key = cacheKey( entry );
+        if ( !enabled || key == null )
+        {
+            return false;
+        }
+
+        synchronized ( entries )
+        {
+            if ( entries.get( key ) == null )
+            {
+                return false;
+            }
+        }
+
+        Path cached = Paths.get( cacheDir, key );
+        try
+        {
+            target.getParentFile().mkdirs();
+            Files.deleteIfExists( target.toPath() );
+            linkOrCopy( cached, target.toPath() );
+            cached.toFile().setLastModified( System.currentTimeMillis() );
+            logger.trace( "Cache hit for {}, key: {}", entry.getPath(), key );
+            return true;
+        }
+        catch ( final IOException e )
+        {
+            // the cached file may have been evicted in the meantime, just download it again
+            logger.debug( "Failed to fetch {} from content cache, key: {}", entry.getPath(), key, e );
+            remove( key );
+            return false;
+        }
+    }
+
+    /**
+     * Add the downloaded content of the entry to the cache, evicting the least recently used entries if the cache
+     * grows over its size cap.
+     */
+    public void store( final HistoricalEntryDTO entry, final File source )
+    {
+        if ( source.exists() )
+        {
+            doStore( entry, source.length(), temp -> linkOrCopy( source.toPath(), temp ) );
+        }
+    }
+
+    /**
+     * Same as {@link #store(HistoricalEntryDTO, File)}, for content which was downloaded into memory.
+     */
+    public void store( final HistoricalEntryDTO entry, final byte[] content )
+    {
+        doStore( entry, content.length, temp -> Files.write( temp, content ) );
+    }
+
+    private void doStore( final HistoricalEntryDTO entry, final long size, final CacheWriter writer )
+    {
+        String key = cacheKey( entry );
+        if ( !enabled || key == null )
+        {
+            return;
+        }
+
+        if ( size > maxSize || ( entry.getSize() != null && entry.getSize() != size ) )
+        {
+            return;
+        }
+
+        synchronized ( entries )
+        {
+            if ( entries.containsKey( key ) )
+            {
+                return;
+            }
+        }
+
+        Path cached = Paths.get( cacheDir, key );
+        Path temp = Paths.get( cacheDir, key + "." + UUID.randomUUID() );
+        try
+        {
+            Files.createDirectories( cached.getParent() );
+            writer.write( temp );
+            Files.move( temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to store {} in content cache, key: {}", entry.getPath(), key, e );
+            temp.toFile().delete();
+            return;
+        }
+
+        synchronized ( entries )
+        {
+            Long previous = entries.put( key, size );
+            totalSize += size - ( previous == null ? 0 : previous );
+            evict();
+        }
+    }
+
+    static String cacheKey( final HistoricalEntryDTO entry )
+    {
+        String key = toKey( "sha256", entry.getSha256() );
+        if ( key == null )
+        {
+            key = toKey( "sha1", entry.getSha1() );
+        }
+        if ( key == null )
+        {
+            key = toKey( "md5", entry.getMd5() );
+        }
+        return key;
+    }
+
+    private static String toKey( final String algorithm, final String checksum )
+    {
+        if ( checksum == null )
+        {
+            return null;
+        }
+        String hex = checksum.trim().toLowerCase();
+        if ( hex.length() < 4 || !CHECKSUM_PATTERN.matcher( hex ).matches() )
+        {
+            return null;
+        }
+        return String.format( "%s/%s/%s", algorithm, hex.substring( 0, 2 ), hex );
+    }
+
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while ( totalSize > maxSize && it.hasNext() )
+        {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalSize -= eldest.getValue();
+            Paths.get( cacheDir, eldest.getKey() ).toFile().delete();
+            logger.trace( "Evicted {} from content cache", eldest.getKey() );
+        }
+    }
+
+    private void remove( final String key )
+    {
+        synchronized ( entries )
+        {
+            Long size = entries.remove( key );
+            if ( size != null )
+            {
+                totalSize -= size;
+            }
+        }
+    }
+
+    private void restoreFromDisk()
+    {
+        Path root = Paths.get( cacheDir );
+        if ( !root.toFile().exists() )
+        {
+            return;
+        }
+
+        List<File> files;
+        try (Stream<Path> walk = Files.walk( root ))
+        {
+            files = walk.filter( Files::isRegularFile )
+                        .map( Path::toFile )
+                        .sorted( Comparator.comparingLong( File::lastModified ) )
+                        .collect( Collectors.toList() );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to restore content cache from {}", cacheDir, e );
+            return;
+        }
+
+        synchronized ( entries )
+        {
+            for ( File file : files )
+            {
+                String key = root.relativize( file.toPath() ).toString().replace( File.separatorChar, '/' );
+                if ( key.split( "/" ).length != 3 || file.getName().contains( "." ) )
+                {
+                    // leftover of an interrupted store
+                    file.delete();
+                    continue;
+                }
+                entries.put( key, file.length() );
+                totalSize += file.length();
+            }
+            evict();
+        }
+        logger.info( "Content cache restored, entries: {}, size: {} bytes", entries.size(), totalSize );
+    }
+
+    @FunctionalInterface
+    private interface CacheWriter
+    {
+        void write( Path temp ) throws IOException;
+    }
+}
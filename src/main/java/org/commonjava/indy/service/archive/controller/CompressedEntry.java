@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.util.ZipArchiveWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * An archive entry prepared ahead of the archive writer: deflated into memory when it's small or into a spool file
+ * otherwise, or stored, in which case the artifact itself is copied by {@link #writeTo(ZipArchiveWriter)}.
+ */
+class CompressedEntry
+{
+    private final String name;
+
+    private final int method;
+
+    private final long crc;
+
+    private final long compressedSize;
+
+    private final long size;
+
+    private final byte[] content;
+
+    private final File file;
+
+    private final boolean spooled;
+
+    private CompressedEntry( final String name, final int method, final long crc, final long compressedSize,
+                             final long size, final byte[] content, final File file, final boolean spooled )
+    {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.content = content;
+        this.file = file;
+        this.spooled = spooled;
+    }
+
+    static CompressedEntry deflated( final String name, final long crc, final long size, final byte[] content )
+    {
+        return new CompressedEntry( name, ZipEntry.DEFLATED, crc, content.length, size, content, null, false );
+    }
+
+    static CompressedEntry spooled( final String name, final long crc, final long size, final File spool )
+    {
+        return new CompressedEntry( name, ZipEntry.DEFLATED, crc, spool.length(), size, null, spool, true );
+    }
+
+    static CompressedEntry stored( final String name, final long crc, final File source )
+    {
+        long size = source.length();
+        return new CompressedEntry( name, ZipEntry.STORED, crc, size, size, null, source, false );
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    int getMethod()
+    {
+        return method;
+    }
+
+    long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    long getSize()
+    {
+        return size;
+    }
+
+    void writeTo( final ZipArchiveWriter zip ) throws IOException
+    {
+        try (InputStream in = content != null ? new ByteArrayInputStream( content ) : FileUtils.openInputStream( file ))
+        {
+            zip.putRawEntry( name, method, crc, compressedSize, size, in );
+        }
+    }
+
+    void release()
+    {
+        if ( spooled )
+        {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * How each archive entry is compressed, by the extension of its path. Artifacts which are compressed already (jars,
+ * zips, npm tarballs...) are stored as they are, deflating them again costs CPU for next to nothing. Everything else
+ * is deflated at {@code pre-seed.archive-compression-level}, unless {@code pre-seed.archive-compression-levels} has a
+ * level of its own for the extension, e.g. {@code pom=9,xml=9}.
+ */
+@ApplicationScoped
+public class CompressionPolicy
+{
+    private static final String DEFAULT_STORED_EXTENSIONS = "jar,war,ear,zip,tgz,gz,bz2,xz,zst,7z";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private final Set<String> storedExtensions = new HashSet<>();
+
+    private final Map<String, Integer> levels = new HashMap<>();
+
+    private int defaultLevel;
+
+    public CompressionPolicy()
+    {
+    }
+
+    public CompressionPolicy( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        defaultLevel = level( preSeedConfig.archiveCompressionLevel.orElse( Deflater.DEFAULT_COMPRESSION ) );
+        for ( String extension : preSeedConfig.archiveStoredExtensions.orElse( DEFAULT_STORED_EXTENSIONS )
+                                                                       .split( "," ) )
+        {
+            if ( !extension.trim().isEmpty() )
+            {
+                storedExtensions.add( extension.trim().toLowerCase( Locale.ROOT ) );
+            }
+        }
+        for ( String level : preSeedConfig.archiveCompressionLevels.orElse( "" ).split( "," ) )
+        {
+            String[] parts = level.split( "=" );
+            if ( parts.length != 2 )
+            {
+                if ( !level.trim().isEmpty() )
+                {
+                    logger.warn( "Ignored compression level '{}', expected <extension>=<level>", level );
+                }
+                continue;
+            }
+            try
+            {
+                levels.put( parts[0].trim().toLowerCase( Locale.ROOT ), level( Integer.parseInt( parts[1].trim() ) ) );
+            }
+            catch ( final NumberFormatException e )
+            {
+                logger.warn( "Ignored compression level '{}', expected <extension>=<level>", level );
+            }
+        }
+        logger.info( "Stored archive entry types: {}, compression level: {}, per type: {}", storedExtensions,
+                     defaultLevel, levels );
+    }
+
+    public boolean isStored( final String path )
+    {
+        return storedExtensions.contains( extension( path ) );
+    }
+
+    /**
+     * @return the deflate level of the entry, only meaningful if it's not stored
+     */
+    public int levelFor( final String path )
+    {
+        return levels.getOrDefault( extension( path ), defaultLevel );
+    }
+
+    private static int level( final int level )
+    {
+        return level == Deflater.DEFAULT_COMPRESSION ?
+                        level :
+                        Math.max( Deflater.NO_COMPRESSION, Math.min( Deflater.BEST_COMPRESSION, level ) );
+    }
+
+    private static String extension( final String path )
+    {
+        int slash = path.lastIndexOf( '/' );
+        int dot = path.lastIndexOf( '.' );
+        return dot > slash ? path.substring( dot + 1 ).toLowerCase( Locale.ROOT ) : "";
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.commonjava.indy.service.archive.util.ArtifactVerificationException;
+import org.commonjava.indy.service.archive.util.ChecksumVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.commonjava.indy.service.archive.util.ArtifactFiles.linkOrCopy;
+
+/**
+ * Process wide registry of the transfers in flight, by URL. Concurrent generations often track the same artifacts; the
+ * first one asking for a URL leads its transfer, the ones asking while it's in flight follow it and get the content
+ * linked (or copied) into their own target once it's done, so each artifact crosses the network once. The leader
+ * verified the content against its own entry only: a follower whose entry expects another size or other checksums
+ * gets the content verified against it before it's shared.
+ */
+@ApplicationScoped
+public class DownloadCoalescer
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    private boolean enabled;
+
+    public DownloadCoalescer()
+    {
+    }
+
+    public DownloadCoalescer( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        enabled = preSeedConfig.downloadCoalescingEnabled.orElse( true );
+        logger.info( "Download coalescing enabled: {}", enabled );
+    }
+
+    /**
+     * Follow the transfer of the url if one is in flight, otherwise the caller leads it and must {@link #land} it,
+     * whatever its outcome.
+     *
+     * @param entry the tracked entry of the caller, its content is verified against it
+     * @return empty if the caller leads the transfer, otherwise the outcome of the one in flight, true once its content
+     * is in the target
+     */
+    public Optional<CompletableFuture<Boolean>> follow( final String url, final HistoricalEntryDTO entry,
+                                                        final File target )
+    {
+        if ( !enabled )
+        {
+            return Optional.empty();
+        }
+        synchronized ( flights )
+        {
+            Flight flight = flights.get( url );
+            if ( flight == null )
+            {
+                flights.put( url, new Flight( entry ) );
+                return Optional.empty();
+            }
+            Follower follower = new Follower( entry, target );
+            flight.followers.add( follower );
+            return Optional.of( follower.outcome );
+        }
+    }
+
+    /**
+     * End the transfer led by the caller and hand its content to the followers.
+     *
+     * @param content the downloaded artifact, null if the transfer failed
+     */
+    public void land( final String url, final File content )
+    {
+        land( url, content == null ? null : target -> linkOrCopy( content.toPath(), target ) );
+    }
+
+    public void land( final String url, final byte[] content )
+    {
+        land( url, content == null ? null : target -> Files.write( target, content ) );
+    }
+
+    private void land( final String url, final ContentWriter writer )
+    {
+        Flight flight;
+        synchronized ( flights )
+        {
+            // nobody joins the flight from now on, later requests hit the artifact cache or lead a transfer of their own
+            flight = flights.remove( url );
+        }
+        if ( flight == null )
+        {
+            return;
+        }
+        if ( !flight.followers.isEmpty() )
+        {
+            logger.debug( "Sharing the transfer of {} with {} followers", url, flight.followers.size() );
+        }
+        for ( Follower follower : flight.followers )
+        {
+            follower.outcome.complete( writer != null && share( writer, flight.leader, follower ) );
+        }
+    }
+
+    int getInFlight()
+    {
+        synchronized ( flights )
+        {
+            return flights.size();
+        }
+    }
+
+    private boolean share( final ContentWriter writer, final HistoricalEntryDTO leader, final Follower follower )
+    {
+        final File target = follower.target;
+        try
+        {
+            target.getParentFile().mkdirs();
+            Files.deleteIfExists( target.toPath() );
+            writer.write( target.toPath() );
+            if ( !sameExpectations( leader, follower.entry ) )
+            {
+                verify( follower.entry, target );
+            }
+            return true;
+        }
+        catch ( final ArtifactVerificationException e )
+        {
+            logger.warn( "Content downloaded for another entry doesn't match {}, {}", target, e.getMessage() );
+            target.delete();
+            return false;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to share downloaded content into {}", target, e );
+            target.delete();
+            return false;
+        }
+    }
+
+    /**
+     * @return true if content verified against the one entry is sure to pass the verification against the other
+     */
+    private boolean sameExpectations( final HistoricalEntryDTO leader, final HistoricalEntryDTO follower )
+    {
+        return Objects.equals( leader.getSize(), follower.getSize() )
+                        && Objects.equals( leader.getMd5(), follower.getMd5() )
+                        && Objects.equals( leader.getSha1(), follower.getSha1() )
+                        && Objects.equals( leader.getSha256(), follower.getSha256() );
+    }
+
+    private void verify( final HistoricalEntryDTO entry, final File content ) throws IOException
+    {
+        ChecksumVerifier verifier = new ChecksumVerifier( entry );
+        try (InputStream in = new FileInputStream( content ))
+        {
+            verifier.updatePartial( in );
+        }
+        verifier.verify();
+    }
+
+    private static final class Flight
+    {
+        private final HistoricalEntryDTO leader;
+
+        private final List<Follower> followers = new ArrayList<>();
+
+        private Flight( final HistoricalEntryDTO leader )
+        {
+            this.leader = leader;
+        }
+    }
+
+    private static final class Follower
+    {
+        private final HistoricalEntryDTO entry;
+
+        private final File target;
+
+        private final CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+
+        private Follower( final HistoricalEntryDTO entry, final File target )
+        {
+            this.entry = entry;
+            this.target = target;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentWriter
+    {
+        void write( Path target ) throws IOException;
+    }
+}
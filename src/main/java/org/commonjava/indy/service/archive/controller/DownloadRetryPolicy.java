@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how fast transient fetch failures (connection errors, 5xx and 429 answers) are retried. The delay
+ * doubles with each attempt up to {@code pre-seed.download-retry-max-delay-ms}, with full jitter so the downloads of
+ * a job which failed together don't come back together.
+ */
+@ApplicationScoped
+public class DownloadRetryPolicy
+{
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private static final long DEFAULT_INITIAL_DELAY_MS = 500;
+
+    private static final long DEFAULT_MAX_DELAY_MS = 10000;
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private int maxAttempts;
+
+    private long initialDelay;
+
+    private long maxDelay;
+
+    public DownloadRetryPolicy()
+    {
+    }
+
+    public DownloadRetryPolicy( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        maxAttempts = Math.max( 1, preSeedConfig.downloadRetryMaxAttempts.orElse( DEFAULT_MAX_ATTEMPTS ) );
+        initialDelay = Math.max( 1, preSeedConfig.downloadRetryInitialDelayMs.orElse( DEFAULT_INITIAL_DELAY_MS ) );
+        maxDelay = Math.max( initialDelay, preSeedConfig.downloadRetryMaxDelayMs.orElse( DEFAULT_MAX_DELAY_MS ) );
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    public Duration getInitialDelay()
+    {
+        return Duration.ofMillis( initialDelay );
+    }
+
+    public Duration getMaxDelay()
+    {
+        return Duration.ofMillis( maxDelay );
+    }
+
+    public static boolean isTransient( final int statusCode )
+    {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    /**
+     * @param attempt the number of the failed attempt, starting at 1
+     * @return a random delay between 0 and the exponential backoff of the attempt
+     */
+    public long backoffMillis( final int attempt )
+    {
+        long backoff = initialDelay << Math.min( attempt - 1, 30 );
+        return ThreadLocalRandom.current().nextLong( Math.min( Math.max( backoff, initialDelay ), maxDelay ) + 1 );
+    }
+}
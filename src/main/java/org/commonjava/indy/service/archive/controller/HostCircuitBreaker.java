@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the outcome of the last fetches per target host. Once the failure rate of a full window goes over the
+ * threshold the circuit opens and fetches to that host pause for {@code pre-seed.circuit-breaker-open-seconds}, after
+ * which a single trial fetch decides whether it closes again or stays open for another period.
+ */
+@ApplicationScoped
+public class HostCircuitBreaker
+{
+    private static final int DEFAULT_WINDOW_SIZE = 20;
+
+    private static final int DEFAULT_FAILURE_RATE = 50;
+
+    private static final int DEFAULT_OPEN_SECONDS = 30;
+
+    // how often fetches waiting on a half open circuit check whether the trial fetch closed it
+    private static final long TRIAL_POLL_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private int windowSize;
+
+    private int failureRate;
+
+    private long openMillis;
+
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public HostCircuitBreaker()
+    {
+    }
+
+    public HostCircuitBreaker( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        windowSize = Math.max( 1, preSeedConfig.circuitBreakerWindowSize.orElse( DEFAULT_WINDOW_SIZE ) );
+        failureRate = preSeedConfig.circuitBreakerFailureRate.orElse( DEFAULT_FAILURE_RATE );
+        openMillis = TimeUnit.SECONDS.toMillis( preSeedConfig.circuitBreakerOpenSeconds.orElse( DEFAULT_OPEN_SECONDS ) );
+    }
+
+    /**
+     * Ask the circuit of the host of the url whether a fetch may go. A fetch which may go gets a ticket with no pause,
+     * and has to record its outcome on it, or {@link Ticket#release()} it when the fetch never reached the host.
+     *
+     * @return the ticket of the fetch, or one telling how long the circuit of the host stays open
+     */
+    public Ticket acquire( final String url )
+    {
+        return circuit( url ).acquire();
+    }
+
+    public long getOpenMillis()
+    {
+        return openMillis;
+    }
+
+    public boolean isOpen( final String url )
+    {
+        return circuit( url ).isOpen();
+    }
+
+    private Circuit circuit( final String url )
+    {
+        return circuits.computeIfAbsent( hostOf( url ), Circuit::new );
+    }
+
+    static String hostOf( final String url )
+    {
+        try
+        {
+            URI uri = URI.create( url );
+            return uri.getHost() == null ? url : uri.getHost() + ":" + uri.getPort();
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            return url;
+        }
+    }
+
+    /**
+     * Permission of one fetch. Its outcome only counts for the state of the circuit it was issued in, so a fetch
+     * started before the circuit opened cannot be taken for the trial, and only the trial closes or reopens it.
+     */
+    public static final class Ticket
+    {
+        private final Circuit circuit;
+
+        private final long generation;
+
+        private final long pauseMillis;
+
+        private boolean done;
+
+        private Ticket( final Circuit circuit, final long generation, final long pauseMillis )
+        {
+            this.circuit = circuit;
+            this.generation = generation;
+            this.pauseMillis = pauseMillis;
+        }
+
+        /**
+         * @return 0 if the fetch may go now, otherwise how long the circuit of the host stays open
+         */
+        public long getPauseMillis()
+        {
+            return pauseMillis;
+        }
+
+        public void recordSuccess()
+        {
+            circuit.record( this, true );
+        }
+
+        public void recordFailure()
+        {
+            circuit.record( this, false );
+        }
+
+        /**
+         * Give the ticket back without an outcome, e.g. the fetch failed before it reached the host. A trial is
+         * handed to the next fetch. Does nothing once an outcome was recorded.
+         */
+        public void release()
+        {
+            circuit.release( this );
+        }
+    }
+
+    private class Circuit
+    {
+        private final String host;
+
+        // ring buffer of the last outcomes, true is a failure
+        private final boolean[] outcomes = new boolean[windowSize];
+
+        private int recorded;
+
+        private int failures;
+
+        private long openUntil;
+
+        // bumped whenever the circuit opens, hands out a trial or closes, outcomes of older tickets are stale
+        private long generation;
+
+        private boolean trialPending;
+
+        Circuit( final String host )
+        {
+            this.host = host;
+        }
+
+        synchronized Ticket acquire()
+        {
+            if ( openUntil == 0 )
+            {
+                return new Ticket( this, generation, 0 );
+            }
+            long remaining = openUntil - System.currentTimeMillis();
+            if ( remaining > 0 )
+            {
+                return new Ticket( this, -1, remaining );
+            }
+            if ( trialPending )
+            {
+                // half open, the trial fetch is still running
+                return new Ticket( this, -1, Math.max( 1, Math.min( openMillis, TRIAL_POLL_MILLIS ) ) );
+            }
+            trialPending = true;
+            return new Ticket( this, ++generation, 0 );
+        }
+
+        synchronized boolean isOpen()
+        {
+            return openUntil != 0;
+        }
+
+        synchronized void release( final Ticket ticket )
+        {
+            if ( isCurrent( ticket ) && openUntil != 0 )
+            {
+                trialPending = false;
+            }
+            ticket.done = true;
+        }
+
+        synchronized void record( final Ticket ticket, final boolean success )
+        {
+            if ( !isCurrent( ticket ) )
+            {
+                // already recorded or stale, e.g. a fetch started before the circuit opened is not the trial
+                return;
+            }
+            ticket.done = true;
+            if ( openUntil != 0 )
+            {
+                trialPending = false;
+                generation++;
+                if ( success )
+                {
+                    logger.info( "Circuit of {} closed", host );
+                    openUntil = 0;
+                    recorded = 0;
+                    failures = 0;
+                }
+                else
+                {
+                    openUntil = System.currentTimeMillis() + openMillis;
+                }
+                return;
+            }
+
+            int slot = recorded % windowSize;
+            if ( recorded >= windowSize && outcomes[slot] )
+            {
+                failures--;
+            }
+            outcomes[slot] = !success;
+            if ( !success )
+            {
+                failures++;
+            }
+            recorded++;
+
+            if ( recorded >= windowSize && failures * 100 > failureRate * windowSize )
+            {
+                logger.warn( "Circuit of {} opened, {} of the last {} fetches failed, pausing for {}ms", host,
+                             failures, windowSize, openMillis );
+                openUntil = System.currentTimeMillis() + openMillis;
+                generation++;
+            }
+        }
+
+        private boolean isCurrent( final Ticket ticket )
+        {
+            return !ticket.done && ticket.generation == generation;
+        }
+    }
+}
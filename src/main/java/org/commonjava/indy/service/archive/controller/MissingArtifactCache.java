@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Negative cache of the urls main Indy answered with a 404, so the artifacts a tracked content lists but Indy doesn't
+ * have aren't asked for again by every regeneration and every build referencing them. Entries expire after
+ * {@code pre-seed.missing-cache-ttl-seconds} (0 disables the cache), at most {@code pre-seed.missing-cache-max-entries}
+ * are kept, the least recently used ones go first.
+ */
+@ApplicationScoped
+public class MissingArtifactCache
+{
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final long DEFAULT_TTL_SECONDS = 600;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    private int maxEntries;
+
+    private long ttlMillis;
+
+    // url -> expiry, in access order
+    private Map<String, Long> missing;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public MissingArtifactCache()
+    {
+    }
+
+    public MissingArtifactCache( PreSeedConfig preSeedConfig )
+    {
+        this.preSeedConfig = preSeedConfig;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        maxEntries = Math.max( 1, preSeedConfig.missingCacheMaxEntries.orElse( DEFAULT_MAX_ENTRIES ) );
+        ttlMillis = TimeUnit.SECONDS.toMillis(
+                        Math.max( 0, preSeedConfig.missingCacheTtlSeconds.orElse( DEFAULT_TTL_SECONDS ) ) );
+        missing = new LinkedHashMap<String, Long>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, Long> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+        logger.info( "Missing artifact cache, max entries: {}, ttl: {}ms", maxEntries, ttlMillis );
+    }
+
+    public boolean isEnabled()
+    {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * @return true if the url answered a 404 less than the ttl ago, the fetch is then failed without a request
+     */
+    public boolean isMissing( final String url )
+    {
+        if ( !isEnabled() )
+        {
+            return false;
+        }
+        synchronized ( missing )
+        {
+            Long expiry = missing.get( url );
+            if ( expiry != null && expiry > System.currentTimeMillis() )
+            {
+                hits.incrementAndGet();
+                return true;
+            }
+            if ( expiry != null )
+            {
+                missing.remove( url );
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    public void recordMissing( final String url )
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+        synchronized ( missing )
+        {
+            missing.put( url, System.currentTimeMillis() + ttlMillis );
+        }
+    }
+
+    /**
+     * Forget a missing url, so its next fetch asks Indy again.
+     */
+    public void forget( final String url )
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+        synchronized ( missing )
+        {
+            missing.remove( url );
+        }
+    }
+
+    /**
+     * Forget all the missing urls, e.g. once the artifacts were imported into Indy.
+     *
+     * @return how many urls were cached
+     */
+    public int flush()
+    {
+        synchronized ( missing )
+        {
+            int size = missing.size();
+            missing.clear();
+            logger.info( "Flushed {} missing artifacts", size );
+            return size;
+        }
+    }
+
+    public int getSize()
+    {
+        synchronized ( missing )
+        {
+            return missing.size();
+        }
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public long getTtlMillis()
+    {
+        return ttlMillis;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.file.CopyOptions;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.file.AsyncFile;
+import io.vertx.mutiny.core.streams.WriteStream;
+import io.vertx.mutiny.ext.web.client.HttpResponse;
+import io.vertx.mutiny.ext.web.client.WebClient;
+import io.vertx.mutiny.ext.web.codec.BodyCodec;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.commonjava.indy.service.archive.util.ArtifactVerificationException;
+import org.commonjava.indy.service.archive.util.ChecksumVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Non-blocking artifact downloads with the Vert.x web client. The response body is piped straight into an
+ * {@link AsyncFile}, the pipe pauses the response whenever the file write queue is full, so thousands of transfers
+ * cost an event loop rather than a thread each.
+ */
+@ApplicationScoped
+public class ReactiveDownloader
+{
+    private static final String PART_SUFFIX = ".part";
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 128;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    DownloadRetryPolicy retryPolicy;
+
+    @Inject
+    HostCircuitBreaker circuitBreaker;
+
+    @Inject
+    MissingArtifactCache missingArtifacts;
+
+    private WebClient client;
+
+    private int concurrency;
+
+    @PostConstruct
+    public void init()
+    {
+        concurrency = Math.max( 1, preSeedConfig.downloadMaxConcurrency.orElse( DEFAULT_MAX_CONCURRENCY ) );
+        client = WebClient.create( vertx, new WebClientOptions().setMaxPoolSize( concurrency )
+                                                                .setKeepAlive( true )
+                                                                .setFollowRedirects( true ) );
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        client.close();
+    }
+
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+
+    /**
+     * Stream the content of the url to the target file, through a {@code .part} file which is moved in place once the
+     * transfer succeeded and matches the size and checksums of the entry. Transient failures are retried with the backoff of the {@link DownloadRetryPolicy}; an open
+     * circuit of the target host fails the attempt right away, so it uses up one of the retries.
+     *
+     * @return true if the artifact was downloaded, never fails
+     */
+    public Uni<Boolean> download( final String url, final HistoricalEntryDTO entry, final File target )
+    {
+        return download( url, entry, target, bytes -> {
+        } );
+    }
+
+    /**
+     * Like {@link #download(String, HistoricalEntryDTO, File)}, telling the size of each chunk as it's written.
+     */
+    public Uni<Boolean> download( final String url, final HistoricalEntryDTO entry, final File target,
+                                  final LongConsumer transferred )
+    {
+        if ( missingArtifacts.isMissing( url ) )
+        {
+            logger.trace( "<<<Known missing path: {}", url );
+            return Uni.createFrom().item( Boolean.FALSE );
+        }
+        final String part = new File( target.getParentFile(), target.getName() + PART_SUFFIX ).getPath();
+
+        Uni<Boolean> attempts = attempt( url, entry, part, target, transferred );
+        if ( retryPolicy.getMaxAttempts() > 1 )
+        {
+            attempts = attempts.onFailure( TransientDownloadException.class )
+                               .retry()
+                               .withBackOff( retryPolicy.getInitialDelay(), retryPolicy.getMaxDelay() )
+                               .withJitter( 0.5 )
+                               .atMost( retryPolicy.getMaxAttempts() - 1 );
+        }
+        final Uni<Boolean> download = attempts;
+
+        return vertx.fileSystem()
+                    .mkdirs( target.getParent() )
+                    .onItem()
+                    .transformToUni( v -> download )
+                    .onFailure()
+                    .recoverWithItem( e -> {
+                        logger.trace( "Download failed for path: {}", url, e );
+                        return Boolean.FALSE;
+                    } );
+    }
+
+    private Uni<Boolean> attempt( final String url, final HistoricalEntryDTO entry, final String part,
+                                  final File target, final LongConsumer transferred )
+    {
+        final OpenOptions options = new OpenOptions().setWrite( true ).setCreate( true ).setTruncateExisting( true );
+
+        return Uni.createFrom().deferred( () -> {
+            final HostCircuitBreaker.Ticket ticket = circuitBreaker.acquire( url );
+            if ( ticket.getPauseMillis() > 0 )
+            {
+                return transientFailure( "Circuit open for path: " + url );
+            }
+            return vertx.fileSystem()
+                        .open( part, options )
+                        .onItem()
+                        .transformToUni( file -> {
+                            final VerifyingWriteStream stream =
+                                            new VerifyingWriteStream( file.getDelegate(), new ChecksumVerifier( entry ),
+                                                                      transferred );
+                            return client.getAbs( url )
+                                         .as( BodyCodec.pipe( WriteStream.newInstance( stream ) ) )
+                                         .send()
+                                         .onFailure()
+                                         .call( () -> file.close().onFailure().recoverWithNull() )
+                                         .onFailure()
+                                         .call( () -> stream.isRejected() ?
+                                                         vertx.fileSystem()
+                                                              .delete( part )
+                                                              .onFailure()
+                                                              .recoverWithNull() :
+                                                         Uni.createFrom().voidItem() )
+                                         .onFailure()
+                                         .transform( e -> {
+                                             if ( stream.isRejected() )
+                                             {
+                                                 // the host answered, with more than the entry's size
+                                                 logger.warn( "Rejected download of path: {}, {}", url,
+                                                              stream.error.getMessage() );
+                                                 ticket.recordSuccess();
+                                             }
+                                             else
+                                             {
+                                                 ticket.recordFailure();
+                                             }
+                                             return new TransientDownloadException( e );
+                                         } )
+                                         .onItem()
+                                         .transformToUni( response -> complete( url, part, target, stream, response,
+                                                                                ticket ) );
+                        } )
+                        // the part file could not be opened or the attempt was cancelled, the host was never asked
+                        .onTermination()
+                        .invoke( ticket::release );
+        } );
+    }
+
+    private Uni<Boolean> complete( final String url, final String part, final File target,
+                                   final VerifyingWriteStream stream, final HttpResponse<Void> response,
+                                   final HostCircuitBreaker.Ticket ticket )
+    {
+        int statusCode = response.statusCode();
+        if ( statusCode == 200 )
+        {
+            try
+            {
+                stream.verify();
+            }
+            catch ( final ArtifactVerificationException e )
+            {
+                logger.warn( "Rejected download of path: {}, {}", url, e.getMessage() );
+                // the host answered, a corrupted transfer is retried but says nothing about the host's health
+                ticket.recordSuccess();
+                return vertx.fileSystem()
+                            .delete( part )
+                            .onItem()
+                            .transformToUni( v -> transientFailure( e.getMessage() ) );
+            }
+            ticket.recordSuccess();
+            return vertx.fileSystem()
+                        .move( part, target.getPath(), new CopyOptions().setReplaceExisting( true ) )
+                        .onItem()
+                        .transform( v -> Boolean.TRUE );
+        }
+        logger.trace( "<<<{} path: {}", statusCode == 404 ? "Not Found" : "Error " + statusCode, url );
+        Uni<Void> deleted = vertx.fileSystem().delete( part );
+        if ( DownloadRetryPolicy.isTransient( statusCode ) )
+        {
+            ticket.recordFailure();
+            return deleted.onItem().transformToUni( v -> transientFailure( "Error " + statusCode + " path: " + url ) );
+        }
+        ticket.recordSuccess();
+        if ( statusCode == 404 )
+        {
+            missingArtifacts.recordMissing( url );
+        }
+        return deleted.onItem().transform( v -> Boolean.FALSE );
+    }
+
+    private Uni<Boolean> transientFailure( final String message )
+    {
+        return Uni.createFrom().failure( new TransientDownloadException( message ) );
+    }
+
+    private static class TransientDownloadException
+                    extends IOException
+    {
+        TransientDownloadException( final String message )
+        {
+            super( message );
+        }
+
+        TransientDownloadException( final Throwable cause )
+        {
+            super( cause );
+        }
+    }
+
+    /**
+     * Digests the chunks piped to the file. Content past the expected size fails the write and so the pipe, the
+     * transfer is {@link #isRejected() rejected} right away; a wrong checksum is rejected by {@link #verify()} once
+     * the response completed.
+     */
+    private static class VerifyingWriteStream
+                    implements io.vertx.core.streams.WriteStream<io.vertx.core.buffer.Buffer>
+    {
+        private final io.vertx.core.streams.WriteStream<io.vertx.core.buffer.Buffer> delegate;
+
+        private final ChecksumVerifier verifier;
+
+        private final LongConsumer transferred;
+
+        private volatile ArtifactVerificationException error;
+
+        VerifyingWriteStream( final io.vertx.core.streams.WriteStream<io.vertx.core.buffer.Buffer> delegate,
+                              final ChecksumVerifier verifier, final LongConsumer transferred )
+        {
+            this.delegate = delegate;
+            this.verifier = verifier;
+            this.transferred = transferred;
+        }
+
+        boolean isRejected()
+        {
+            return error != null;
+        }
+
+        void verify() throws ArtifactVerificationException
+        {
+            if ( error != null )
+            {
+                throw error;
+            }
+            verifier.verify();
+        }
+
+        @Override
+        public VerifyingWriteStream exceptionHandler( final Handler<Throwable> handler )
+        {
+            delegate.exceptionHandler( handler );
+            return this;
+        }
+
+        @Override
+        public VerifyingWriteStream write( final io.vertx.core.buffer.Buffer data )
+        {
+            return write( data, null );
+        }
+
+        @Override
+        public VerifyingWriteStream write( final io.vertx.core.buffer.Buffer data,
+                                           final Handler<AsyncResult<Void>> handler )
+        {
+            if ( error == null )
+            {
+                try
+                {
+                    verifier.update( data.getByteBuf().nioBuffer() );
+                }
+                catch ( final ArtifactVerificationException e )
+                {
+                    error = e;
+                }
+            }
+            if ( error != null )
+            {
+                if ( handler != null )
+                {
+                    handler.handle( Future.failedFuture( error ) );
+                }
+                return this;
+            }
+            delegate.write( data, handler );
+            transferred.accept( data.length() );
+            return this;
+        }
+
+        @Override
+        public void end()
+        {
+            delegate.end();
+        }
+
+        @Override
+        public void end( final Handler<AsyncResult<Void>> handler )
+        {
+            delegate.end( handler );
+        }
+
+        @Override
+        public VerifyingWriteStream setWriteQueueMaxSize( final int maxSize )
+        {
+            delegate.setWriteQueueMaxSize( maxSize );
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull()
+        {
+            return delegate.writeQueueFull();
+        }
+
+        @Override
+        public VerifyingWriteStream drainHandler( final Handler<Void> handler )
+        {
+            delegate.drainHandler( handler );
+            return this;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * A downloaded artifact handed from the download threads to the archive writer. In pipelined mode small artifacts are
+ * held in memory, bigger ones are spooled to a file which is removed once it's written into the archive.
+ */
+class StagedArtifact
+{
+    private final HistoricalEntryDTO entry;
+
+    private final byte[] content;
+
+    private final File file;
+
+    private final boolean cached;
+
+    private StagedArtifact( final HistoricalEntryDTO entry, final byte[] content, final File file,
+                            final boolean cached )
+    {
+        this.entry = entry;
+        this.content = content;
+        this.file = file;
+        this.cached = cached;
+    }
+
+    static StagedArtifact inMemory( final HistoricalEntryDTO entry, final byte[] content )
+    {
+        return new StagedArtifact( entry, content, null, false );
+    }
+
+    static StagedArtifact spooled( final HistoricalEntryDTO entry, final File file )
+    {
+        return new StagedArtifact( entry, null, file, false );
+    }
+
+    static StagedArtifact cached( final HistoricalEntryDTO entry, final File file )
+    {
+        return new StagedArtifact( entry, null, file, true );
+    }
+
+    static StagedArtifact failed( final HistoricalEntryDTO entry )
+    {
+        return new StagedArtifact( entry, null, null, false );
+    }
+
+    HistoricalEntryDTO getEntry()
+    {
+        return entry;
+    }
+
+    String getEntryPath()
+    {
+        return entry.getPath();
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    boolean isFailed()
+    {
+        return content == null && file == null;
+    }
+
+    /**
+     * @return true if the content came from the artifact cache or from the transfer of another generation rather than
+     * from a download of its own
+     */
+    boolean isCached()
+    {
+        return cached;
+    }
+
+    long getSize()
+    {
+        if ( entry.getSize() != null )
+        {
+            return entry.getSize();
+        }
+        return content != null ? content.length : file != null ? file.length() : 0;
+    }
+
+    /**
+     * @return the size of the staged content, which unlike {@link #getSize()} doesn't trust the tracked size
+     */
+    long getLength()
+    {
+        return content != null ? content.length : file != null ? file.length() : 0;
+    }
+
+    long getCrc32() throws IOException
+    {
+        if ( content != null )
+        {
+            CRC32 crc = new CRC32();
+            crc.update( content );
+            return crc.getValue();
+        }
+        return file != null ? FileUtils.checksumCRC32( file ) : 0;
+    }
+
+    void writeTo( final OutputStream out ) throws IOException
+    {
+        if ( content != null )
+        {
+            out.write( content );
+        }
+        else if ( file != null )
+        {
+            try (InputStream in = FileUtils.openInputStream( file ))
+            {
+                IOUtils.copy( in, out );
+            }
+        }
+    }
+
+    void release()
+    {
+        if ( file != null )
+        {
+            file.delete();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
@@ -35,6 +36,12 @@ public class StatsController
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    @Inject
+    ArchiveJobScheduler scheduler;
+
+    @Inject
+    MissingArtifactCache missingArtifacts;
+
     @PostConstruct
     void init()
     {
@@ -61,4 +68,23 @@ public class StatsController
     {
         return Uni.createFrom().item( JsonObject.mapFrom( info ) );
     }
+
+    public Uni<JsonObject> getArchiveJobStats()
+    {
+        JsonObject stats = new JsonObject().put( "running", scheduler.getRunningJobs() )
+                                           .put( "queued", scheduler.getQueuedJobs() )
+                                           .put( "maxConcurrent", scheduler.getMaxJobs() )
+                                           .put( "queueSize", scheduler.getQueueSize() );
+        return Uni.createFrom().item( stats );
+    }
+
+    public Uni<JsonObject> getMissingArtifactStats()
+    {
+        JsonObject stats = new JsonObject().put( "size", missingArtifacts.getSize() )
+                                           .put( "maxEntries", missingArtifacts.getMaxEntries() )
+                                           .put( "ttlMillis", missingArtifacts.getTtlMillis() )
+                                           .put( "hits", missingArtifacts.getHits() )
+                                           .put( "misses", missingArtifacts.getMisses() );
+        return Uni.createFrom().item( stats );
+    }
 }
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A format archives are served in. Archives are always generated as zip, which the entry and manifest endpoints read;
+ * the other formats are variants transcoded from the zip and stored next to it. Formats are CDI beans, so one is
+ * added by dropping in an other implementation.
+ */
+public interface ArchiveFormat
+{
+    /**
+     * @return the name the format is chosen by, in configuration and in the {@code format} query parameter
+     */
+    String getName();
+
+    /**
+     * @return the file name extension of archives in this format, with its leading dot
+     */
+    String getExtension();
+
+    /**
+     * @return the content type archives in this format are served with
+     */
+    String getMediaType();
+
+    /**
+     * @return true if a client accepting the (wildcard-free) media type accepts this format
+     */
+    boolean accepts( String mediaType );
+
+    /**
+     * Write all the entries of the zip archive to the output stream in this format.
+     */
+    void transcode( File zip, OutputStream out ) throws IOException;
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.format;
+
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The known archive formats, the one served by default ({@code pre-seed.archive-default-format}) and the ones
+ * transcoded as soon as an archive is generated ({@code pre-seed.archive-formats}); the others are transcoded on
+ * their first request.
+ */
+@ApplicationScoped
+public class ArchiveFormats
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    @Any
+    Instance<ArchiveFormat> instances;
+
+    private Iterable<ArchiveFormat> available;
+
+    private final Map<String, ArchiveFormat> formats = new LinkedHashMap<>();
+
+    private final List<ArchiveFormat> stored = new ArrayList<>();
+
+    private ArchiveFormat defaultFormat;
+
+    public ArchiveFormats()
+    {
+    }
+
+    public ArchiveFormats( PreSeedConfig preSeedConfig, Collection<ArchiveFormat> available )
+    {
+        this.preSeedConfig = preSeedConfig;
+        this.available = available;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        for ( ArchiveFormat format : available != null ? available : instances )
+        {
+            formats.put( format.getName(), format );
+        }
+
+        String name = preSeedConfig.archiveDefaultFormat.orElse( ZipArchiveFormat.NAME );
+        defaultFormat = get( name ).orElse( null );
+        if ( defaultFormat == null )
+        {
+            logger.warn( "Unknown default archive format '{}', serving {}", name, ZipArchiveFormat.NAME );
+            defaultFormat = formats.get( ZipArchiveFormat.NAME );
+        }
+        for ( String format : preSeedConfig.archiveFormats.orElse( ZipArchiveFormat.NAME ).split( "," ) )
+        {
+            Optional<ArchiveFormat> known = get( format );
+            if ( known.isPresent() )
+            {
+                stored.add( known.get() );
+            }
+            else if ( !format.trim().isEmpty() )
+            {
+                logger.warn( "Ignored unknown archive format '{}'", format );
+            }
+        }
+        logger.info( "Archive formats: {}, default: {}, transcoded on generation: {}", formats.keySet(),
+                     defaultFormat.getName(), stored );
+    }
+
+    public Optional<ArchiveFormat> get( final String name )
+    {
+        return name == null ?
+                        Optional.empty() :
+                        Optional.ofNullable( formats.get( name.trim().toLowerCase( Locale.ROOT ) ) );
+    }
+
+    public Collection<ArchiveFormat> getAll()
+    {
+        return Collections.unmodifiableCollection( formats.values() );
+    }
+
+    public ArchiveFormat getDefault()
+    {
+        return defaultFormat;
+    }
+
+    /**
+     * @return the formats to transcode archives to as soon as they're generated
+     */
+    public List<ArchiveFormat> getStored()
+    {
+        return Collections.unmodifiableList( stored );
+    }
+
+    /**
+     * @return the format the Accept header prefers, the default one if it has no preference, zip if it names no
+     * archive format (e.g. the one of a browser), or nothing if it explicitly refuses zip as well
+     */
+    public Optional<ArchiveFormat> negotiate( final String accept )
+    {
+        if ( accept == null || accept.trim().isEmpty() )
+        {
+            return Optional.of( defaultFormat );
+        }
+
+        List<MediaRange> ranges = new ArrayList<>();
+        List<MediaRange> refused = new ArrayList<>();
+        for ( String range : accept.split( "," ) )
+        {
+            MediaRange parsed = MediaRange.parse( range );
+            if ( parsed != null )
+            {
+                ( parsed.quality > 0 ? ranges : refused ).add( parsed );
+            }
+        }
+        // stable, so equally preferred ranges keep their order
+        ranges.sort( Comparator.comparingDouble( ( MediaRange r ) -> r.quality ).reversed() );
+        for ( MediaRange range : ranges )
+        {
+            if ( range.type.equals( "*/*" ) || range.type.equals( "application/*" ) )
+            {
+                return Optional.of( defaultFormat );
+            }
+            for ( ArchiveFormat format : formats.values() )
+            {
+                if ( format.accepts( range.type ) )
+                {
+                    return Optional.of( format );
+                }
+            }
+        }
+        // the source archive needs no transcoding, unless the client said it can't take it
+        ArchiveFormat zip = formats.get( ZipArchiveFormat.NAME );
+        if ( zip == null || refused.stream().anyMatch( range -> zip.accepts( range.type ) ) )
+        {
+            return Optional.empty();
+        }
+        return Optional.of( zip );
+    }
+
+    private static final class MediaRange
+    {
+        private final String type;
+
+        private final double quality;
+
+        private MediaRange( final String type, final double quality )
+        {
+            this.type = type;
+            this.quality = quality;
+        }
+
+        private static MediaRange parse( final String range )
+        {
+            String[] parts = range.split( ";" );
+            String type = parts[0].trim().toLowerCase( Locale.ROOT );
+            if ( type.isEmpty() )
+            {
+                return null;
+            }
+            double quality = 1;
+            for ( int i = 1; i < parts.length; i++ )
+            {
+                String param = parts[i].trim();
+                if ( param.startsWith( "q=" ) )
+                {
+                    try
+                    {
+                        quality = Double.parseDouble( param.substring( 2 ) );
+                    }
+                    catch ( final NumberFormatException e )
+                    {
+                        quality = 0;
+                    }
+                }
+            }
+            return new MediaRange( type, quality );
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.format;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A compressed tar of the entries of the zip archive, in their order. PAX headers carry the names longer than 100
+ * bytes and the entries bigger than 8G; the leading "/" of the entry names is dropped, as tar does.
+ */
+public abstract class TarArchiveFormat
+        implements ArchiveFormat
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @return the compressing stream the tar is written through
+     */
+    protected abstract OutputStream compress( OutputStream out ) throws IOException;
+
+    @Override
+    public void transcode( final File zip, final OutputStream out ) throws IOException
+    {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile source = new ZipFile( zip );
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                             compress( new BufferedOutputStream( out, BUFFER_SIZE ) ),
+                             StandardCharsets.UTF_8.name() ))
+        {
+            tar.setLongFileMode( TarArchiveOutputStream.LONGFILE_POSIX );
+            tar.setBigNumberMode( TarArchiveOutputStream.BIGNUMBER_POSIX );
+            tar.setAddPaxHeadersForNonAsciiNames( true );
+
+            Enumeration<? extends ZipEntry> entries = source.entries();
+            while ( entries.hasMoreElements() )
+            {
+                ZipEntry entry = entries.nextElement();
+                if ( entry.isDirectory() )
+                {
+                    continue;
+                }
+                TarArchiveEntry tarEntry = new TarArchiveEntry( entry.getName() );
+                tarEntry.setSize( entry.getSize() );
+                tarEntry.setModTime( entry.getTime() );
+                tar.putArchiveEntry( tarEntry );
+                try (InputStream in = source.getInputStream( entry ))
+                {
+                    IOUtils.copyLarge( in, tar, buffer );
+                }
+                tar.closeArchiveEntry();
+            }
+            tar.finish();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.format;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@ApplicationScoped
+public class TarGzArchiveFormat
+        extends TarArchiveFormat
+{
+    public static final String NAME = "tar.gz";
+
+    private static final String MEDIA_TYPE = "application/gzip";
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public String getExtension()
+    {
+        return ".tar.gz";
+    }
+
+    @Override
+    public String getMediaType()
+    {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public boolean accepts( final String mediaType )
+    {
+        return MEDIA_TYPE.equals( mediaType ) || "application/x-gzip".equals( mediaType )
+                        || "application/x-gtar".equals( mediaType );
+    }
+
+    @Override
+    protected OutputStream compress( final OutputStream out ) throws IOException
+    {
+        return new GZIPOutputStream( out, 64 * 1024 );
+    }
+}
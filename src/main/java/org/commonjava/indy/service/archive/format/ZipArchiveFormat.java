@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.format;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+
+/**
+ * The format archives are generated in, served as {@code application/octet-stream} as it always has been.
+ */
+@ApplicationScoped
+public class ZipArchiveFormat
+        implements ArchiveFormat
+{
+    public static final String NAME = "zip";
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public String getExtension()
+    {
+        return ".zip";
+    }
+
+    @Override
+    public String getMediaType()
+    {
+        return APPLICATION_OCTET_STREAM;
+    }
+
+    @Override
+    public boolean accepts( final String mediaType )
+    {
+        return APPLICATION_OCTET_STREAM.equals( mediaType ) || "application/zip".equals( mediaType )
+                        || "application/x-zip-compressed".equals( mediaType );
+    }
+
+    @Override
+    public void transcode( final File zip, final OutputStream out ) throws IOException
+    {
+        Files.copy( zip.toPath(), out );
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.JsonObject;
+import org.commonjava.indy.service.archive.controller.MissingArtifactCache;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+@Tag( name = "Administration", description = "Operations on the runtime state of this system" )
+@Path( "/api/admin" )
+public class AdminResources
+{
+    @Inject
+    MissingArtifactCache missingArtifacts;
+
+    @Operation( description = "Forget the artifacts found missing from Indy, so the next generations ask for them again" )
+    @Path( "missing-artifacts" )
+    @DELETE
+    @Produces( APPLICATION_JSON )
+    public Uni<JsonObject> flushMissingArtifacts()
+    {
+        return Uni.createFrom().item( new JsonObject().put( "flushed", missingArtifacts.flush() ) );
+    }
+}
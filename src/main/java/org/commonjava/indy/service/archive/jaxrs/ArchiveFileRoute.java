@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs;
+
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.controller.ArchiveController;
+import org.commonjava.indy.service.archive.controller.ArchiveVariantPendingException;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
+import org.commonjava.indy.service.archive.format.ArchiveFormats;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.util.ByteRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static org.commonjava.indy.service.archive.jaxrs.ResponseHelper.archiveDisposition;
+
+/**
+ * Serves archive downloads with {@link HttpServerResponse#sendFile(String, long, long)}, so the kernel copies the
+ * archive to the socket and no byte of it goes through the heap. Only plain downloads and single byte ranges, in the
+ * format negotiated the same way as the resource does, are served here; conditional requests, several ranges, unknown
+ * archives or formats and failures go on to {@link ArchiveManageResources#get}, which answers them the same way as
+ * before. The archive is checked to still be the file it was looked up as right before it's sent; only a regeneration
+ * within the moment it takes sendFile to open it goes unnoticed.
+ */
+@ApplicationScoped
+public class ArchiveFileRoute
+{
+    private static final String ARCHIVE_PATH = "/api/archive/:buildConfigId";
+
+    private static final String[] CONDITIONAL_HEADERS =
+                    { "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range" };
+
+    // other resources of the JAX-RS resource under the same path, not build config ids
+    private static final Set<String> RESERVED_SEGMENTS = new HashSet<>( Arrays.asList( "status", "generate" ) );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    PreSeedConfig preSeedConfig;
+
+    @Inject
+    ArchiveController controller;
+
+    @Inject
+    ArchiveFormats formats;
+
+    public void init( @Observes final Router router )
+    {
+        if ( !preSeedConfig.archiveSendFile.orElse( Boolean.TRUE ) )
+        {
+            logger.info( "Archives are served through the JAX-RS resource." );
+            return;
+        }
+        // before the JAX-RS route, looking an archive up may hash it so it's done off the event loop
+        router.get( ARCHIVE_PATH ).order( -1 ).blockingHandler( this::serve, false );
+    }
+
+    void serve( final RoutingContext context )
+    {
+        final HttpServerRequest request = context.request();
+        final String buildConfigId = context.pathParam( "buildConfigId" );
+        if ( RESERVED_SEGMENTS.contains( buildConfigId ) )
+        {
+            context.next();
+            return;
+        }
+        for ( String header : CONDITIONAL_HEADERS )
+        {
+            if ( request.headers().contains( header ) )
+            {
+                context.next();
+                return;
+            }
+        }
+
+        final String formatName = request.getParam( "format" );
+        Optional<ArchiveFormat> format = formatName != null ?
+                        formats.get( formatName ) :
+                        formats.negotiate( request.getHeader( HttpHeaders.ACCEPT ) );
+        if ( !format.isPresent() )
+        {
+            // 400 or 406
+            context.next();
+            return;
+        }
+
+        Optional<ArchiveMetadata> target;
+        try
+        {
+            target = controller.getArchive( buildConfigId, format.get() );
+        }
+        catch ( final ArchiveVariantPendingException e )
+        {
+            // the resource answers 503
+            context.next();
+            return;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to look up archive for build config id: {}, leaving it to the resource",
+                         buildConfigId, e );
+            context.next();
+            return;
+        }
+        if ( !target.isPresent() )
+        {
+            // not an archive, maybe an other resource under the same path
+            context.next();
+            return;
+        }
+
+        final ArchiveMetadata archive = target.get();
+        if ( !controller.isCurrent( archive ) )
+        {
+            // regenerated since it was looked up: sendFile opens it by path, and would send the new file with the
+            // length and ETag of the old one, the resource looks it up again and serves it from an open channel
+            context.next();
+            return;
+        }
+        final long length = archive.getSize();
+        long offset = 0;
+        long count = length;
+        final HttpServerResponse response = context.response();
+        response.setStatusCode( OK.getStatusCode() );
+
+        Optional<List<ByteRange>> ranges = ByteRange.parse( request.getHeader( HttpHeaders.RANGE ), length );
+        if ( ranges.isPresent() )
+        {
+            if ( ranges.get().size() != 1 )
+            {
+                // multipart/byteranges and 416
+                context.next();
+                return;
+            }
+            ByteRange range = ranges.get().get( 0 );
+            offset = range.getFirst();
+            count = range.getLength();
+            response.setStatusCode( PARTIAL_CONTENT.getStatusCode() )
+                    .putHeader( HttpHeaders.CONTENT_RANGE, range.toContentRange( length ) );
+        }
+
+        response.putHeader( HttpHeaders.CONTENT_TYPE, format.get().getMediaType() )
+                .putHeader( HttpHeaders.ETAG, "\"" + archive.getChecksum() + "\"" )
+                .putHeader( HttpHeaders.LAST_MODIFIED, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                                Instant.ofEpochMilli( archive.getLastModified() ).atZone( ZoneOffset.UTC ) ) )
+                .putHeader( HttpHeaders.ACCEPT_RANGES, "bytes" )
+                .putHeader( HttpHeaders.VARY, HttpHeaders.ACCEPT )
+                .putHeader( HttpHeaders.CONTENT_DISPOSITION, archiveDisposition( buildConfigId, format.get() ) )
+                .sendFile( archive.getFile().getPath(), offset, count, result -> {
+                    if ( result.failed() )
+                    {
+                        logger.warn( "Failed to send archive {}", archive.getFile(), result.cause() );
+                    }
+                } );
+    }
+}
@@ -19,10 +19,22 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.smallrye.mutiny.Uni;
 import io.vertx.core.eventbus.EventBus;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.controller.ArchiveChangedException;
 import org.commonjava.indy.service.archive.controller.ArchiveController;
+import org.commonjava.indy.service.archive.controller.ArchiveJobConflictException;
+import org.commonjava.indy.service.archive.controller.ArchiveJobScheduler;
+import org.commonjava.indy.service.archive.controller.ArchiveVariantPendingException;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
+import org.commonjava.indy.service.archive.format.ArchiveFormats;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.model.dto.ArchiveStatusDTO;
 import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
+import org.commonjava.indy.service.archive.util.ByteRange;
+import org.commonjava.indy.service.archive.util.JsonArrayStreamingOutput;
+import org.commonjava.indy.service.archive.util.RangeStreamingOutput;
 import org.commonjava.indy.service.archive.util.TransferStreamingOutput;
+import org.commonjava.indy.service.archive.util.ZipEntryStreamingOutput;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
@@ -38,32 +50,71 @@ import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+import static javax.ws.rs.core.Response.Status.NOT_ACCEPTABLE;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static javax.ws.rs.core.Response.Status.TOO_MANY_REQUESTS;
 import static javax.ws.rs.core.Response.accepted;
 import static javax.ws.rs.core.Response.noContent;
-import static org.commonjava.indy.service.archive.jaxrs.ResponseHelper.buildWithZipHeader;
+import static org.commonjava.indy.service.archive.jaxrs.ResponseHelper.buildWithArchiveHeader;
+import static org.commonjava.indy.service.archive.jaxrs.ResponseHelper.fromRejected;
 import static org.commonjava.indy.service.archive.jaxrs.ResponseHelper.fromResponse;
 
 @Tag( name = "Archive Management", description = "Resource for managing the historical archive" )
 @Path( "/api/archive" )
 public class ArchiveManageResources
 {
+    private static final String RANGE = "Range";
+
+    private static final String IF_RANGE = "If-Range";
+
+    private static final String CONTENT_RANGE = "Content-Range";
+
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+
+    private static final String ACCEPT = "Accept";
+
+    private static final String VARY = "Vary";
+
+    private static final int TRANSCODE_RETRY_AFTER_SECONDS = 10;
+
+    private static final int CHANGED_RETRY_AFTER_SECONDS = 1;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -72,11 +123,21 @@ public class ArchiveManageResources
     @Inject
     ArchiveController controller;
 
+    @Inject
+    ArchiveJobScheduler scheduler;
+
+    @Inject
+    ArchiveFormats formats;
+
     @Inject
     EventBus bus;
 
     @Operation( description = "Generate archive based on tracked content" )
+    @APIResponse( responseCode = "200", description = "The archive is up to date with the tracked content, nothing is generated" )
     @APIResponse( responseCode = "202", description = "The archive created request is accepted" )
+    @APIResponse( responseCode = "409", description = "A generation of the archive is already queued or running" )
+    @APIResponse( responseCode = "429", description = "Too many archive generating requests are pending, retry later" )
+    @APIResponse( responseCode = "503", description = "The archive service is shutting down" )
     @RequestBody( description = "The tracked content definition JSON", name = "body", required = true, content = @Content( mediaType = APPLICATION_JSON, example =
                     "{" + "\"buildConfigId\": \"XXX\"," + "\"downloads\":" + "[{" + "    \"storeKey\": \"\","
                                     + "    \"path\": \"\"," + "    \"md5\": \"\"," + "    \"sha256\": \"\","
@@ -85,19 +146,27 @@ public class ArchiveManageResources
     @POST
     @Path( "generate" )
     @Consumes( APPLICATION_JSON )
-    public Uni<Response> create( final @Context UriInfo uriInfo, final @Context HttpRequest request )
+    public Uni<Response> create( final @Context UriInfo uriInfo, final @Context HttpRequest request,
+                                 final @QueryParam( "force" ) boolean force )
     {
+        if ( scheduler.isSaturated() || scheduler.isShutdown() )
+        {
+            // reject before reading a possibly huge request body
+            return rejected();
+        }
+
         HistoricalContentDTO content;
         try
         {
-            String json = IOUtils.toString( request.getInputStream(), Charset.defaultCharset() );
-            content = objectMapper.readValue( json, HistoricalContentDTO.class );
-            if ( content == null )
+            // parsed as it's read, the downloads go to disk rather than to the heap
+            Optional<HistoricalContentDTO> received = controller.receive( request.getInputStream() );
+            if ( !received.isPresent() )
             {
                 final String message = "Failed to read historical content which is empty.";
                 logger.error( message );
                 return fromResponse( message );
             }
+            content = received.get();
         }
         catch ( final IOException e )
         {
@@ -106,15 +175,58 @@ public class ArchiveManageResources
             return fromResponse( message );
         }
 
-        controller.generate( content );
+        boolean queued;
+        try
+        {
+            queued = controller.generate( content, force );
+        }
+        catch ( final ArchiveJobConflictException e )
+        {
+            return conflict( e );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            return rejected();
+        }
+        if ( !queued )
+        {
+            return Uni.createFrom()
+                      .item( Response.ok()
+                                     .type( MediaType.TEXT_PLAIN )
+                                     .entity( "Archive is up to date with the tracked content." )
+                                     .build() );
+        }
         return Uni.createFrom()
                   .item( accepted().type( MediaType.TEXT_PLAIN )
                                    .entity( "Archive created request is accepted." )
                                    .build() );
     }
 
+    private Uni<Response> conflict( final ArchiveJobConflictException e )
+    {
+        logger.warn( e.getMessage() );
+        return Uni.createFrom()
+                  .item( Response.status( CONFLICT )
+                                 .type( MediaType.TEXT_PLAIN )
+                                 .entity( e.getMessage() + "." )
+                                 .build() );
+    }
+
+    private Uni<Response> rejected()
+    {
+        if ( scheduler.isShutdown() )
+        {
+            return fromRejected( SERVICE_UNAVAILABLE, scheduler.getRetryAfterSeconds(),
+                                 "Archive service is shutting down." );
+        }
+        final String message = String.format( "Too many archive generating requests, running: %s, queued: %s.",
+                                              scheduler.getRunningJobs(), scheduler.getQueuedJobs() );
+        logger.warn( message );
+        return fromRejected( TOO_MANY_REQUESTS, scheduler.getRetryAfterSeconds(), message );
+    }
+
     @Operation( description = "Get the status of generating archive based on build config Id" )
-    @APIResponse( responseCode = "200", description = "Get the status of generating history archive" )
+    @APIResponse( responseCode = "200", description = "Get the status and the progress of generating history archive", content = @Content( mediaType = APPLICATION_JSON, schema = @Schema( implementation = ArchiveStatusDTO.class ) ) )
     @APIResponse( responseCode = "404", description = "The status of generating history archive doesn't exist" )
     @GET
     @Path( "status/{buildConfigId}" )
@@ -122,11 +234,23 @@ public class ArchiveManageResources
                                             final @Context UriInfo uriInfo )
     {
         Response response;
-        if ( controller.statusExists( buildConfigId ) )
+        Optional<ArchiveStatusDTO> status = controller.getJobStatus( buildConfigId );
+        if ( status.isPresent() )
         {
-            String msg = String.format( "Archive generating on build config Id: %s is %s.", buildConfigId,
-                                        controller.getStatus( buildConfigId ) );
-            response = Response.ok().type( MediaType.TEXT_PLAIN ).entity( msg ).build();
+            try
+            {
+                response = Response.ok()
+                                   .type( APPLICATION_JSON )
+                                   .entity( objectMapper.writeValueAsString( status.get() ) )
+                                   .build();
+            }
+            catch ( final IOException e )
+            {
+                final String message = "Failed to write the status of generating archive, build config id: "
+                                + buildConfigId;
+                logger.error( message, e );
+                return fromResponse( message );
+            }
         }
         else
         {
@@ -138,29 +262,130 @@ public class ArchiveManageResources
         return Uni.createFrom().item( response );
     }
 
-    @Operation( description = "Get latest historical build archive by buildConfigId" )
+    @Operation( description = "Get the statuses of generating archives by a list of build config Ids or an Id prefix" )
+    @APIResponse( responseCode = "200", description = "The statuses of the known archive generating jobs, unknown Ids are left out", content = @Content( mediaType = APPLICATION_JSON, schema = @Schema( implementation = ArchiveStatusDTO[].class ) ) )
+    @APIResponse( responseCode = "400", description = "Neither build config Ids nor a prefix are given" )
+    @GET
+    @Path( "status" )
+    @Produces( APPLICATION_JSON )
+    public Uni<Response> getGenerateStatuses( final @QueryParam( "buildConfigId" ) List<String> buildConfigIds,
+                                              final @QueryParam( "prefix" ) String prefix )
+    {
+        return streamStatuses( buildConfigIds, prefix );
+    }
+
+    @Operation( description = "Get the statuses of generating archives by a list of build config Ids" )
+    @APIResponse( responseCode = "200", description = "The statuses of the known archive generating jobs, unknown Ids are left out", content = @Content( mediaType = APPLICATION_JSON, schema = @Schema( implementation = ArchiveStatusDTO[].class ) ) )
+    @APIResponse( responseCode = "400", description = "The body is not a JSON array of build config Ids" )
+    @RequestBody( description = "The build config Ids JSON array", name = "body", required = true, content = @Content( mediaType = APPLICATION_JSON, example = "[\"XXX\", \"YYY\"]" ) )
+    @POST
+    @Path( "status" )
+    @Consumes( APPLICATION_JSON )
+    @Produces( APPLICATION_JSON )
+    public Uni<Response> queryGenerateStatuses( final @Context HttpRequest request )
+    {
+        String[] buildConfigIds;
+        try
+        {
+            buildConfigIds = objectMapper.readValue( request.getInputStream(), String[].class );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to read build config ids from request body.", e );
+            buildConfigIds = null;
+        }
+        return streamStatuses( buildConfigIds == null ? null : Arrays.asList( buildConfigIds ), null );
+    }
+
+    private Uni<Response> streamStatuses( final List<String> buildConfigIds, final String prefix )
+    {
+        Stream<ArchiveStatusDTO> statuses;
+        if ( buildConfigIds != null && !buildConfigIds.isEmpty() )
+        {
+            statuses = controller.getJobStatuses( buildConfigIds );
+        }
+        else if ( prefix != null && !prefix.isEmpty() )
+        {
+            statuses = controller.getJobStatusesByPrefix( prefix );
+        }
+        else
+        {
+            return Uni.createFrom()
+                      .item( Response.status( BAD_REQUEST )
+                                     .type( MediaType.TEXT_PLAIN )
+                                     .entity( "A list of build config ids or a prefix is required." )
+                                     .build() );
+        }
+        return Uni.createFrom()
+                  .item( Response.ok( new JsonArrayStreamingOutput( objectMapper, statuses ) )
+                                 .type( APPLICATION_JSON )
+                                 .build() );
+    }
+
+    @Operation( description = "Get latest historical build archive by buildConfigId, as zip, tar.gz or tar.zst by the format parameter or the Accept header" )
     @APIResponse( responseCode = "200", description = "Get the history archive successfully" )
+    @APIResponse( responseCode = "206", description = "Get the requested byte ranges of the history archive" )
+    @APIResponse( responseCode = "304", description = "The history archive is not modified since the given ETag or date" )
+    @APIResponse( responseCode = "400", description = "The requested archive format is unknown" )
     @APIResponse( responseCode = "404", description = "The history archive doesn't exist" )
+    @APIResponse( responseCode = "406", description = "The accepted media types refuse zip and name no other archive format" )
+    @APIResponse( responseCode = "416", description = "None of the requested byte ranges is in the history archive" )
+    @APIResponse( responseCode = "503", description = "The history archive is still being transcoded to the requested format" )
     @Path( "{buildConfigId}" )
-    @Produces( APPLICATION_OCTET_STREAM )
     @GET
-    public Uni<Response> get( final @PathParam( "buildConfigId" ) String buildConfigId, final @Context UriInfo uriInfo )
+    public Uni<Response> get( final @PathParam( "buildConfigId" ) String buildConfigId, final @Context UriInfo uriInfo,
+                              final @Context Request request, final @QueryParam( "format" ) String formatName,
+                              final @HeaderParam( ACCEPT ) String accept, final @HeaderParam( RANGE ) String range,
+                              final @HeaderParam( IF_RANGE ) String ifRange )
     {
+        Optional<ArchiveFormat> format = formatName != null ? formats.get( formatName ) : formats.negotiate( accept );
+        if ( !format.isPresent() )
+        {
+            final String message = "Archives are available as: " + formats.getAll()
+                                                                           .stream()
+                                                                           .map( ArchiveFormat::getName )
+                                                                           .collect( Collectors.joining( ", " ) );
+            return Uni.createFrom()
+                      .item( Response.status( formatName != null ? BAD_REQUEST : NOT_ACCEPTABLE )
+                                     .type( MediaType.TEXT_PLAIN )
+                                     .entity( message )
+                                     .build() );
+        }
+
         Response response;
         try
         {
-            Optional<File> target = controller.getArchiveInputStream( buildConfigId );
+            Optional<ArchiveMetadata> target = controller.getArchive( buildConfigId, format.get() );
             if ( target.isPresent() )
             {
-                InputStream inputStream = FileUtils.openInputStream( target.get() );
-                final ResponseBuilder builder = Response.ok( new TransferStreamingOutput( inputStream ) );
-                response = buildWithZipHeader( builder, buildConfigId );
+                ArchiveMetadata archive = target.get();
+                EntityTag eTag = new EntityTag( archive.getChecksum() );
+                // HTTP dates have no milliseconds, If-Modified-Since would never match otherwise
+                Date lastModified = new Date( archive.getLastModified() / 1000 * 1000 );
+                ResponseBuilder builder = request.evaluatePreconditions( lastModified, eTag );
+                if ( builder != null )
+                {
+                    response = builder.tag( eTag ).lastModified( lastModified ).header( VARY, ACCEPT ).build();
+                }
+                else
+                {
+                    response = buildArchiveResponse( archive, format.get(), eTag, lastModified,
+                                                     rangeApplies( ifRange, eTag, lastModified ) ? range : null );
+                }
             }
             else
             {
                 response = Response.status( NOT_FOUND ).build();
             }
         }
+        catch ( final ArchiveVariantPendingException e )
+        {
+            return fromRejected( SERVICE_UNAVAILABLE, TRANSCODE_RETRY_AFTER_SECONDS, e.getMessage() + "." );
+        }
+        catch ( final ArchiveChangedException e )
+        {
+            return fromRejected( SERVICE_UNAVAILABLE, CHANGED_RETRY_AFTER_SECONDS, e.getMessage() + "." );
+        }
         catch ( final IOException e )
         {
             final String message = "Failed to get historical archive for build config id: " + buildConfigId;
@@ -170,6 +395,256 @@ public class ArchiveManageResources
         return Uni.createFrom().item( response );
     }
 
+    private Response buildArchiveResponse( final ArchiveMetadata archive, final ArchiveFormat format,
+                                           final EntityTag eTag, final Date lastModified, final String range )
+                    throws IOException
+    {
+        final long length = archive.getSize();
+        Optional<List<ByteRange>> ranges = ByteRange.parse( range, length );
+        ResponseBuilder builder;
+        if ( ranges.isPresent() && ranges.get().isEmpty() )
+        {
+            return Response.status( REQUESTED_RANGE_NOT_SATISFIABLE )
+                           .header( CONTENT_RANGE, "bytes */" + length )
+                           .tag( eTag )
+                           .build();
+        }
+        // opened now, the body is written later and has to be the file the ETag and length were taken from
+        FileChannel channel = controller.openArchive( archive );
+        if ( !ranges.isPresent() )
+        {
+            builder = Response.ok( new TransferStreamingOutput( Channels.newInputStream( channel ) ) )
+                              .type( format.getMediaType() )
+                              .header( CONTENT_LENGTH, length );
+        }
+        else
+        {
+            RangeStreamingOutput output =
+                            new RangeStreamingOutput( channel, length, ranges.get(), format.getMediaType() );
+            builder = Response.status( PARTIAL_CONTENT )
+                              .entity( output )
+                              .type( output.getContentType() )
+                              .header( CONTENT_LENGTH, output.getContentLength() );
+            if ( !output.isMultipart() )
+            {
+                builder.header( CONTENT_RANGE, ranges.get().get( 0 ).toContentRange( length ) );
+            }
+        }
+        builder.tag( eTag ).lastModified( lastModified ).header( ACCEPT_RANGES, "bytes" ).header( VARY, ACCEPT );
+        return buildWithArchiveHeader( builder, archive.getBuildConfigId(), format );
+    }
+
+    /**
+     * A Range only applies if the If-Range validator, when given, still matches the archive. Weak ETags never match.
+     */
+    private boolean rangeApplies( final String ifRange, final EntityTag eTag, final Date lastModified )
+    {
+        if ( ifRange == null )
+        {
+            return true;
+        }
+        String validator = ifRange.trim();
+        if ( validator.startsWith( "\"" ) )
+        {
+            return validator.equals( "\"" + eTag.getValue() + "\"" );
+        }
+        if ( validator.startsWith( "W/" ) )
+        {
+            return false;
+        }
+        try
+        {
+            return ZonedDateTime.parse( validator, DateTimeFormatter.RFC_1123_DATE_TIME ).toInstant().toEpochMilli()
+                            == lastModified.getTime();
+        }
+        catch ( final DateTimeParseException e )
+        {
+            return false;
+        }
+    }
+
+    @Operation( description = "List the entries of the latest historical build archive by buildConfigId" )
+    @APIResponse( responseCode = "200", description = "Get the entry names, sizes and crc32 checksums of the history archive" )
+    @APIResponse( responseCode = "404", description = "The history archive doesn't exist" )
+    @Path( "{buildConfigId}/manifest" )
+    @Produces( APPLICATION_JSON )
+    @GET
+    public Uni<Response> getManifest( final @PathParam( "buildConfigId" ) String buildConfigId,
+                                      final @Context UriInfo uriInfo )
+    {
+        Response response;
+        try
+        {
+            Optional<File> manifest = controller.getArchiveManifest( buildConfigId );
+            if ( manifest.isPresent() )
+            {
+                InputStream inputStream = FileUtils.openInputStream( manifest.get() );
+                response = Response.ok( new TransferStreamingOutput( inputStream ) )
+                                   .type( APPLICATION_JSON )
+                                   .header( CONTENT_LENGTH, manifest.get().length() )
+                                   .build();
+            }
+            else
+            {
+                response = Response.status( NOT_FOUND ).build();
+            }
+        }
+        catch ( final IOException e )
+        {
+            final String message = "Failed to get the manifest of historical archive for build config id: "
+                            + buildConfigId;
+            logger.error( message, e );
+            return fromResponse( message );
+        }
+        return Uni.createFrom().item( response );
+    }
+
+    @Operation( description = "Get the outcome of each entry of the last generation of the archive by buildConfigId" )
+    @APIResponse( responseCode = "200", description = "Get the downloaded, cached and failed entries of the history archive" )
+    @APIResponse( responseCode = "404", description = "The history archive or the result of its generation doesn't exist" )
+    @Path( "{buildConfigId}/result" )
+    @Produces( APPLICATION_JSON )
+    @GET
+    public Uni<Response> getResult( final @PathParam( "buildConfigId" ) String buildConfigId,
+                                    final @Context UriInfo uriInfo )
+    {
+        Response response;
+        try
+        {
+            Optional<File> result = controller.getArchiveResult( buildConfigId );
+            if ( result.isPresent() )
+            {
+                InputStream inputStream = FileUtils.openInputStream( result.get() );
+                response = Response.ok( new TransferStreamingOutput( inputStream ) )
+                                   .type( APPLICATION_JSON )
+                                   .header( CONTENT_LENGTH, result.get().length() )
+                                   .build();
+            }
+            else
+            {
+                response = Response.status( NOT_FOUND ).build();
+            }
+        }
+        catch ( final IOException e )
+        {
+            final String message = "Failed to get the generation result of historical archive for build config id: "
+                            + buildConfigId;
+            logger.error( message, e );
+            return fromResponse( message );
+        }
+        return Uni.createFrom().item( response );
+    }
+
+    @Operation( description = "Retry the entries which failed in the last generation of the archive by buildConfigId" )
+    @APIResponse( responseCode = "202", description = "The retry is accepted, the recovered entries are added to the archive" )
+    @APIResponse( responseCode = "204", description = "No entry failed in the last generation of the archive" )
+    @APIResponse( responseCode = "404", description = "The history archive or the result of its generation doesn't exist" )
+    @APIResponse( responseCode = "409", description = "A generation of the archive is already queued or running" )
+    @APIResponse( responseCode = "429", description = "Too many archive generating requests are pending, retry later" )
+    @APIResponse( responseCode = "503", description = "The archive service is shutting down" )
+    @Path( "{buildConfigId}/retry" )
+    @POST
+    public Uni<Response> retry( final @PathParam( "buildConfigId" ) String buildConfigId,
+                                final @Context UriInfo uriInfo )
+    {
+        Optional<Integer> retried;
+        try
+        {
+            retried = controller.retryFailed( buildConfigId );
+        }
+        catch ( final ArchiveJobConflictException e )
+        {
+            return conflict( e );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            return rejected();
+        }
+        catch ( final IOException e )
+        {
+            final String message = "Failed to retry the failed entries of historical archive for build config id: "
+                            + buildConfigId;
+            logger.error( message, e );
+            return fromResponse( message );
+        }
+        if ( !retried.isPresent() )
+        {
+            return Uni.createFrom().item( Response.status( NOT_FOUND ).build() );
+        }
+        if ( retried.get() == 0 )
+        {
+            return Uni.createFrom().item( noContent().build() );
+        }
+        return Uni.createFrom()
+                  .item( accepted().type( MediaType.TEXT_PLAIN )
+                                   .entity( "Retry of " + retried.get() + " failed entries is accepted." )
+                                   .build() );
+    }
+
+    @Operation( description = "Get one entry of the latest historical build archive by buildConfigId and entry path" )
+    @APIResponse( responseCode = "200", description = "Get the archive entry successfully" )
+    @APIResponse( responseCode = "404", description = "The history archive or the entry doesn't exist" )
+    @Path( "{buildConfigId}/entry/{path: .+}" )
+    @Produces( APPLICATION_OCTET_STREAM )
+    @GET
+    public Uni<Response> getEntry( final @PathParam( "buildConfigId" ) String buildConfigId,
+                                   final @PathParam( "path" ) String path, final @Context UriInfo uriInfo )
+    {
+        Response response = Response.status( NOT_FOUND ).build();
+        try
+        {
+            Optional<ArchiveMetadata> archive = controller.getArchive( buildConfigId );
+            if ( archive.isPresent() )
+            {
+                // the entry offset and the body come from the same file, even if the archive is regenerated meanwhile
+                FileChannel channel = controller.openArchive( archive.get() );
+                Optional<ArchiveEntry> entry;
+                try
+                {
+                    entry = controller.getArchiveEntry( archive.get(), channel, path );
+                }
+                catch ( final IOException | RuntimeException e )
+                {
+                    channel.close();
+                    throw e;
+                }
+                if ( entry.isPresent() )
+                {
+                    String name = entry.get().getName();
+                    response = Response.ok( new ZipEntryStreamingOutput( channel, entry.get() ) )
+                                       .header( CONTENT_LENGTH, entry.get().getSize() )
+                                       .header( "Content-Disposition", "attachment;filename=\"" + quoted(
+                                                       name.substring( name.lastIndexOf( '/' ) + 1 ) ) + "\"" )
+                                       .build();
+                }
+                else
+                {
+                    channel.close();
+                }
+            }
+        }
+        catch ( final ArchiveChangedException e )
+        {
+            return fromRejected( SERVICE_UNAVAILABLE, CHANGED_RETRY_AFTER_SECONDS, e.getMessage() + "." );
+        }
+        catch ( final IOException e )
+        {
+            final String message = "Failed to get entry " + path + " of historical archive for build config id: "
+                            + buildConfigId;
+            logger.error( message, e );
+            return fromResponse( message );
+        }
+        return Uni.createFrom().item( response );
+    }
+
+    /**
+     * Escape a file name for a quoted-string header parameter.
+     */
+    private static String quoted( final String name )
+    {
+        return name.replace( "\\", "\\\\" ).replace( "\"", "\\\"" );
+    }
+
     @Operation( description = "Delete the build archive by buildConfigId" )
     @APIResponse( responseCode = "204", description = "The history archive is deleted or doesn't exist" )
     @Path( "{buildConfigId}" )
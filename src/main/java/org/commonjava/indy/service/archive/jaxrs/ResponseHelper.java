@@ -16,6 +16,7 @@
 package org.commonjava.indy.service.archive.jaxrs;
 
 import io.smallrye.mutiny.Uni;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.ws.rs.core.MediaType;
@@ -32,10 +33,27 @@ public class ResponseHelper
         return Uni.createFrom().item( serverError().type( MediaType.TEXT_PLAIN ).entity( message ).build() );
     }
 
-    public static Response buildWithZipHeader( ResponseBuilder builder, final String buildConfigId )
+    public static Uni<Response> fromRejected( final Response.Status status, final int retryAfterSeconds,
+                                              final String message )
+    {
+        return Uni.createFrom()
+                  .item( Response.status( status )
+                                 .header( "Retry-After", retryAfterSeconds )
+                                 .type( MediaType.TEXT_PLAIN )
+                                 .entity( message )
+                                 .build() );
+    }
+
+    public static Response buildWithArchiveHeader( ResponseBuilder builder, final String buildConfigId,
+                                                   final ArchiveFormat format )
+    {
+        return builder.header( "Content-Disposition", archiveDisposition( buildConfigId, format ) ).build();
+    }
+
+    public static String archiveDisposition( final String buildConfigId, final ArchiveFormat format )
     {
         StringBuilder header = new StringBuilder();
-        header.append( "attachment;" ).append( "filename=" ).append( buildConfigId ).append( ".zip" );
-        return builder.header( "Content-Disposition", header.toString() ).build();
+        header.append( "attachment;" ).append( "filename=" ).append( buildConfigId ).append( format.getExtension() );
+        return header.toString();
     }
 }
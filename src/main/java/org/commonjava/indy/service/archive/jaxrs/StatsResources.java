@@ -18,6 +18,7 @@ package org.commonjava.indy.service.archive.jaxrs;
 import io.smallrye.mutiny.Uni;
 import io.vertx.core.json.JsonObject;
 import org.commonjava.indy.service.archive.controller.StatsController;
+import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 
 import javax.inject.Inject;
@@ -42,4 +43,22 @@ public class StatsResources
     {
         return statsController.getStatsInfo();
     }
+
+    @Operation( description = "Get the running and queued archive generating jobs" )
+    @Path( "archive-jobs" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Uni<JsonObject> getArchiveJobStats()
+    {
+        return statsController.getArchiveJobStats();
+    }
+
+    @Operation( description = "Get the size and hit rate of the cache of artifacts missing from Indy" )
+    @Path( "missing-artifacts" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Uni<JsonObject> getMissingArtifactStats()
+    {
+        return statsController.getMissingArtifactStats();
+    }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.model;
+
+import java.util.zip.ZipEntry;
+
+/**
+ * An entry of a stored archive as recorded in its zip central directory: enough to find and read its bytes without
+ * scanning the archive.
+ */
+public class ArchiveEntry
+{
+    private final String name;
+
+    private final int method;
+
+    private final long crc;
+
+    private final long compressedSize;
+
+    private final long size;
+
+    private final long headerOffset;
+
+    private final int flags;
+
+    private final int dosTime;
+
+    public ArchiveEntry( final String name, final int method, final long crc, final long compressedSize,
+                         final long size, final long headerOffset, final int flags, final int dosTime )
+    {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.headerOffset = headerOffset;
+        this.flags = flags;
+        this.dosTime = dosTime;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getMethod()
+    {
+        return method;
+    }
+
+    public boolean isStored()
+    {
+        return method == ZipEntry.STORED;
+    }
+
+    public long getCrc()
+    {
+        return crc;
+    }
+
+    public long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the position of the local file header of the entry in the archive
+     */
+    public long getHeaderOffset()
+    {
+        return headerOffset;
+    }
+
+    /**
+     * @return the general purpose bit flags, as the local file header of the entry has them
+     */
+    public int getFlags()
+    {
+        return flags;
+    }
+
+    /**
+     * @return the last modification date (high 16 bits) and time (low 16 bits) in MS-DOS format
+     */
+    public int getDosTime()
+    {
+        return dosTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ArchiveEntry [name=%s, method=%d, crc=%08x, compressedSize=%d, size=%d, offset=%d]",
+                              name, method, crc, compressedSize, size, headerOffset );
+    }
+}
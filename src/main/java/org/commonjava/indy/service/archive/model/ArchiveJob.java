@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of the last generation of an archive, with the time (epoch millis) it entered each state. Instances are
+ * snapshots, a transition creates a new one.
+ */
+public class ArchiveJob
+{
+    private String buildConfigId;
+
+    private ArchiveStatus status;
+
+    private Map<ArchiveStatus, Long> transitions = new LinkedHashMap<>();
+
+    public ArchiveJob()
+    {
+    }
+
+    public ArchiveJob( final String buildConfigId )
+    {
+        this.buildConfigId = buildConfigId;
+    }
+
+    public String getBuildConfigId()
+    {
+        return buildConfigId;
+    }
+
+    public void setBuildConfigId( String buildConfigId )
+    {
+        this.buildConfigId = buildConfigId;
+    }
+
+    public ArchiveStatus getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus( ArchiveStatus status )
+    {
+        this.status = status;
+    }
+
+    public Map<ArchiveStatus, Long> getTransitions()
+    {
+        return transitions;
+    }
+
+    public void setTransitions( Map<ArchiveStatus, Long> transitions )
+    {
+        this.transitions = transitions;
+    }
+
+    @JsonIgnore
+    public Long getUpdated()
+    {
+        return status == null ? null : transitions.get( status );
+    }
+
+    /**
+     * @return a copy of this job in the given state, a queued job starts a new generation with no former transitions
+     */
+    public ArchiveJob transition( final ArchiveStatus status, final long timestamp )
+    {
+        ArchiveJob next = new ArchiveJob( buildConfigId );
+        if ( status != ArchiveStatus.queued )
+        {
+            next.transitions.putAll( transitions );
+        }
+        next.status = status;
+        next.transitions.put( status, timestamp );
+        return next;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ArchiveJob [buildConfigId=%s, status=%s, transitions=%s]", buildConfigId, status,
+                              transitions );
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.model;
+
+import java.io.File;
+
+/**
+ * What the service knows of a generated archive without touching the file system.
+ */
+public class ArchiveMetadata
+{
+    private final String buildConfigId;
+
+    private final File file;
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final String checksum;
+
+    public ArchiveMetadata( final String buildConfigId, final File file, final long size, final long lastModified,
+                            final String checksum )
+    {
+        this.buildConfigId = buildConfigId;
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+    }
+
+    public String getBuildConfigId()
+    {
+        return buildConfigId;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return the sha256 of the archive, or null if it was generated before checksums were recorded
+     */
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ArchiveMetadata [buildConfigId=%s, file=%s, size=%d, lastModified=%d, checksum=%s]",
+                              buildConfigId, file, size, lastModified, checksum );
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of an archive generation, updated by the download and archive threads. Cache hits are counted as
+ * skipped entries: their bytes are done but nothing was transferred. Transferred bytes are counted as they're written,
+ * the throughput and the estimate of the remaining time are told from them only.
+ */
+public class ArchiveProgress
+{
+    private final AtomicInteger entriesTotal = new AtomicInteger();
+
+    private final AtomicInteger entriesDone = new AtomicInteger();
+
+    private final AtomicInteger entriesFailed = new AtomicInteger();
+
+    private final AtomicInteger entriesSkipped = new AtomicInteger();
+
+    private final AtomicInteger entriesArchived = new AtomicInteger();
+
+    private final AtomicLong bytesExpected = new AtomicLong();
+
+    private final AtomicLong bytesDone = new AtomicLong();
+
+    private final AtomicLong bytesFailed = new AtomicLong();
+
+    private final AtomicLong bytesSkipped = new AtomicLong();
+
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    private volatile long started;
+
+    private volatile long finished;
+
+    public void start( final int entries, final long expectedBytes )
+    {
+        entriesTotal.set( entries );
+        bytesExpected.set( expectedBytes );
+        started = System.currentTimeMillis();
+    }
+
+    public void finish()
+    {
+        if ( finished == 0 )
+        {
+            finished = System.currentTimeMillis();
+        }
+    }
+
+    public void downloaded( final long bytes )
+    {
+        entriesDone.incrementAndGet();
+        bytesDone.addAndGet( bytes );
+    }
+
+    public void skipped( final long bytes )
+    {
+        entriesSkipped.incrementAndGet();
+        bytesDone.addAndGet( bytes );
+        bytesSkipped.addAndGet( bytes );
+    }
+
+    /**
+     * Count a chunk of a download as it's written, whether or not the download completes.
+     */
+    public void transferred( final long bytes )
+    {
+        bytesTransferred.addAndGet( bytes );
+    }
+
+    public void failed( final long bytes )
+    {
+        entriesFailed.incrementAndGet();
+        bytesFailed.addAndGet( bytes );
+    }
+
+    public void archived()
+    {
+        entriesArchived.incrementAndGet();
+    }
+
+    public int getEntriesTotal()
+    {
+        return entriesTotal.get();
+    }
+
+    public int getEntriesDone()
+    {
+        return entriesDone.get();
+    }
+
+    public int getEntriesFailed()
+    {
+        return entriesFailed.get();
+    }
+
+    public int getEntriesSkipped()
+    {
+        return entriesSkipped.get();
+    }
+
+    public int getEntriesArchived()
+    {
+        return entriesArchived.get();
+    }
+
+    public long getBytesExpected()
+    {
+        return bytesExpected.get();
+    }
+
+    public long getBytesDone()
+    {
+        return bytesDone.get();
+    }
+
+    public long getBytesSkipped()
+    {
+        return bytesSkipped.get();
+    }
+
+    public long getBytesTransferred()
+    {
+        return bytesTransferred.get();
+    }
+
+    /**
+     * @return bytes transferred per second since the downloads started, skipped entries don't count
+     */
+    public long getThroughput()
+    {
+        long elapsed = ( finished == 0 ? System.currentTimeMillis() : finished ) - started;
+        if ( started == 0 || elapsed <= 0 )
+        {
+            return 0;
+        }
+        return bytesTransferred.get() * 1000 / elapsed;
+    }
+
+    /**
+     * @return estimated seconds until the expected bytes which are neither skipped nor failed are transferred, null
+     * while it can't be told
+     */
+    public Long getEta()
+    {
+        if ( finished != 0 )
+        {
+            return 0L;
+        }
+        long throughput = getThroughput();
+        if ( throughput <= 0 )
+        {
+            return null;
+        }
+        long remaining = bytesExpected.get() - bytesSkipped.get() - bytesFailed.get() - bytesTransferred.get();
+        return Math.max( 0, remaining ) / throughput;
+    }
+}
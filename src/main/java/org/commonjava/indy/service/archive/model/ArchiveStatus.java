@@ -3,7 +3,7 @@ package org.commonjava.indy.service.archive.model;
 public enum ArchiveStatus
 {
 
-    inProgress( "In Progress" ), completed( "Completed" );
+    queued( "Queued" ), downloading( "Downloading" ), zipping( "Zipping" ), completed( "Completed" ), failed( "Failed" );
 
     private final String archiveStatus;
 
@@ -16,4 +16,9 @@ public enum ArchiveStatus
     {
         return this.archiveStatus;
     }
+
+    public boolean isFinished()
+    {
+        return this == completed || this == failed;
+    }
 }
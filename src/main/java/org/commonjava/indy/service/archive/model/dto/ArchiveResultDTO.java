@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.model.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of each entry of the last generation of an archive: downloaded, taken from the artifact cache (or from the
+ * transfer of another generation, or from the previous archive), or failed. The failed entries are what a retry
+ * downloads and adds to the archive, the others are what an incremental generation compares the tracked content to.
+ * The fingerprint of the tracked content is kept so the archive can be recognized as up to date once nothing failed.
+ */
+public class ArchiveResultDTO
+{
+    private String buildConfigId;
+
+    private String fingerprint;
+
+    private List<HistoricalEntryDTO> downloaded = new ArrayList<>();
+
+    private List<HistoricalEntryDTO> cached = new ArrayList<>();
+
+    private List<HistoricalEntryDTO> failed = new ArrayList<>();
+
+    public ArchiveResultDTO()
+    {
+    }
+
+    public ArchiveResultDTO( final String buildConfigId )
+    {
+        this.buildConfigId = buildConfigId;
+    }
+
+    public String getBuildConfigId()
+    {
+        return buildConfigId;
+    }
+
+    public void setBuildConfigId( final String buildConfigId )
+    {
+        this.buildConfigId = buildConfigId;
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    public void setFingerprint( final String fingerprint )
+    {
+        this.fingerprint = fingerprint;
+    }
+
+    public List<HistoricalEntryDTO> getDownloaded()
+    {
+        return downloaded;
+    }
+
+    public void setDownloaded( final List<HistoricalEntryDTO> downloaded )
+    {
+        this.downloaded = downloaded;
+    }
+
+    public List<HistoricalEntryDTO> getCached()
+    {
+        return cached;
+    }
+
+    public void setCached( final List<HistoricalEntryDTO> cached )
+    {
+        this.cached = cached;
+    }
+
+    public List<HistoricalEntryDTO> getFailed()
+    {
+        return failed;
+    }
+
+    public void setFailed( final List<HistoricalEntryDTO> failed )
+    {
+        this.failed = failed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ArchiveResultDTO [buildConfigId=%s, downloaded=%d, cached=%d, failed=%d]", buildConfigId,
+                              downloaded.size(), cached.size(), failed.size() );
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.model.dto;
+
+import org.commonjava.indy.service.archive.model.ArchiveJob;
+import org.commonjava.indy.service.archive.model.ArchiveProgress;
+import org.commonjava.indy.service.archive.model.ArchiveStatus;
+
+import java.util.Map;
+
+/**
+ * Status document of an archive generation. The progress fields are null when the service doesn't know them, e.g. for
+ * a job which ran before the last restart.
+ */
+public class ArchiveStatusDTO
+{
+    private String buildConfigId;
+
+    private ArchiveStatus status;
+
+    private Map<ArchiveStatus, Long> transitions;
+
+    private Integer entriesTotal;
+
+    private Integer entriesDone;
+
+    private Integer entriesFailed;
+
+    private Integer entriesSkipped;
+
+    private Integer entriesArchived;
+
+    private Long bytesExpected;
+
+    private Long bytesDone;
+
+    private Long bytesSkipped;
+
+    private Long bytesTransferred;
+
+    private Long throughput;
+
+    private Long eta;
+
+    public ArchiveStatusDTO()
+    {
+    }
+
+    public ArchiveStatusDTO( final ArchiveJob job, final ArchiveProgress progress )
+    {
+        this.buildConfigId = job.getBuildConfigId();
+        this.status = job.getStatus();
+        this.transitions = job.getTransitions();
+        if ( progress != null )
+        {
+            this.entriesTotal = progress.getEntriesTotal();
+            this.entriesDone = progress.getEntriesDone();
+            this.entriesFailed = progress.getEntriesFailed();
+            this.entriesSkipped = progress.getEntriesSkipped();
+            this.entriesArchived = progress.getEntriesArchived();
+            this.bytesExpected = progress.getBytesExpected();
+            this.bytesDone = progress.getBytesDone();
+            this.bytesSkipped = progress.getBytesSkipped();
+            this.bytesTransferred = progress.getBytesTransferred();
+            this.throughput = progress.getThroughput();
+            this.eta = progress.getEta();
+        }
+    }
+
+    public String getBuildConfigId()
+    {
+        return buildConfigId;
+    }
+
+    public void setBuildConfigId( String buildConfigId )
+    {
+        this.buildConfigId = buildConfigId;
+    }
+
+    public ArchiveStatus getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus( ArchiveStatus status )
+    {
+        this.status = status;
+    }
+
+    public Map<ArchiveStatus, Long> getTransitions()
+    {
+        return transitions;
+    }
+
+    public void setTransitions( Map<ArchiveStatus, Long> transitions )
+    {
+        this.transitions = transitions;
+    }
+
+    public Integer getEntriesTotal()
+    {
+        return entriesTotal;
+    }
+
+    public void setEntriesTotal( Integer entriesTotal )
+    {
+        this.entriesTotal = entriesTotal;
+    }
+
+    public Integer getEntriesDone()
+    {
+        return entriesDone;
+    }
+
+    public void setEntriesDone( Integer entriesDone )
+    {
+        this.entriesDone = entriesDone;
+    }
+
+    public Integer getEntriesFailed()
+    {
+        return entriesFailed;
+    }
+
+    public void setEntriesFailed( Integer entriesFailed )
+    {
+        this.entriesFailed = entriesFailed;
+    }
+
+    public Integer getEntriesSkipped()
+    {
+        return entriesSkipped;
+    }
+
+    public void setEntriesSkipped( Integer entriesSkipped )
+    {
+        this.entriesSkipped = entriesSkipped;
+    }
+
+    public Integer getEntriesArchived()
+    {
+        return entriesArchived;
+    }
+
+    public void setEntriesArchived( Integer entriesArchived )
+    {
+        this.entriesArchived = entriesArchived;
+    }
+
+    public Long getBytesExpected()
+    {
+        return bytesExpected;
+    }
+
+    public void setBytesExpected( Long bytesExpected )
+    {
+        this.bytesExpected = bytesExpected;
+    }
+
+    public Long getBytesDone()
+    {
+        return bytesDone;
+    }
+
+    public void setBytesDone( Long bytesDone )
+    {
+        this.bytesDone = bytesDone;
+    }
+
+    /**
+     * @return bytes of the entries taken from the cache or from the previous archive, nothing was transferred for them
+     */
+    public Long getBytesSkipped()
+    {
+        return bytesSkipped;
+    }
+
+    public void setBytesSkipped( Long bytesSkipped )
+    {
+        this.bytesSkipped = bytesSkipped;
+    }
+
+    /**
+     * @return bytes downloaded so far, including the ones of downloads still running
+     */
+    public Long getBytesTransferred()
+    {
+        return bytesTransferred;
+    }
+
+    public void setBytesTransferred( Long bytesTransferred )
+    {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    /**
+     * @return bytes transferred per second since the downloads started
+     */
+    public Long getThroughput()
+    {
+        return throughput;
+    }
+
+    public void setThroughput( Long throughput )
+    {
+        this.throughput = throughput;
+    }
+
+    /**
+     * @return estimated seconds until the downloads are done
+     */
+    public Long getEta()
+    {
+        return eta;
+    }
+
+    public void setEta( Long eta )
+    {
+        this.eta = eta;
+    }
+}
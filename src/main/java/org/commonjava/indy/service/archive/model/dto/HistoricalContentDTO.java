@@ -15,12 +15,24 @@
  */
 package org.commonjava.indy.service.archive.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.File;
+
 public class HistoricalContentDTO
 {
     private String buildConfigId;
 
     private HistoricalEntryDTO[] downloads;
 
+    // tracked content received by the generate endpoint keeps its downloads in this file rather than in memory
+    @JsonIgnore
+    private File spool;
+
+    // canonical fingerprint of the downloads, see ContentFingerprint
+    @JsonIgnore
+    private String fingerprint;
+
     public HistoricalContentDTO()
     {
     }
@@ -48,12 +60,36 @@ public class HistoricalContentDTO
         this.downloads = downloads;
     }
 
+    public File getSpool()
+    {
+        return spool;
+    }
+
+    public void setSpool( final File spool )
+    {
+        this.spool = spool;
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    public void setFingerprint( final String fingerprint )
+    {
+        this.fingerprint = fingerprint;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         String content = String.format( "HistoricalContentDTO [\n  buildConfigId=%s\n]\n", buildConfigId );
         builder.append( content );
-        for ( HistoricalEntryDTO entry : downloads )
+        if ( spool != null )
+        {
+            builder.append( "downloads spooled in " ).append( spool ).append( "\n" );
+        }
+        for ( HistoricalEntryDTO entry : downloads == null ? new HistoricalEntryDTO[0] : downloads )
         {
             builder.append( entry.toString() );
             builder.append( "\n" );
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * File operations on downloaded artifacts shared by the places holding them: the content cache, the transfers in
+ * flight and the content dirs of the generations.
+ */
+public final class ArtifactFiles
+{
+    private ArtifactFiles()
+    {
+    }
+
+    /**
+     * Hard-link the target to the source, or copy it where links are not supported, e.g. across devices.
+     */
+    public static void linkOrCopy( final Path source, final Path target ) throws IOException
+    {
+        try
+        {
+            Files.createLink( target, source );
+        }
+        catch ( final UnsupportedOperationException | IOException e )
+        {
+            // cross-device or file systems without hard link support
+            Files.copy( source, target, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import java.io.IOException;
+
+/**
+ * The downloaded content doesn't match the size or the checksums of the tracked entry.
+ */
+public class ArtifactVerificationException
+                extends IOException
+{
+    public ArtifactVerificationException( final String message )
+    {
+        super( message );
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An inclusive byte range of a file of known length, as requested by a {@code Range: bytes=...} header.
+ */
+public class ByteRange
+{
+    private static final String BYTES_UNIT = "bytes=";
+
+    // more ranges than this aren't a resume or a parallel download, the whole file is sent instead
+    private static final int MAX_RANGES = 64;
+
+    private final long first;
+
+    private final long last;
+
+    public ByteRange( final long first, final long last )
+    {
+        this.first = first;
+        this.last = last;
+    }
+
+    public long getFirst()
+    {
+        return first;
+    }
+
+    public long getLast()
+    {
+        return last;
+    }
+
+    public long getLength()
+    {
+        return last - first + 1;
+    }
+
+    /**
+     * @return the value of the {@code Content-Range} header of this range
+     */
+    public String toContentRange( final long length )
+    {
+        return String.format( "bytes %d-%d/%d", first, last, length );
+    }
+
+    /**
+     * Resolve a {@code Range} header against the length of the file.
+     *
+     * @return empty if the header should be ignored and the whole file sent (no header, an other unit than bytes,
+     * a malformed or overly fragmented range set), otherwise the satisfiable ranges in the requested order, which is
+     * an empty list if none of them are
+     */
+    public static Optional<List<ByteRange>> parse( final String header, final long length )
+    {
+        if ( header == null || !header.trim().startsWith( BYTES_UNIT ) )
+        {
+            return Optional.empty();
+        }
+
+        String[] specs = header.trim().substring( BYTES_UNIT.length() ).split( "," );
+        if ( specs.length > MAX_RANGES )
+        {
+            return Optional.empty();
+        }
+
+        List<ByteRange> ranges = new ArrayList<>( specs.length );
+        for ( String spec : specs )
+        {
+            spec = spec.trim();
+            int dash = spec.indexOf( '-' );
+            if ( dash < 0 )
+            {
+                return Optional.empty();
+            }
+            try
+            {
+                String start = spec.substring( 0, dash ).trim();
+                String end = spec.substring( dash + 1 ).trim();
+                if ( start.isEmpty() )
+                {
+                    // suffix range, the last N bytes
+                    long suffix = Long.parseLong( end );
+                    if ( suffix < 0 )
+                    {
+                        return Optional.empty();
+                    }
+                    if ( suffix > 0 && length > 0 )
+                    {
+                        ranges.add( new ByteRange( Math.max( 0, length - suffix ), length - 1 ) );
+                    }
+                    continue;
+                }
+
+                long first = Long.parseLong( start );
+                long last = end.isEmpty() ? length - 1 : Long.parseLong( end );
+                if ( first < 0 || last < first )
+                {
+                    return Optional.empty();
+                }
+                if ( first < length )
+                {
+                    ranges.add( new ByteRange( first, Math.min( last, length - 1 ) ) );
+                }
+            }
+            catch ( final NumberFormatException e )
+            {
+                return Optional.empty();
+            }
+        }
+        return Optional.of( Collections.unmodifiableList( ranges ) );
+    }
+
+    @Override
+    public boolean equals( final Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( !( o instanceof ByteRange ) )
+        {
+            return false;
+        }
+        ByteRange that = (ByteRange) o;
+        return first == that.first && last == that.last;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode( first ) * 31 + Long.hashCode( last );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ByteRange [%d-%d]", first, last );
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Checks the content of a download against the size and the checksums of its tracked entry while it's written, so
+ * nothing has to be read again once the transfer is done. Only the checksums the entry knows are computed, and a
+ * transfer is rejected as soon as it goes past the expected size.
+ */
+public class ChecksumVerifier
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final HistoricalEntryDTO entry;
+
+    // digest -> expected hex value
+    private final Map<MessageDigest, String> digests = new LinkedHashMap<>();
+
+    private long count;
+
+    public ChecksumVerifier( final HistoricalEntryDTO entry )
+    {
+        this.entry = entry;
+        addDigest( "MD5", entry.getMd5() );
+        addDigest( "SHA-1", entry.getSha1() );
+        addDigest( "SHA-256", entry.getSha256() );
+    }
+
+    private void addDigest( final String algorithm, final String expected )
+    {
+        if ( expected == null || expected.trim().isEmpty() )
+        {
+            return;
+        }
+        try
+        {
+            digests.put( MessageDigest.getInstance( algorithm ), expected.trim().toLowerCase() );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( algorithm + " is not supported by the JVM", e );
+        }
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Reject a response up front when its announced length can't make up the expected size.
+     *
+     * @param contentLength length of the response body, negative if unknown
+     * @param offset number of bytes already downloaded by a previous transfer
+     */
+    public void checkContentLength( final long contentLength, final long offset ) throws ArtifactVerificationException
+    {
+        Long size = entry.getSize();
+        if ( size != null && contentLength >= 0 && offset + contentLength != size )
+        {
+            throw new ArtifactVerificationException(
+                            String.format( "Content-Length %s from byte %s doesn't match size %s of path: %s",
+                                           contentLength, offset, size, entry.getPath() ) );
+        }
+    }
+
+    /**
+     * Digest the content already downloaded by an interrupted transfer which is about to be resumed.
+     */
+    public void updatePartial( final InputStream partial ) throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ( ( length = partial.read( buffer ) ) > 0 )
+        {
+            update( buffer, 0, length );
+        }
+    }
+
+    public void update( final byte[] bytes, final int offset, final int length ) throws ArtifactVerificationException
+    {
+        count( length );
+        for ( MessageDigest digest : digests.keySet() )
+        {
+            digest.update( bytes, offset, length );
+        }
+    }
+
+    public void update( final ByteBuffer bytes ) throws ArtifactVerificationException
+    {
+        count( bytes.remaining() );
+        for ( MessageDigest digest : digests.keySet() )
+        {
+            digest.update( bytes.duplicate() );
+        }
+    }
+
+    private void count( final int length ) throws ArtifactVerificationException
+    {
+        count += length;
+        Long size = entry.getSize();
+        if ( size != null && count > size )
+        {
+            throw new ArtifactVerificationException(
+                            String.format( "Got more than the expected %s bytes of path: %s", size,
+                                           entry.getPath() ) );
+        }
+    }
+
+    /**
+     * @throws ArtifactVerificationException if the content is shorter than expected or any checksum differs
+     */
+    public void verify() throws ArtifactVerificationException
+    {
+        Long size = entry.getSize();
+        if ( size != null && count != size )
+        {
+            throw new ArtifactVerificationException(
+                            String.format( "Got %s of the expected %s bytes of path: %s", count, size,
+                                           entry.getPath() ) );
+        }
+        for ( Map.Entry<MessageDigest, String> digest : digests.entrySet() )
+        {
+            String actual = Hex.encodeHexString( digest.getKey().digest() );
+            if ( !actual.equals( digest.getValue() ) )
+            {
+                throw new ArtifactVerificationException(
+                                String.format( "%s %s doesn't match the expected %s of path: %s",
+                                               digest.getKey().getAlgorithm(), actual, digest.getValue(),
+                                               entry.getPath() ) );
+            }
+        }
+    }
+
+    /**
+     * @return a stream which digests everything written through it to the given one
+     */
+    public OutputStream wrap( final OutputStream out )
+    {
+        return new FilterOutputStream( out )
+        {
+            @Override
+            public void write( final int b ) throws IOException
+            {
+                write( new byte[] { (byte) b }, 0, 1 );
+            }
+
+            @Override
+            public void write( final byte[] bytes, final int offset, final int length ) throws IOException
+            {
+                update( bytes, offset, length );
+                out.write( bytes, offset, length );
+            }
+        };
+    }
+}
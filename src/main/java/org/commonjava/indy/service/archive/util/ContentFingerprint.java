@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Canonical fingerprint of the downloads of a tracked content: the sha256 of the sorted digests of their store key, path
+ * and checksums. It doesn't depend on the order of the downloads, on duplicates, or on the fields which don't change
+ * what's archived (urls, size), so the same tracked content posted again has the same fingerprint.
+ */
+public class ContentFingerprint
+{
+    private final Set<String> entries = new TreeSet<>();
+
+    public ContentFingerprint add( final HistoricalEntryDTO entry )
+    {
+        entries.add( of( entry ) );
+        return this;
+    }
+
+    public String digest()
+    {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        for ( String entry : entries )
+        {
+            digest.update( entry.getBytes( StandardCharsets.US_ASCII ) );
+        }
+        return Hex.encodeHexString( digest.digest() );
+    }
+
+    public static String of( final HistoricalEntryDTO[] downloads )
+    {
+        ContentFingerprint fingerprint = new ContentFingerprint();
+        if ( downloads != null )
+        {
+            for ( HistoricalEntryDTO download : downloads )
+            {
+                fingerprint.add( download );
+            }
+        }
+        return fingerprint.digest();
+    }
+
+    /**
+     * @return the fingerprint of a single download, equal for downloads of the same artifact
+     */
+    public static String of( final HistoricalEntryDTO entry )
+    {
+        String canonical = String.join( "\n", String.valueOf( entry.getStoreKey() ), entry.getPath(),
+                                        normalize( entry.getMd5() ), normalize( entry.getSha1() ),
+                                        normalize( entry.getSha256() ) );
+        return DigestUtils.sha256Hex( canonical );
+    }
+
+    private static String normalize( final String checksum )
+    {
+        return checksum == null ? "" : checksum.trim().toLowerCase( Locale.ROOT );
+    }
+}
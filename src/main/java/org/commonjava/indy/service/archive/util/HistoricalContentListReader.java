@@ -15,12 +15,27 @@
  */
 package org.commonjava.indy.service.archive.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import org.commonjava.indy.service.archive.config.PreSeedConfig;
 import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
 import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,9 +46,16 @@ public class HistoricalContentListReader
 {
     private final String CONTENT_REST_BASE_PATH = "/api/content";
 
+    private final String DOWNLOADS = "downloads";
+
+    private final String BUILD_CONFIG_ID = "buildConfigId";
+
     @Inject
     PreSeedConfig preSeedConfig;
 
+    @Inject
+    ObjectMapper objectMapper;
+
     public HistoricalContentListReader()
     {
     }
@@ -43,44 +65,158 @@ public class HistoricalContentListReader
         this.preSeedConfig = preSeedConfig;
     }
 
-    public Map<String, String> readPaths( HistoricalContentDTO content  )
+    public HistoricalContentListReader( PreSeedConfig preSeedConfig, ObjectMapper objectMapper )
     {
-        Map<String, String> pathMap = new HashMap<>();
-        HistoricalEntryDTO[] downloads = content.getDownloads();
+        this.preSeedConfig = preSeedConfig;
+        this.objectMapper = objectMapper;
+    }
 
-        if ( downloads != null )
+    /**
+     * Parse the tracked content one download at a time as it's read, writing the downloads to the spool file rather
+     * than keeping them, so the memory it takes doesn't grow with the number of downloads. The spool file holds the
+     * tracked content again, with its buildConfigId after the downloads since it may come last in the request. The
+     * fingerprint of the downloads is computed on the way.
+     *
+     * @return the tracked content with its downloads left in the spool file, or null if the input is empty or null
+     */
+    public HistoricalContentDTO spool( final InputStream in, final File spool ) throws IOException
+    {
+        final ObjectReader entryReader = objectMapper.readerFor( HistoricalEntryDTO.class );
+        // the spool is flushed once it's complete, not after each download
+        final ObjectWriter entryWriter = objectMapper.writerFor( HistoricalEntryDTO.class )
+                                                     .without( SerializationFeature.FLUSH_AFTER_WRITE_VALUE );
+        final ContentFingerprint fingerprint = new ContentFingerprint();
+        String buildConfigId = null;
+        spool.getParentFile().mkdirs();
+        try (JsonParser parser = objectMapper.getFactory().createParser( in );
+             OutputStream out = new BufferedOutputStream( Files.newOutputStream( spool.toPath() ) );
+             JsonGenerator generator = objectMapper.getFactory().createGenerator( out ))
         {
-            for ( HistoricalEntryDTO download : downloads )
+            JsonToken token = parser.nextToken();
+            if ( token == null || token == JsonToken.VALUE_NULL )
             {
-                String path = download.getPath();
-                String packageType = download.getStoreKey().getPackageType();
+                return null;
+            }
+            if ( token != JsonToken.START_OBJECT )
+            {
+                throw MismatchedInputException.from( parser, HistoricalContentDTO.class,
+                                                     "Tracked content is not a JSON object" );
+            }
 
-                if ( packageType.equals( NPM_PKG_KEY ) && !path.endsWith( ".tgz" ) )
+            generator.writeStartObject();
+            generator.writeArrayFieldStart( DOWNLOADS );
+            while ( parser.nextToken() == JsonToken.FIELD_NAME )
+            {
+                String field = parser.getCurrentName();
+                token = parser.nextToken();
+                if ( BUILD_CONFIG_ID.equals( field ) )
                 {
-                    // Ignore the npm package metadata in archive
-                    continue;
+                    buildConfigId = parser.getValueAsString();
                 }
-                if ( path.contains( "maven-metadata.xml" ) )
+                else if ( DOWNLOADS.equals( field ) && token == JsonToken.START_ARRAY )
                 {
-                    // Ignore maven-metadata.xml in archive
-                    continue;
+                    while ( parser.nextToken() != JsonToken.END_ARRAY )
+                    {
+                        HistoricalEntryDTO entry = entryReader.readValue( parser );
+                        fingerprint.add( entry );
+                        entryWriter.writeValue( generator, entry );
+                    }
                 }
-                // ensure every entry has an available localUrl
-                buildDownloadUrl( download );
-
-                // local url would be preferred to download artifact
-                String url = download.getLocalUrl();
-                if ( url == null )
+                else
                 {
-                    url = download.getOriginUrl();
+                    // unknown fields are ignored, as they are by the DTO
+                    parser.skipChildren();
                 }
-                if ( url != null )
+            }
+            generator.writeEndArray();
+            generator.writeStringField( BUILD_CONFIG_ID, buildConfigId );
+            generator.writeEndObject();
+        }
+
+        HistoricalContentDTO content = new HistoricalContentDTO( buildConfigId, null );
+        content.setSpool( spool );
+        content.setFingerprint( fingerprint.digest() );
+        return content;
+    }
+
+    public Map<String, String> readPaths( HistoricalContentDTO content  )
+    {
+        Map<String, String> pathMap = new HashMap<>();
+        readEntries( content ).forEach( ( url, download ) -> pathMap.put( url, download.getPath() ) );
+        return pathMap;
+    }
+
+    public Map<String, HistoricalEntryDTO> readEntries( HistoricalContentDTO content )
+    {
+        Map<String, HistoricalEntryDTO> entryMap = new HashMap<>();
+        HistoricalEntryDTO[] downloads = content.getDownloads();
+
+        if ( downloads != null )
+        {
+            for ( HistoricalEntryDTO download : downloads )
+            {
+                addEntry( entryMap, download );
+            }
+        }
+        return entryMap;
+    }
+
+    /**
+     * Read the downloads of tracked content spooled by {@link #spool(InputStream, File)}, one at a time. The map
+     * still holds every download of the job, the spool only keeps queued jobs from holding theirs: a running job
+     * takes heap in proportion to its downloads, as the download stage dedupes, totals and diffs them up front.
+     */
+    public Map<String, HistoricalEntryDTO> readEntries( File spool ) throws IOException
+    {
+        Map<String, HistoricalEntryDTO> entryMap = new HashMap<>();
+        final ObjectReader entryReader = objectMapper.readerFor( HistoricalEntryDTO.class );
+        try (JsonParser parser = objectMapper.getFactory()
+                                             .createParser( new BufferedInputStream( Files.newInputStream(
+                                                             spool.toPath() ) ) ))
+        {
+            while ( parser.nextToken() != null )
+            {
+                if ( parser.currentToken() == JsonToken.FIELD_NAME && DOWNLOADS.equals( parser.getCurrentName() )
+                                && parser.nextToken() == JsonToken.START_ARRAY )
                 {
-                    pathMap.put( url, download.getPath() );
+                    while ( parser.nextToken() != JsonToken.END_ARRAY )
+                    {
+                        addEntry( entryMap, entryReader.readValue( parser ) );
+                    }
                 }
             }
         }
-        return pathMap;
+        return entryMap;
+    }
+
+    private void addEntry( final Map<String, HistoricalEntryDTO> entryMap, final HistoricalEntryDTO download )
+    {
+        String path = download.getPath();
+        String packageType = download.getStoreKey().getPackageType();
+
+        if ( packageType.equals( NPM_PKG_KEY ) && !path.endsWith( ".tgz" ) )
+        {
+            // Ignore the npm package metadata in archive
+            return;
+        }
+        if ( path.contains( "maven-metadata.xml" ) )
+        {
+            // Ignore maven-metadata.xml in archive
+            return;
+        }
+        // ensure every entry has an available localUrl
+        buildDownloadUrl( download );
+
+        // local url would be preferred to download artifact
+        String url = download.getLocalUrl();
+        if ( url == null )
+        {
+            url = download.getOriginUrl();
+        }
+        if ( url != null )
+        {
+            entryMap.put( url, download );
+        }
     }
 
     private void buildDownloadUrl ( HistoricalEntryDTO download )
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the items of a stream as a JSON array one by one, nothing but the current item is held in memory.
+ */
+public class JsonArrayStreamingOutput
+        implements StreamingOutput
+{
+    private final ObjectMapper objectMapper;
+
+    private final Stream<?> items;
+
+    public JsonArrayStreamingOutput( ObjectMapper objectMapper, Stream<?> items )
+    {
+        this.objectMapper = objectMapper;
+        this.items = items;
+    }
+
+    @Override
+    public void write( OutputStream out ) throws IOException, WebApplicationException
+    {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator( out ))
+        {
+            generator.writeStartArray();
+            Iterator<?> iterator = items.iterator();
+            while ( iterator.hasNext() )
+            {
+                generator.writeObject( iterator.next() );
+            }
+            generator.writeEndArray();
+        }
+        finally
+        {
+            items.close();
+        }
+    }
+}
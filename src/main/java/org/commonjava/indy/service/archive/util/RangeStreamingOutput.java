@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes byte ranges of a file, a single range as it is, several ranges as a {@code multipart/byteranges} body. The
+ * length of the body is known up front so it can be announced with {@code Content-Length}. The file is read from the
+ * channel opened when it was looked up, which is closed once the body is written.
+ */
+public class RangeStreamingOutput
+        implements StreamingOutput
+{
+    private static final String CRLF = "\r\n";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FileChannel channel;
+
+    private final long length;
+
+    private final List<ByteRange> ranges;
+
+    private final String partType;
+
+    private final String boundary;
+
+    public RangeStreamingOutput( final FileChannel channel, final long length, final List<ByteRange> ranges,
+                                 final String partType )
+    {
+        this.channel = channel;
+        this.length = length;
+        this.ranges = ranges;
+        this.partType = partType;
+        this.boundary = UUID.randomUUID().toString().replace( "-", "" );
+    }
+
+    public boolean isMultipart()
+    {
+        return ranges.size() > 1;
+    }
+
+    /**
+     * @return the content type of the body, the type of the parts for a single range
+     */
+    public String getContentType()
+    {
+        return isMultipart() ? "multipart/byteranges; boundary=" + boundary : partType;
+    }
+
+    public long getContentLength()
+    {
+        long total = 0;
+        for ( ByteRange range : ranges )
+        {
+            if ( isMultipart() )
+            {
+                total += partHeader( range ).length;
+            }
+            total += range.getLength();
+        }
+        if ( isMultipart() )
+        {
+            total += closeDelimiter().length;
+        }
+        return total;
+    }
+
+    @Override
+    public void write( final OutputStream out ) throws IOException, WebApplicationException
+    {
+        ByteBuffer buf = ByteBuffer.allocate( BUFFER_SIZE );
+        long written = 0;
+        try (FileChannel in = channel)
+        {
+            for ( ByteRange range : ranges )
+            {
+                if ( isMultipart() )
+                {
+                    out.write( partHeader( range ) );
+                }
+                long position = range.getFirst();
+                long remaining = range.getLength();
+                while ( remaining > 0 )
+                {
+                    buf.clear().limit( (int) Math.min( buf.capacity(), remaining ) );
+                    int read = in.read( buf, position );
+                    if ( read < 0 )
+                    {
+                        throw new IOException( "Archive was truncated while it was served" );
+                    }
+                    out.write( buf.array(), 0, read );
+                    position += read;
+                    remaining -= read;
+                    written += read;
+                }
+            }
+            if ( isMultipart() )
+            {
+                out.write( closeDelimiter() );
+            }
+        }
+        logger.trace( "Wrote: {} bytes in {} ranges", written, ranges.size() );
+    }
+
+    private byte[] partHeader( final ByteRange range )
+    {
+        String header = CRLF + "--" + boundary + CRLF + "Content-Type: " + partType + CRLF + "Content-Range: "
+                        + range.toContentRange( length ) + CRLF + CRLF;
+        return header.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    private byte[] closeDelimiter()
+    {
+        return ( CRLF + "--" + boundary + "--" + CRLF ).getBytes( StandardCharsets.US_ASCII );
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive of entries whose content is already compressed (or stored) with known crc and sizes, which
+ * {@link java.util.zip.ZipOutputStream} can't take. This is what lets entries be deflated concurrently and only be
+ * copied into the archive in order. No data descriptors are needed since sizes are known up front; zip64 records are
+ * written only for the entries, offsets and counts which need them.
+ */
+public class ZipArchiveWriter
+        implements Closeable
+{
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    private static final int CEN_SIGNATURE = 0x02014b50;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int VERSION = 20;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    // names are UTF-8
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CountingOutputStream out;
+
+    private final List<ArchiveEntry> entries = new ArrayList<>();
+
+    private final Set<String> names = new HashSet<>();
+
+    private final int dosTime;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private boolean closed;
+
+    public ZipArchiveWriter( final OutputStream out )
+    {
+        this.out = new CountingOutputStream( out );
+        this.dosTime = toDosTime( LocalDateTime.now() );
+    }
+
+    /**
+     * Start a copy of the archive which more entries can be added to: the local headers and data of its entries are
+     * copied to the stream as they are, nothing is inflated or deflated again, and the central directory written on
+     * close lists them along with the entries added afterwards. The flags and times of the copied entries are kept in
+     * the central directory, so it agrees with their local headers.
+     */
+    public static ZipArchiveWriter append( final File archive, final OutputStream out ) throws IOException
+    {
+        final ZipArchiveWriter writer = new ZipArchiveWriter( out );
+        ZipCentralDirectory.read( archive, entry -> {
+            writer.entries.add( entry );
+            writer.names.add( entry.getName() );
+        } );
+        final long directoryOffset = ZipCentralDirectory.directoryOffset( archive );
+        try (InputStream in = Files.newInputStream( archive.toPath() ))
+        {
+            IOUtils.copyLarge( in, writer.out, 0, directoryOffset, writer.buffer );
+        }
+        return writer;
+    }
+
+    /**
+     * @return true if the archive has an entry with this name already
+     */
+    public boolean contains( final String name )
+    {
+        return names.contains( name );
+    }
+
+    /**
+     * Add an entry, copying its content as it is.
+     *
+     * @param method {@link java.util.zip.ZipEntry#STORED} or {@link java.util.zip.ZipEntry#DEFLATED} (raw deflate,
+     * no zlib wrapper)
+     * @param content exactly compressedSize bytes of stored or deflated content
+     */
+    public void putRawEntry( final String name, final int method, final long crc, final long compressedSize,
+                             final long size, final InputStream content ) throws IOException
+    {
+        final long offset = out.getByteCount();
+        final byte[] nameBytes = name.getBytes( StandardCharsets.UTF_8 );
+        final boolean zip64 = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+
+        ByteBuffer header = buffer( 30 + nameBytes.length + ( zip64 ? 20 : 0 ) );
+        header.putInt( LOC_SIGNATURE )
+              .putShort( (short) ( zip64 ? VERSION_ZIP64 : VERSION ) )
+              .putShort( (short) FLAG_UTF8 )
+              .putShort( (short) method )
+              .putInt( dosTime )
+              .putInt( (int) crc )
+              .putInt( (int) ( zip64 ? ZIP64_MAGIC : compressedSize ) )
+              .putInt( (int) ( zip64 ? ZIP64_MAGIC : size ) )
+              .putShort( (short) nameBytes.length )
+              .putShort( (short) ( zip64 ? 20 : 0 ) )
+              .put( nameBytes );
+        if ( zip64 )
+        {
+            header.putShort( (short) ZIP64_EXTRA_ID ).putShort( (short) 16 ).putLong( size ).putLong( compressedSize );
+        }
+        out.write( header.array() );
+
+        long copied = IOUtils.copyLarge( content, out, buffer );
+        if ( copied != compressedSize )
+        {
+            throw new ZipException( String.format( "Entry %s has %d bytes of content, %d expected", name, copied,
+                                                   compressedSize ) );
+        }
+        entries.add( new ArchiveEntry( name, method, crc, compressedSize, size, offset, FLAG_UTF8, dosTime ) );
+        names.add( name );
+    }
+
+    /**
+     * Add an entry of another archive, copying its stored or deflated content as it is: nothing is inflated or deflated
+     * again.
+     *
+     * @param source the other archive, read from the data of the entry on
+     */
+    public void copyEntry( final FileChannel source, final ArchiveEntry entry ) throws IOException
+    {
+        source.position( ZipCentralDirectory.dataOffset( source, entry ) );
+        // not closed, that would close the channel
+        InputStream content = new BoundedInputStream( Channels.newInputStream( source ), entry.getCompressedSize() );
+        putRawEntry( entry.getName(), entry.getMethod(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(),
+                     content );
+    }
+
+    /**
+     * Write the central directory and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            final long directoryOffset = out.getByteCount();
+            for ( ArchiveEntry entry : entries )
+            {
+                writeCentralHeader( entry );
+            }
+            final long directorySize = out.getByteCount() - directoryOffset;
+            writeEnd( directoryOffset, directorySize );
+            out.flush();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void writeCentralHeader( final ArchiveEntry entry ) throws IOException
+    {
+        final byte[] nameBytes = entry.getName().getBytes( StandardCharsets.UTF_8 );
+        final boolean bigSize = entry.getSize() >= ZIP64_MAGIC;
+        final boolean bigCompressedSize = entry.getCompressedSize() >= ZIP64_MAGIC;
+        final boolean bigOffset = entry.getHeaderOffset() >= ZIP64_MAGIC;
+        final int extraSize = ( bigSize ? 8 : 0 ) + ( bigCompressedSize ? 8 : 0 ) + ( bigOffset ? 8 : 0 );
+        final boolean zip64 = extraSize > 0;
+
+        ByteBuffer header = buffer( 46 + nameBytes.length + ( zip64 ? 4 + extraSize : 0 ) );
+        header.putInt( CEN_SIGNATURE )
+              .putShort( (short) ( zip64 ? VERSION_ZIP64 : VERSION ) )
+              .putShort( (short) ( zip64 ? VERSION_ZIP64 : VERSION ) )
+              .putShort( (short) entry.getFlags() )
+              .putShort( (short) entry.getMethod() )
+              .putInt( entry.getDosTime() )
+              .putInt( (int) entry.getCrc() )
+              .putInt( (int) ( bigCompressedSize ? ZIP64_MAGIC : entry.getCompressedSize() ) )
+              .putInt( (int) ( bigSize ? ZIP64_MAGIC : entry.getSize() ) )
+              .putShort( (short) nameBytes.length )
+              .putShort( (short) ( zip64 ? 4 + extraSize : 0 ) )
+              .putShort( (short) 0 ) // comment
+              .putShort( (short) 0 ) // disk
+              .putShort( (short) 0 ) // internal attributes
+              .putInt( 0 ) // external attributes
+              .putInt( (int) ( bigOffset ? ZIP64_MAGIC : entry.getHeaderOffset() ) )
+              .put( nameBytes );
+        if ( zip64 )
+        {
+            header.putShort( (short) ZIP64_EXTRA_ID ).putShort( (short) extraSize );
+            if ( bigSize )
+            {
+                header.putLong( entry.getSize() );
+            }
+            if ( bigCompressedSize )
+            {
+                header.putLong( entry.getCompressedSize() );
+            }
+            if ( bigOffset )
+            {
+                header.putLong( entry.getHeaderOffset() );
+            }
+        }
+        out.write( header.array() );
+    }
+
+    private void writeEnd( final long directoryOffset, final long directorySize ) throws IOException
+    {
+        final long count = entries.size();
+        final boolean zip64 =
+                        count >= ZIP64_MAGIC_COUNT || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC;
+        if ( zip64 )
+        {
+            final long zip64Offset = out.getByteCount();
+            ByteBuffer record = buffer( 56 + 20 );
+            record.putInt( ZIP64_EOCD_SIGNATURE )
+                  .putLong( 44 ) // size of the rest of the record
+                  .putShort( (short) VERSION_ZIP64 )
+                  .putShort( (short) VERSION_ZIP64 )
+                  .putInt( 0 ) // disk
+                  .putInt( 0 ) // directory disk
+                  .putLong( count )
+                  .putLong( count )
+                  .putLong( directorySize )
+                  .putLong( directoryOffset );
+            record.putInt( ZIP64_LOCATOR_SIGNATURE ).putInt( 0 ).putLong( zip64Offset ).putInt( 1 );
+            out.write( record.array() );
+        }
+
+        ByteBuffer end = buffer( 22 );
+        end.putInt( EOCD_SIGNATURE )
+           .putShort( (short) 0 )
+           .putShort( (short) 0 )
+           .putShort( (short) ( zip64 ? ZIP64_MAGIC_COUNT : count ) )
+           .putShort( (short) ( zip64 ? ZIP64_MAGIC_COUNT : count ) )
+           .putInt( (int) ( zip64 ? ZIP64_MAGIC : directorySize ) )
+           .putInt( (int) ( zip64 ? ZIP64_MAGIC : directoryOffset ) )
+           .putShort( (short) 0 );
+        out.write( end.array() );
+    }
+
+    private static ByteBuffer buffer( final int size )
+    {
+        return ByteBuffer.allocate( size ).order( ByteOrder.LITTLE_ENDIAN );
+    }
+
+    private static int toDosTime( final LocalDateTime time )
+    {
+        if ( time.getYear() < 1980 )
+        {
+            return ( 1 << 21 ) | ( 1 << 16 );
+        }
+        return ( time.getYear() - 1980 ) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                        | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+}
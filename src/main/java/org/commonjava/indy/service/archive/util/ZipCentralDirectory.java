@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory at the end of a zip archive one entry at a time, so neither the archive nor its whole
+ * directory is loaded to find out what it contains and where. Zip64 archives (more than 65535 entries or 4G) are
+ * supported, multi-disk archives are not.
+ */
+public final class ZipCentralDirectory
+{
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    private static final int EOCD_SIZE = 22;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_EOCD_SIZE = 56;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int CEN_SIGNATURE = 0x02014b50;
+
+    private static final int CEN_SIZE = 46;
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    private static final int LOC_SIZE = 30;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ZipCentralDirectory()
+    {
+    }
+
+    public interface EntryVisitor
+    {
+        void visit( ArchiveEntry entry ) throws IOException;
+    }
+
+    /**
+     * Hand every entry of the central directory to the visitor, in the order they are stored.
+     *
+     * @return the number of entries
+     */
+    public static long read( final File archive, final EntryVisitor visitor ) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open( archive.toPath(), StandardOpenOption.READ ))
+        {
+            return read( channel, archive, visitor );
+        }
+    }
+
+    /**
+     * Like {@link #read(File, EntryVisitor)}, from a channel already open on the archive. The channel is left open,
+     * its position is moved.
+     */
+    public static long read( final FileChannel channel, final File archive, final EntryVisitor visitor )
+                    throws IOException
+    {
+        final long[] directory = locate( channel, archive );
+        final long total = directory[0];
+        final long offset = directory[1];
+
+        InputStream in = new BufferedInputStream( Channels.newInputStream( channel.position( offset ) ),
+                                                  BUFFER_SIZE );
+        byte[] fixed = new byte[CEN_SIZE];
+        ByteBuffer header = ByteBuffer.wrap( fixed ).order( ByteOrder.LITTLE_ENDIAN );
+        for ( long i = 0; i < total; i++ )
+        {
+            IOUtils.readFully( in, fixed );
+            if ( header.getInt( 0 ) != CEN_SIGNATURE )
+            {
+                throw new ZipException( "Invalid central directory header #" + i + " in " + archive );
+            }
+            int flags = header.getShort( 8 ) & 0xFFFF;
+            int method = header.getShort( 10 ) & 0xFFFF;
+            int dosTime = header.getInt( 12 );
+            long crc = header.getInt( 16 ) & ZIP64_MAGIC;
+            long compressedSize = header.getInt( 20 ) & ZIP64_MAGIC;
+            long size = header.getInt( 24 ) & ZIP64_MAGIC;
+            int nameLength = header.getShort( 28 ) & 0xFFFF;
+            int extraLength = header.getShort( 30 ) & 0xFFFF;
+            int commentLength = header.getShort( 32 ) & 0xFFFF;
+            long headerOffset = header.getInt( 42 ) & ZIP64_MAGIC;
+
+            byte[] name = new byte[nameLength];
+            IOUtils.readFully( in, name );
+            byte[] extra = new byte[extraLength];
+            IOUtils.readFully( in, extra );
+            IOUtils.skipFully( in, commentLength );
+
+            if ( size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || headerOffset == ZIP64_MAGIC )
+            {
+                // the zip64 extra field only has the values which overflowed, in this order
+                ByteBuffer zip64 = zip64Extra( extra, archive );
+                if ( size == ZIP64_MAGIC )
+                {
+                    size = zip64.getLong();
+                }
+                if ( compressedSize == ZIP64_MAGIC )
+                {
+                    compressedSize = zip64.getLong();
+                }
+                if ( headerOffset == ZIP64_MAGIC )
+                {
+                    headerOffset = zip64.getLong();
+                }
+            }
+            // ZipOutputStream writes UTF-8 names
+            visitor.visit( new ArchiveEntry( new String( name, StandardCharsets.UTF_8 ), method, crc,
+                                             compressedSize, size, headerOffset, flags, dosTime ) );
+        }
+        return total;
+    }
+
+    /**
+     * @return the position of the central directory, which is where the data of the last entry ends
+     */
+    public static long directoryOffset( final File archive ) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open( archive.toPath(), StandardOpenOption.READ ))
+        {
+            return locate( channel, archive )[1];
+        }
+    }
+
+    /**
+     * @return the position of the first byte of the entry data, right after its local file header
+     */
+    public static long dataOffset( final FileChannel channel, final ArchiveEntry entry ) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate( LOC_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+        readFully( channel, header, entry.getHeaderOffset() );
+        if ( header.getInt( 0 ) != LOC_SIGNATURE )
+        {
+            throw new ZipException( "Invalid local header of entry " + entry.getName() );
+        }
+        int nameLength = header.getShort( 26 ) & 0xFFFF;
+        int extraLength = header.getShort( 28 ) & 0xFFFF;
+        return entry.getHeaderOffset() + LOC_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * @return the number of entries and the offset of the central directory
+     */
+    private static long[] locate( final FileChannel channel, final File archive ) throws IOException
+    {
+        final long length = channel.size();
+        if ( length < EOCD_SIZE )
+        {
+            throw new ZipException( "Not a zip archive: " + archive );
+        }
+
+        // the end of central directory record is followed by a comment of up to 64K, and preceded by the zip64 locator
+        int tailSize = (int) Math.min( length, EOCD_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE );
+        ByteBuffer tail = ByteBuffer.allocate( tailSize ).order( ByteOrder.LITTLE_ENDIAN );
+        readFully( channel, tail, length - tailSize );
+
+        int eocd = -1;
+        for ( int pos = tailSize - EOCD_SIZE; pos >= 0; pos-- )
+        {
+            if ( tail.getInt( pos ) == EOCD_SIGNATURE
+                            && pos + EOCD_SIZE + ( tail.getShort( pos + 20 ) & 0xFFFF ) == tailSize )
+            {
+                eocd = pos;
+                break;
+            }
+        }
+        if ( eocd < 0 )
+        {
+            throw new ZipException( "No end of central directory in " + archive );
+        }
+
+        long total = tail.getShort( eocd + 10 ) & 0xFFFF;
+        long offset = tail.getInt( eocd + 16 ) & ZIP64_MAGIC;
+        if ( eocd >= ZIP64_LOCATOR_SIZE && tail.getInt( eocd - ZIP64_LOCATOR_SIZE ) == ZIP64_LOCATOR_SIGNATURE )
+        {
+            long zip64Offset = tail.getLong( eocd - ZIP64_LOCATOR_SIZE + 8 );
+            ByteBuffer zip64 = ByteBuffer.allocate( ZIP64_EOCD_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+            readFully( channel, zip64, zip64Offset );
+            if ( zip64.getInt( 0 ) != ZIP64_EOCD_SIGNATURE )
+            {
+                throw new ZipException( "Invalid zip64 end of central directory in " + archive );
+            }
+            total = zip64.getLong( 32 );
+            offset = zip64.getLong( 48 );
+        }
+
+        return new long[] { total, offset };
+    }
+
+    private static ByteBuffer zip64Extra( final byte[] extra, final File archive ) throws ZipException
+    {
+        ByteBuffer fields = ByteBuffer.wrap( extra ).order( ByteOrder.LITTLE_ENDIAN );
+        while ( fields.remaining() >= 4 )
+        {
+            int id = fields.getShort() & 0xFFFF;
+            int size = fields.getShort() & 0xFFFF;
+            if ( id == ZIP64_EXTRA_ID )
+            {
+                ByteBuffer zip64 = fields.slice().order( ByteOrder.LITTLE_ENDIAN );
+                zip64.limit( Math.min( size, zip64.remaining() ) );
+                return zip64;
+            }
+            fields.position( Math.min( fields.limit(), fields.position() + size ) );
+        }
+        throw new ZipException( "Missing zip64 extra field in " + archive );
+    }
+
+    private static void readFully( final FileChannel channel, final ByteBuffer buffer, final long position )
+                    throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+            {
+                throw new EOFException( "Unexpected end of zip archive at " + ( position + buffer.position() ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes the content of one entry of a zip archive, read straight from its offset in the archive. Stored entries are
+ * copied as they are, deflated ones are inflated on the way. The archive is read from the channel its entry was looked
+ * up with, which is closed once the body is written.
+ */
+public class ZipEntryStreamingOutput
+        implements StreamingOutput
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FileChannel channel;
+
+    private final ArchiveEntry entry;
+
+    public ZipEntryStreamingOutput( final FileChannel channel, final ArchiveEntry entry )
+    {
+        this.channel = channel;
+        this.entry = entry;
+    }
+
+    @Override
+    public void write( final OutputStream out ) throws IOException, WebApplicationException
+    {
+        try (FileChannel in = channel)
+        {
+            in.position( ZipCentralDirectory.dataOffset( in, entry ) );
+            InputStream raw = new BoundedInputStream( Channels.newInputStream( in ), entry.getCompressedSize() );
+            long written;
+            if ( entry.isStored() )
+            {
+                written = IOUtils.copyLarge( raw, out, new byte[BUFFER_SIZE] );
+            }
+            else if ( entry.getMethod() == ZipEntry.DEFLATED )
+            {
+                // a raw inflater may need one byte past the deflated data to notice its end
+                InputStream padded = new SequenceInputStream( raw, new ByteArrayInputStream( new byte[1] ) );
+                Inflater inflater = new Inflater( true );
+                try
+                {
+                    written = IOUtils.copyLarge( new InflaterInputStream( padded, inflater, BUFFER_SIZE ), out,
+                                                 new byte[BUFFER_SIZE] );
+                }
+                finally
+                {
+                    inflater.end();
+                }
+            }
+            else
+            {
+                throw new ZipException(
+                                "Unsupported compression method " + entry.getMethod() + " of entry " + entry.getName() );
+            }
+            logger.trace( "Wrote: {} bytes of {}", written, entry.getName() );
+        }
+    }
+}
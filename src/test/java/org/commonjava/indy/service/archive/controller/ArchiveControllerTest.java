@@ -0,0 +1,380 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.smallrye.mutiny.Multi;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.http.HttpServer;
+import io.vertx.mutiny.core.http.HttpServerRequest;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.model.ArchiveStatus;
+import org.commonjava.indy.service.archive.model.dto.ArchiveStatusDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile.INDY_PORT;
+import static org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile.STORAGE_DIR;
+import static org.commonjava.indy.service.archive.util.TestUtil.SHARED_IMPORTS;
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.commonjava.indy.service.archive.util.TestUtil.newEntry;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+@TestProfile( LocalIndyProfile.class )
+public class ArchiveControllerTest
+{
+    private static final String BUILD = "7001";
+
+    private static final String JAR_PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    private static final String CONTENT_PATH = "/api/content/maven/hosted/shared-imports";
+
+    private static final int SIZE_1M = 1024 * 1024;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    ArchiveController controller;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    MissingArtifactCache missingArtifactCache;
+
+    private HttpServer server;
+
+    private final byte[] content = getBytes( SIZE_1M );
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger unavailable = new AtomicInteger();
+
+    private final AtomicInteger corrupted = new AtomicInteger();
+
+    private final AtomicBoolean missing = new AtomicBoolean();
+
+    // requests answered once the test releases them
+    private final List<HttpServerRequest> held = new ArrayList<>();
+
+    private boolean holding;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        FileUtils.deleteDirectory( new File( STORAGE_DIR ) );
+        unavailable.set( 0 );
+        corrupted.set( 0 );
+        missing.set( false );
+        missingArtifactCache.flush();
+        server = vertx.createHttpServer().requestHandler( this::serve ).listen( INDY_PORT ).await().indefinitely();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        release();
+        server.close().await().indefinitely();
+        FileUtils.deleteDirectory( new File( STORAGE_DIR ) );
+    }
+
+    @Test
+    public void testGenerate() throws IOException
+    {
+        assertTrue( controller.doGenerate( newContent() ) );
+
+        assertThat( requests, hasItem( CONTENT_PATH + JAR_PATH + " null" ) );
+        assertArchivedContent();
+        assertThat( controller.getStatus( BUILD ), equalTo( ArchiveStatus.completed.getArchiveStatus() ) );
+
+        ArchiveStatusDTO status = controller.getJobStatus( BUILD ).get();
+        assertThat( status.getEntriesTotal(), equalTo( 1 ) );
+        assertThat( status.getEntriesDone(), equalTo( 1 ) );
+        assertThat( status.getEntriesFailed(), equalTo( 0 ) );
+        assertThat( status.getEntriesArchived(), equalTo( 1 ) );
+        assertThat( status.getBytesDone(), equalTo( status.getBytesExpected() ) );
+        assertThat( status.getBytesTransferred(), equalTo( (long) SIZE_1M ) );
+        assertThat( status.getBytesSkipped(), equalTo( 0L ) );
+        assertThat( status.getEta(), equalTo( 0L ) );
+
+        Optional<File> archive = controller.getArchiveInputStream( BUILD );
+        assertTrue( archive.isPresent() );
+        controller.deleteArchive( BUILD );
+        assertFalse( archive.get().exists() );
+        assertFalse( controller.getArchiveInputStream( BUILD ).isPresent() );
+    }
+
+    @Test
+    public void testManifest() throws IOException
+    {
+        assertTrue( controller.doGenerate( newContent() ) );
+
+        Optional<File> manifest = controller.getArchiveManifest( BUILD );
+        assertTrue( manifest.isPresent() );
+        JsonNode listing = objectMapper.readTree( manifest.get() );
+        assertThat( listing.get( "buildConfigId" ).asText(), equalTo( BUILD ) );
+        // the tracked content is archived along with the jar
+        assertThat( listing.get( "total" ).asInt(), equalTo( 2 ) );
+        JsonNode jar = null;
+        for ( JsonNode entry : listing.get( "entries" ) )
+        {
+            if ( entry.get( "name" ).asText().equals( JAR_PATH ) )
+            {
+                jar = entry;
+            }
+        }
+        assertNotNull( jar );
+        assertThat( jar.get( "size" ).asLong(), equalTo( (long) SIZE_1M ) );
+
+        controller.deleteArchive( BUILD );
+        assertFalse( manifest.get().exists() );
+        assertFalse( controller.getArchiveManifest( BUILD ).isPresent() );
+    }
+
+    @Test
+    public void testOpenRegeneratedArchive() throws Exception
+    {
+        assertTrue( controller.doGenerate( newContent() ) );
+        ArchiveMetadata archive = controller.getArchive( BUILD ).get();
+
+        try (FileChannel channel = controller.openArchive( archive ))
+        {
+            // file times may only have a second of resolution
+            Thread.sleep( 1100 );
+            assertTrue( controller.doGenerate( newContent() ) );
+
+            // the open channel still reads the archive it was opened on, a new lookup is needed for the new one
+            assertThat( channel.size(), equalTo( archive.getSize() ) );
+            assertThrows( ArchiveChangedException.class, () -> controller.openArchive( archive ) );
+            controller.openArchive( controller.getArchive( BUILD ).get() ).close();
+        }
+    }
+
+    @Test
+    public void testResumePartialDownload() throws IOException
+    {
+        File part = new File( STORAGE_DIR + "/content/" + BUILD + JAR_PATH + ".part" );
+        FileUtils.writeByteArrayToFile( part, Arrays.copyOfRange( content, 0, SIZE_1M / 2 ) );
+
+        assertTrue( controller.doGenerate( newContent() ) );
+
+        assertThat( requests, hasItem( CONTENT_PATH + JAR_PATH + " bytes=" + SIZE_1M / 2 + "-" ) );
+        assertArchivedContent();
+    }
+
+    @Test
+    public void testRetryTransientError() throws IOException
+    {
+        unavailable.set( 2 );
+
+        assertTrue( controller.doGenerate( newContent() ) );
+
+        assertThat( requests.size(), equalTo( 3 ) );
+        assertArchivedContent();
+    }
+
+    @Test
+    public void testRetryCorruptedContent() throws IOException
+    {
+        corrupted.set( 1 );
+
+        assertTrue( controller.doGenerate( newContent() ) );
+
+        assertThat( requests.size(), equalTo( 2 ) );
+        assertArchivedContent();
+    }
+
+    @Test
+    public void testRetryWhileGenerating() throws Exception
+    {
+        missing.set( true );
+        assertTrue( controller.doGenerate( newContent() ) );
+        missing.set( false );
+        missingArtifactCache.flush();
+
+        synchronized ( held )
+        {
+            holding = true;
+        }
+        controller.generate( newContent() );
+        // the generation waits for Indy, a retry or another generation would share its content dir and part archive
+        assertThrows( ArchiveJobConflictException.class, () -> controller.retryFailed( BUILD ) );
+        assertThrows( ArchiveJobConflictException.class, () -> controller.generate( newContent() ) );
+
+        release();
+        long deadline = System.currentTimeMillis() + 30000;
+        while ( !controller.getJobStatus( BUILD ).get().getStatus().isFinished()
+                        && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 50 );
+        }
+        assertThat( controller.getStatus( BUILD ), equalTo( ArchiveStatus.completed.getArchiveStatus() ) );
+        assertArchivedContent();
+    }
+
+    @Test
+    public void testRetryMissingArtifact() throws Exception
+    {
+        missing.set( true );
+        assertTrue( controller.doGenerate( newContent() ) );
+        int requested = requests.size();
+
+        // imported into Indy since, while the 404 is still in the negative cache
+        missing.set( false );
+        assertThat( controller.retryFailed( BUILD ).get(), equalTo( 1 ) );
+        long deadline = System.currentTimeMillis() + 30000;
+        while ( !controller.getJobStatus( BUILD ).get().getStatus().isFinished()
+                        && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 50 );
+        }
+
+        assertThat( requests.size(), equalTo( requested + 1 ) );
+        assertThat( controller.getStatus( BUILD ), equalTo( ArchiveStatus.completed.getArchiveStatus() ) );
+        assertArchivedContent();
+    }
+
+    @Test
+    public void testPipelineOfFailedStream() throws InterruptedException
+    {
+        HistoricalEntryDTO jar = newContent().getDownloads()[0];
+        HistoricalEntryDTO pom = new HistoricalEntryDTO( jar.getStoreKey(), "/org/foo/foo/1.0/foo-1.0.pom" );
+        Multi<StagedArtifact> downloads = Multi.createFrom()
+                                               .items( StagedArtifact.cached( jar, new File( STORAGE_DIR, "jar" ) ) )
+                                               .onCompletion()
+                                               .failWith( new RejectedExecutionException() );
+        BlockingQueue<StagedArtifact> pipeline = new ArrayBlockingQueue<>( 2 );
+
+        controller.pipe( downloads, Arrays.asList( jar, pom ), pipeline );
+
+        // the archive writer gets every entry, the ones lost with the stream as failed
+        StagedArtifact first = pipeline.poll( 5, TimeUnit.SECONDS );
+        assertNotNull( first );
+        assertSame( jar, first.getEntry() );
+        assertFalse( first.isFailed() );
+        StagedArtifact lost = pipeline.poll( 5, TimeUnit.SECONDS );
+        assertNotNull( lost );
+        assertSame( pom, lost.getEntry() );
+        assertTrue( lost.isFailed() );
+    }
+
+    private HistoricalContentDTO newContent()
+    {
+        return new HistoricalContentDTO( BUILD,
+                                         new HistoricalEntryDTO[] { newEntry( SHARED_IMPORTS, JAR_PATH, content ) } );
+    }
+
+    private void assertArchivedContent() throws IOException
+    {
+        try (ZipFile zip = new ZipFile( new File( STORAGE_DIR + "/archive", BUILD + ".zip" ) ))
+        {
+            ZipEntry entry = zip.getEntry( JAR_PATH );
+            assertNotNull( entry );
+            assertArrayEquals( content, IOUtils.toByteArray( zip.getInputStream( entry ) ) );
+        }
+    }
+
+    private void release()
+    {
+        List<HttpServerRequest> pending;
+        synchronized ( held )
+        {
+            holding = false;
+            pending = new ArrayList<>( held );
+            held.clear();
+        }
+        pending.forEach( this::serve );
+    }
+
+    private void serve( final HttpServerRequest request )
+    {
+        synchronized ( held )
+        {
+            if ( holding )
+            {
+                held.add( request );
+                return;
+            }
+        }
+        String range = request.getHeader( "Range" );
+        requests.add( request.path() + " " + range );
+        if ( !request.path().equals( CONTENT_PATH + JAR_PATH ) || missing.get() )
+        {
+            request.response().setStatusCode( 404 ).endAndForget();
+            return;
+        }
+        if ( unavailable.getAndDecrement() > 0 )
+        {
+            request.response().setStatusCode( 503 ).endAndForget();
+            return;
+        }
+        if ( corrupted.getAndDecrement() > 0 )
+        {
+            byte[] bytes = content.clone();
+            bytes[SIZE_1M / 2]++;
+            request.response().endAndForget( Buffer.buffer( bytes ) );
+            return;
+        }
+        if ( range == null )
+        {
+            request.response().endAndForget( Buffer.buffer( content ) );
+            return;
+        }
+        int start = Integer.parseInt( range.substring( "bytes=".length(), range.length() - 1 ) );
+        request.response()
+               .setStatusCode( 206 )
+               .putHeader( "Content-Range", String.format( "bytes %s-%s/%s", start, SIZE_1M - 1, SIZE_1M ) )
+               .endAndForget( Buffer.buffer( Arrays.copyOfRange( content, start, SIZE_1M ) ) );
+    }
+}
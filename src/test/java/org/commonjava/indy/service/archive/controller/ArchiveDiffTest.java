@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.commonjava.indy.service.archive.model.dto.ArchiveResultDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.commonjava.indy.service.archive.util.ZipArchiveWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.SHARED_IMPORTS;
+import static org.commonjava.indy.service.archive.util.TestUtil.newEntry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+public class ArchiveDiffTest
+{
+    private static final String CORE = "/org/apache/maven/maven-core/3.0/maven-core-3.0.jar";
+
+    private static final String MODEL = "/org/apache/maven/maven-model/3.0/maven-model-3.0.jar";
+
+    private static final String PLUGIN = "/org/apache/maven/maven-plugin-api/3.0/maven-plugin-api-3.0.jar";
+
+    private static final String SETTINGS = "/org/apache/maven/maven-settings/3.0/maven-settings-3.0.jar";
+
+    private File archive;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        archive = Files.createTempFile( "archive", ".zip" ).toFile();
+        try (ZipArchiveWriter zip = new ZipArchiveWriter( new FileOutputStream( archive ) ))
+        {
+            for ( String path : new String[] { CORE, MODEL, PLUGIN, "/1001" } )
+            {
+                byte[] content = path.getBytes();
+                CRC32 crc = new CRC32();
+                crc.update( content );
+                zip.putRawEntry( path, ZipEntry.STORED, crc.getValue(), content.length, content.length,
+                                 new ByteArrayInputStream( content ) );
+            }
+        }
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        archive.delete();
+    }
+
+    @Test
+    public void testDiff() throws IOException
+    {
+        ArchiveResultDTO previous = new ArchiveResultDTO( "1001" );
+        previous.getDownloaded().add( newEntry( CORE, "73728ce3" ) );
+        previous.getCached().add( newEntry( MODEL, "2a7a1d5e" ) );
+        previous.getDownloaded().add( newEntry( PLUGIN, "5f1e9c07" ) );
+
+        // core is unchanged, model was rebuilt, settings is new and the plugin api isn't tracked any more
+        Map<String, HistoricalEntryDTO> downloads = new HashMap<>();
+        downloads.put( "core", newEntry( CORE, "73728CE3" ) );
+        downloads.put( "model", newEntry( MODEL, "0c6b3a4e" ) );
+        downloads.put( "settings", newEntry( SETTINGS, "9d1e7a2b" ) );
+
+        ArchiveDiff diff = ArchiveDiff.compute( archive, previous, downloads );
+        List<ArchiveEntry> unchanged = diff.getUnchanged();
+        assertEquals( 1, unchanged.size() );
+        assertEquals( CORE, unchanged.get( 0 ).getName() );
+        assertEquals( 1, diff.getUnchangedDownloads().size() );
+        assertEquals( 2, diff.getChanged().size() );
+        assertEquals( SETTINGS, diff.getChanged().get( "settings" ).getPath() );
+        // model, plugin api and the tracked content, which is always written again
+        assertEquals( 3, diff.getDropped() );
+    }
+
+    @Test
+    public void testDownloadsWithoutChecksumAreChanged() throws IOException
+    {
+        ArchiveResultDTO previous = new ArchiveResultDTO( "1001" );
+        previous.getDownloaded().add( new HistoricalEntryDTO( SHARED_IMPORTS, CORE ) );
+
+        Map<String, HistoricalEntryDTO> downloads = new HashMap<>();
+        downloads.put( "core", new HistoricalEntryDTO( SHARED_IMPORTS, CORE ) );
+
+        ArchiveDiff diff = ArchiveDiff.compute( archive, previous, downloads );
+        assertEquals( 0, diff.getUnchanged().size() );
+        assertEquals( 1, diff.getChanged().size() );
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ArchiveIndexTest
+{
+    private static final String CHECKSUM = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    private File storageDir;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        storageDir = Files.createTempDirectory( "archive-index" ).toFile();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        FileUtils.deleteDirectory( storageDir );
+    }
+
+    @Test
+    public void testRegisterAndRebuild() throws IOException
+    {
+        ArchiveIndex index = newIndex();
+        File archive = writeArchive( "1001.zip" );
+        writeArchive( "1002.part.zip" );
+
+        index.register( "1001", archive, CHECKSUM );
+        assertTrue( index.get( "1001" ).isPresent() );
+
+        // a restarted service finds the archive and its checksum again, but not the unfinished one
+        ArchiveIndex restarted = newIndex();
+        assertThat( restarted.size(), equalTo( 1 ) );
+        ArchiveMetadata metadata = restarted.get( "1001" ).get();
+        assertThat( metadata.getFile(), equalTo( archive ) );
+        assertThat( metadata.getSize(), equalTo( archive.length() ) );
+        assertThat( metadata.getChecksum(), equalTo( CHECKSUM ) );
+    }
+
+    @Test
+    public void testArchiveWithoutChecksum() throws IOException
+    {
+        writeArchive( "1001.zip" );
+
+        ArchiveIndex index = newIndex();
+        assertTrue( index.get( "1001" ).isPresent() );
+        assertNull( index.get( "1001" ).get().getChecksum() );
+    }
+
+    @Test
+    public void testRemove() throws IOException
+    {
+        ArchiveIndex index = newIndex();
+        File archive = writeArchive( "1001.zip" );
+        index.register( "1001", archive, CHECKSUM );
+
+        index.remove( "1001" );
+        assertFalse( index.get( "1001" ).isPresent() );
+        assertFalse( new File( archive.getParentFile(), "1001.zip.sha256" ).exists() );
+    }
+
+    @Test
+    public void testFingerprint() throws IOException
+    {
+        ArchiveIndex index = newIndex();
+        File archive = writeArchive( "1001.zip" );
+        index.register( "1001", archive, CHECKSUM );
+        index.recordFingerprint( "1001", CHECKSUM );
+        assertThat( index.getFingerprint( "1001" ), equalTo( Optional.of( CHECKSUM ) ) );
+
+        // the fingerprint survives a restart, and goes with the archive
+        ArchiveIndex restarted = newIndex();
+        assertThat( restarted.getFingerprint( "1001" ), equalTo( Optional.of( CHECKSUM ) ) );
+        restarted.remove( "1001" );
+        assertFalse( restarted.getFingerprint( "1001" ).isPresent() );
+        assertFalse( new File( archive.getParentFile(), "1001.zip.fingerprint" ).exists() );
+    }
+
+    @Test
+    public void testArchiveDeletedBehindIndex() throws IOException
+    {
+        ArchiveIndex index = newIndex();
+        File archive = writeArchive( "1001.zip" );
+        index.register( "1001", archive, CHECKSUM );
+
+        archive.delete();
+        assertFalse( index.get( "1001" ).isPresent() );
+    }
+
+    private ArchiveIndex newIndex() throws IOException
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setStorageDir( Optional.of( storageDir.getPath() ) );
+        ArchiveIndex index = new ArchiveIndex( preSeedConfig );
+        index.init();
+        return index;
+    }
+
+    private File writeArchive( String name ) throws IOException
+    {
+        File file = new File( storageDir, "archive/" + name );
+        FileUtils.writeByteArrayToFile( file, getBytes( 1024 ) );
+        return file;
+    }
+}
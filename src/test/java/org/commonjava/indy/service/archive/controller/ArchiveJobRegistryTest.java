@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.ArchiveJob;
+import org.commonjava.indy.service.archive.model.ArchiveStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ArchiveJobRegistryTest
+{
+    private File storageDir;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        storageDir = Files.createTempDirectory( "archive-jobs" ).toFile();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        FileUtils.deleteDirectory( storageDir );
+    }
+
+    @Test
+    public void testReplayTransitions() throws IOException
+    {
+        ArchiveJobRegistry registry = newRegistry();
+        registry.transition( "1001", ArchiveStatus.queued );
+        registry.transition( "1001", ArchiveStatus.downloading );
+        registry.transition( "1001", ArchiveStatus.zipping );
+        registry.transition( "1001", ArchiveStatus.completed );
+        registry.transition( "1002", ArchiveStatus.queued );
+        registry.destroy();
+
+        ArchiveJobRegistry restarted = newRegistry();
+        ArchiveJob job = restarted.get( "1001" ).get();
+        assertThat( job.getStatus(), equalTo( ArchiveStatus.completed ) );
+        assertThat( job.getTransitions().size(), equalTo( 4 ) );
+
+        // nothing resumes a job which was pending when the service stopped
+        assertThat( restarted.get( "1002" ).get().getStatus(), equalTo( ArchiveStatus.failed ) );
+    }
+
+    @Test
+    public void testQueuedStartsNewGeneration() throws IOException
+    {
+        ArchiveJobRegistry registry = newRegistry();
+        registry.transition( "1001", ArchiveStatus.downloading );
+        registry.transition( "1001", ArchiveStatus.failed );
+
+        ArchiveJob job = registry.transition( "1001", ArchiveStatus.queued );
+        assertThat( job.getTransitions().size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void testQueueConflictsWithUnfinishedJob() throws IOException
+    {
+        ArchiveJobRegistry registry = newRegistry();
+        assertNull( registry.queue( "1001" ) );
+        assertThrows( ArchiveJobConflictException.class, () -> registry.queue( "1001" ) );
+        registry.transition( "1001", ArchiveStatus.downloading );
+        assertThrows( ArchiveJobConflictException.class, () -> registry.queue( "1001" ) );
+
+        ArchiveJob completed = registry.transition( "1001", ArchiveStatus.completed );
+        assertThat( registry.queue( "1001" ), equalTo( completed ) );
+        assertThat( registry.get( "1001" ).get().getStatus(), equalTo( ArchiveStatus.queued ) );
+    }
+
+    @Test
+    public void testRestore() throws IOException
+    {
+        ArchiveJobRegistry registry = newRegistry();
+        ArchiveJob completed = registry.transition( "1001", ArchiveStatus.completed );
+        registry.transition( "1001", ArchiveStatus.queued );
+        registry.restore( "1001", completed );
+        registry.transition( "1002", ArchiveStatus.queued );
+        registry.restore( "1002", null );
+        registry.destroy();
+
+        ArchiveJobRegistry restarted = newRegistry();
+        assertThat( restarted.get( "1001" ).get().getStatus(), equalTo( ArchiveStatus.completed ) );
+        assertFalse( restarted.exists( "1002" ) );
+    }
+
+    @Test
+    public void testSeedFromArchives() throws IOException
+    {
+        FileUtils.writeByteArrayToFile( new File( storageDir, "archive/1001.zip" ), getBytes( 1024 ) );
+
+        ArchiveJobRegistry registry = newRegistry();
+        assertTrue( registry.exists( "1001" ) );
+        assertThat( registry.get( "1001" ).get().getStatus(), equalTo( ArchiveStatus.completed ) );
+    }
+
+    @Test
+    public void testCompactBySize() throws IOException
+    {
+        ArchiveJobRegistry registry = newRegistry();
+        registry.compactMinSize = 4096;
+        File journal = new File( storageDir, "jobs.journal" );
+        long largest = 0;
+        for ( int i = 0; i < 200; i++ )
+        {
+            registry.transition( "1001", ArchiveStatus.queued );
+            registry.transition( "1001", ArchiveStatus.completed );
+            largest = Math.max( largest, journal.length() );
+        }
+        // 400 records were written, the journal never held more than the threshold and a flush
+        assertTrue( largest <= 4096 + 1024 );
+        registry.destroy();
+
+        ArchiveJobRegistry restarted = newRegistry();
+        assertThat( restarted.get( "1001" ).get().getStatus(), equalTo( ArchiveStatus.completed ) );
+    }
+
+    @Test
+    public void testConcurrentTransitions() throws Exception
+    {
+        ArchiveJobRegistry registry = newRegistry();
+        registry.compactMinSize = 4096;
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for ( int i = 0; i < 8; i++ )
+            {
+                final String id = String.valueOf( 1001 + i );
+                futures.add( executor.submit( () -> {
+                    for ( int j = 0; j < 50; j++ )
+                    {
+                        registry.transition( id, ArchiveStatus.queued );
+                        registry.transition( id, ArchiveStatus.downloading );
+                        registry.transition( id, ArchiveStatus.completed );
+                    }
+                } ) );
+            }
+            for ( Future<?> future : futures )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        registry.destroy();
+
+        // the last record of each job is its last transition
+        ArchiveJobRegistry restarted = newRegistry();
+        for ( int i = 0; i < 8; i++ )
+        {
+            ArchiveJob job = restarted.get( String.valueOf( 1001 + i ) ).get();
+            assertThat( job.getStatus(), equalTo( ArchiveStatus.completed ) );
+            assertThat( job.getTransitions().size(), equalTo( 3 ) );
+        }
+    }
+
+    private ArchiveJobRegistry newRegistry() throws IOException
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setStorageDir( Optional.of( storageDir.getPath() ) );
+        ArchiveIndex index = new ArchiveIndex( preSeedConfig );
+        index.init();
+        ArchiveJobRegistry registry = new ArchiveJobRegistry( preSeedConfig, new ObjectMapper(), index );
+        registry.init();
+        return registry;
+    }
+}
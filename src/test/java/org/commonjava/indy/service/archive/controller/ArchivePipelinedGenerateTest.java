@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.http.HttpServer;
+import io.vertx.mutiny.core.http.HttpServerRequest;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.controller.profile.PipelinedIndyProfile;
+import org.commonjava.indy.service.archive.model.StoreKey;
+import org.commonjava.indy.service.archive.model.StoreType;
+import org.commonjava.indy.service.archive.model.dto.ArchiveResultDTO;
+import org.commonjava.indy.service.archive.model.dto.ArchiveStatusDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.commonjava.indy.service.archive.util.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile.INDY_PORT;
+import static org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile.STORAGE_DIR;
+import static org.commonjava.indy.service.archive.util.TestUtil.SHARED_IMPORTS;
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Generation with the artifacts downloaded and zipped in one pass, see
+ * {@link ArchiveController#doGenerate(HistoricalContentDTO)}.
+ */
+@QuarkusTest
+@TestProfile( PipelinedIndyProfile.class )
+public class ArchivePipelinedGenerateTest
+{
+    private static final String BUILD = "7002";
+
+    private static final String CONTENT_PATH = "/api/content/maven/hosted/";
+
+    private static final String JAR_PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    private static final String POM_PATH = "/org/foo/foo/1.0/foo-1.0.pom";
+
+    private static final String DIST_PATH = "/org/foo/foo/1.0/foo-1.0-dist.zip";
+
+    private static final String MISSING_PATH = "/org/foo/foo/1.0/foo-1.0-sources.jar";
+
+    private static final StoreKey BUILDS = new StoreKey( "maven", StoreType.hosted, "builds" );
+
+    private static final int SIZE_1M = 1024 * 1024;
+
+    // bigger than the artifacts kept in memory between download and zip, so it's spooled
+    private static final int SIZE_9M = 9 * SIZE_1M;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    ArchiveController controller;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    MissingArtifactCache missingArtifactCache;
+
+    private HttpServer server;
+
+    // served content by request path, anything else is not found
+    private final Map<String, byte[]> served = new ConcurrentHashMap<>();
+
+    private final byte[] jar = getBytes( SIZE_1M );
+
+    private final byte[] dist = getBytes( SIZE_9M );
+
+    private final byte[] pom = "<project><artifactId>foo</artifactId></project>".getBytes( StandardCharsets.UTF_8 );
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        FileUtils.deleteDirectory( new File( STORAGE_DIR ) );
+        missingArtifactCache.flush();
+        served.clear();
+        server = vertx.createHttpServer().requestHandler( this::serve ).listen( INDY_PORT ).await().indefinitely();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        server.close().await().indefinitely();
+        FileUtils.deleteDirectory( new File( STORAGE_DIR ) );
+    }
+
+    @Test
+    public void testGeneratePipelined() throws IOException
+    {
+        List<HistoricalEntryDTO> entries = new ArrayList<>();
+        entries.add( newEntry( SHARED_IMPORTS, JAR_PATH, jar ) );
+        entries.add( newEntry( SHARED_IMPORTS, POM_PATH, pom ) );
+        entries.add( newEntry( SHARED_IMPORTS, DIST_PATH, dist ) );
+        // the same path from another store is archived once
+        entries.add( newEntry( BUILDS, JAR_PATH, jar ) );
+        entries.add( newEntry( SHARED_IMPORTS, MISSING_PATH, null ) );
+        entries.get( entries.size() - 1 ).setSize( (long) SIZE_1M );
+
+        assertTrue( controller.doGenerate( newContent( entries ) ) );
+
+        try (ZipFile zip = new ZipFile( new File( STORAGE_DIR + "/archive", BUILD + ".zip" ) ))
+        {
+            // held in memory, stored with the crc of the staged bytes
+            assertEntry( zip, JAR_PATH, jar, ZipEntry.STORED );
+            assertEntry( zip, POM_PATH, pom, ZipEntry.DEFLATED );
+            // spooled to a file, stored with the crc of the file
+            assertEntry( zip, DIST_PATH, dist, ZipEntry.STORED );
+            assertNull( zip.getEntry( MISSING_PATH ) );
+            // the tracked content and the three artifacts
+            assertThat( zip.size(), equalTo( 4 ) );
+        }
+
+        ArchiveResultDTO result = objectMapper.readValue( controller.getArchiveResult( BUILD ).get(),
+                                                          ArchiveResultDTO.class );
+        assertThat( result.getFailed().size(), equalTo( 1 ) );
+        assertThat( result.getFailed().get( 0 ).getPath(), equalTo( MISSING_PATH ) );
+        assertThat( result.getDownloaded().size(), equalTo( 4 ) );
+
+        assertNoStagedFiles();
+    }
+
+    @Test
+    public void testWriterFailureDrainsDownloads() throws IOException
+    {
+        List<HistoricalEntryDTO> entries = new ArrayList<>();
+        entries.add( newEntry( SHARED_IMPORTS, DIST_PATH, dist ) );
+        // more downloads than the pipeline holds, bounded by the download concurrency of the pool engine
+        int poms = 4 * Runtime.getRuntime().availableProcessors() + 8;
+        for ( int i = 0; i < poms; i++ )
+        {
+            entries.add( newEntry( SHARED_IMPORTS, "/org/foo/foo/1." + i + "/foo-1." + i + ".pom", pom ) );
+        }
+        // the part archive can't be written
+        File part = new File( STORAGE_DIR + "/archive", BUILD + ".part.zip" );
+        assertTrue( new File( part, "blocked" ).mkdirs() );
+
+        assertFalse( assertTimeoutPreemptively( Duration.ofSeconds( 60 ),
+                                                () -> controller.doGenerate( newContent( entries ) ) ) );
+
+        assertFalse( new File( STORAGE_DIR + "/archive", BUILD + ".zip" ).exists() );
+        assertNoStagedFiles();
+    }
+
+    @Test
+    public void testIncrementalTakesPrecedence() throws IOException
+    {
+        List<HistoricalEntryDTO> entries = new ArrayList<>();
+        entries.add( newEntry( SHARED_IMPORTS, JAR_PATH, jar ) );
+        entries.add( newEntry( SHARED_IMPORTS, POM_PATH, pom ) );
+        assertTrue( controller.doGenerate( newContent( entries ) ) );
+
+        // the pom changed, the jar is copied from the previous archive
+        byte[] changed = "<project><artifactId>foo</artifactId><version>1.0</version></project>".getBytes(
+                        StandardCharsets.UTF_8 );
+        entries.set( 1, newEntry( SHARED_IMPORTS, POM_PATH, changed ) );
+        assertTrue( controller.doGenerate( newContent( entries ) ) );
+
+        try (ZipFile zip = new ZipFile( new File( STORAGE_DIR + "/archive", BUILD + ".zip" ) ))
+        {
+            assertEntry( zip, JAR_PATH, jar, ZipEntry.STORED );
+            assertEntry( zip, POM_PATH, changed, ZipEntry.DEFLATED );
+        }
+        ArchiveResultDTO result = objectMapper.readValue( controller.getArchiveResult( BUILD ).get(),
+                                                          ArchiveResultDTO.class );
+        assertThat( result.getCached().size(), equalTo( 1 ) );
+        assertThat( result.getDownloaded().size(), equalTo( 1 ) );
+        assertNoStagedFiles();
+
+        // the copied jar is skipped, only the pom was transferred
+        ArchiveStatusDTO status = controller.getJobStatus( BUILD ).get();
+        assertThat( status.getBytesSkipped(), equalTo( (long) jar.length ) );
+        assertThat( status.getBytesTransferred(), equalTo( (long) changed.length ) );
+        assertThat( status.getBytesDone(), equalTo( status.getBytesExpected() ) );
+    }
+
+    private HistoricalEntryDTO newEntry( final StoreKey storeKey, final String path, final byte[] bytes )
+    {
+        if ( bytes != null )
+        {
+            served.put( CONTENT_PATH + storeKey.getName() + path, bytes );
+        }
+        return TestUtil.newEntry( storeKey, path, bytes );
+    }
+
+    private HistoricalContentDTO newContent( final List<HistoricalEntryDTO> entries )
+    {
+        return new HistoricalContentDTO( BUILD, entries.toArray( new HistoricalEntryDTO[0] ) );
+    }
+
+    private void assertEntry( final ZipFile zip, final String path, final byte[] bytes, final int method )
+                    throws IOException
+    {
+        ZipEntry entry = zip.getEntry( path );
+        assertNotNull( entry );
+        assertThat( entry.getMethod(), equalTo( method ) );
+        CRC32 crc = new CRC32();
+        crc.update( bytes );
+        assertThat( entry.getCrc(), equalTo( crc.getValue() ) );
+        assertArrayEquals( bytes, IOUtils.toByteArray( zip.getInputStream( entry ) ) );
+    }
+
+    private void assertNoStagedFiles()
+    {
+        // nothing is staged in the content dir, and spooled downloads are removed once archived or dropped
+        assertFalse( new File( STORAGE_DIR + "/content/" + BUILD ).exists() );
+        assertFalse( new File( STORAGE_DIR + "/spool/" + BUILD ).exists() );
+    }
+
+    private void serve( final HttpServerRequest request )
+    {
+        byte[] bytes = served.get( request.path() );
+        if ( bytes == null )
+        {
+            request.response().setStatusCode( 404 ).endAndForget();
+            return;
+        }
+        request.response().endAndForget( Buffer.buffer( bytes ) );
+    }
+}
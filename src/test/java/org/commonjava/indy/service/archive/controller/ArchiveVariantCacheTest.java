@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
+import org.commonjava.indy.service.archive.format.ArchiveFormats;
+import org.commonjava.indy.service.archive.format.TarGzArchiveFormat;
+import org.commonjava.indy.service.archive.format.TarZstArchiveFormat;
+import org.commonjava.indy.service.archive.format.ZipArchiveFormat;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ArchiveVariantCacheTest
+{
+    private File storageDir;
+
+    private ArchiveMetadata archive;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        storageDir = Files.createTempDirectory( "archive-variant" ).toFile();
+        File file = new File( storageDir, "archive/1001.zip" );
+        file.getParentFile().mkdirs();
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( file ) ))
+        {
+            zip.putNextEntry( new ZipEntry( "/org/foo/foo/1.0/foo-1.0.jar" ) );
+            zip.write( getBytes( 100 * 1024 ) );
+        }
+        archive = new ArchiveMetadata( "1001", file, file.length(), file.lastModified(), null );
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        FileUtils.deleteDirectory( storageDir );
+    }
+
+    @Test
+    public void testTranscodedInBackground() throws Exception
+    {
+        ArchiveFormats formats = newFormats();
+        ArchiveFormat tarGz = formats.get( TarGzArchiveFormat.NAME ).get();
+        ArchiveVariantCache cache = newCache( formats );
+        try
+        {
+            assertSame( archive, cache.getVariant( archive, formats.get( ZipArchiveFormat.NAME ).get() ).get() );
+
+            // the request doesn't wait for the transcoding
+            assertFalse( cache.getVariant( archive, tarGz ).isPresent() );
+            Optional<ArchiveMetadata> variant = awaitVariant( cache, tarGz );
+            assertTrue( variant.isPresent() );
+            File file = variant.get().getFile();
+            assertThat( file, equalTo( new File( storageDir, "archive/1001.tar.gz" ) ) );
+            assertThat( variant.get().getChecksum(),
+                        equalTo( DigestUtils.sha256Hex( Files.readAllBytes( file.toPath() ) ) ) );
+
+            // a restarted service finds the variant again
+            ArchiveVariantCache restarted = newCache( formats );
+            try
+            {
+                assertThat( restarted.getVariant( archive, tarGz ).get().getFile(), equalTo( file ) );
+            }
+            finally
+            {
+                restarted.destroy();
+            }
+
+            cache.invalidate( "1001" );
+            assertFalse( file.exists() );
+        }
+        finally
+        {
+            cache.destroy();
+        }
+    }
+
+    private Optional<ArchiveMetadata> awaitVariant( final ArchiveVariantCache cache, final ArchiveFormat format )
+                    throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        Optional<ArchiveMetadata> variant = cache.getVariant( archive, format );
+        while ( !variant.isPresent() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 50 );
+            variant = cache.getVariant( archive, format );
+        }
+        return variant;
+    }
+
+    private ArchiveFormats newFormats()
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setArchiveDefaultFormat( Optional.of( ZipArchiveFormat.NAME ) );
+        preSeedConfig.setArchiveFormats( Optional.of( ZipArchiveFormat.NAME ) );
+        ArchiveFormats formats = new ArchiveFormats( preSeedConfig,
+                                                     Arrays.asList( new ZipArchiveFormat(), new TarGzArchiveFormat(),
+                                                                    new TarZstArchiveFormat() ) );
+        formats.init();
+        return formats;
+    }
+
+    private ArchiveVariantCache newCache( final ArchiveFormats formats )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setStorageDir( Optional.of( storageDir.getPath() ) );
+        preSeedConfig.setArchiveTranscodeThreads( Optional.of( 1 ) );
+        ArchiveVariantCache cache = new ArchiveVariantCache( preSeedConfig, formats );
+        cache.init();
+        return cache;
+    }
+}
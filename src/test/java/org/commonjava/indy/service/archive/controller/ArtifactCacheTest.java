@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.commonjava.indy.service.archive.util.TestUtil.newEntry;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ArtifactCacheTest
+{
+    private static final int SIZE_600K = 1024 * 600;
+
+    private File storageDir;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        storageDir = Files.createTempDirectory( "archive-cache" ).toFile();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        FileUtils.deleteDirectory( storageDir );
+    }
+
+    @Test
+    public void testStoreAndFetch() throws IOException
+    {
+        ArtifactCache cache = newCache( 10L );
+        HistoricalEntryDTO entry = newEntry( "/org/foo/foo-1.0.jar", "ba03294ee53e7ba31838e4950f280d033c7744c6" );
+        File source = writeArtifact( "build-1/foo-1.0.jar", SIZE_600K );
+        entry.setSize( source.length() );
+
+        cache.store( entry, source );
+
+        File target = new File( storageDir, "build-2/foo-1.0.jar" );
+        assertTrue( cache.fetch( entry, target ) );
+        assertTrue( FileUtils.contentEquals( source, target ) );
+
+        // cached content must survive the cleanup of the build which downloaded it
+        source.delete();
+        File another = new File( storageDir, "build-3/foo-1.0.jar" );
+        assertTrue( cache.fetch( entry, another ) );
+        assertThat( another.length(), equalTo( (long) SIZE_600K ) );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException
+    {
+        ArtifactCache cache = newCache( 1L );
+        HistoricalEntryDTO first = newEntry( "/org/foo/foo-1.0.jar", "aaaa294ee53e7ba31838e4950f280d033c7744c6" );
+        HistoricalEntryDTO second = newEntry( "/org/bar/bar-1.0.jar", "bbbb294ee53e7ba31838e4950f280d033c7744c6" );
+
+        cache.store( first, writeArtifact( "build-1/foo-1.0.jar", SIZE_600K ) );
+        cache.store( second, writeArtifact( "build-1/bar-1.0.jar", SIZE_600K ) );
+
+        assertFalse( cache.fetch( first, new File( storageDir, "build-2/foo-1.0.jar" ) ) );
+        assertTrue( cache.fetch( second, new File( storageDir, "build-2/bar-1.0.jar" ) ) );
+    }
+
+    @Test
+    public void testEntryWithoutChecksumIsNotCached() throws IOException
+    {
+        ArtifactCache cache = newCache( 10L );
+        HistoricalEntryDTO entry = newEntry( "/org/foo/foo-1.0.pom", null );
+
+        cache.store( entry, writeArtifact( "build-1/foo-1.0.pom", 1024 ) );
+
+        assertFalse( cache.fetch( entry, new File( storageDir, "build-2/foo-1.0.pom" ) ) );
+    }
+
+    private ArtifactCache newCache( Long maxSizeMb )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setStorageDir( Optional.of( storageDir.getPath() ) );
+        preSeedConfig.setContentCacheEnabled( Optional.of( Boolean.TRUE ) );
+        preSeedConfig.setContentCacheMaxSizeMb( Optional.of( maxSizeMb ) );
+        ArtifactCache cache = new ArtifactCache( preSeedConfig );
+        cache.init();
+        return cache;
+    }
+
+    private File writeArtifact( String path, int size ) throws IOException
+    {
+        File file = new File( storageDir, path );
+        FileUtils.writeByteArrayToFile( file, getBytes( size ) );
+        return file;
+    }
+}
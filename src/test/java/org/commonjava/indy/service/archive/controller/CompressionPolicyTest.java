@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class CompressionPolicyTest
+{
+    @Test
+    public void testStoredExtensions()
+    {
+        CompressionPolicy policy = newPolicy( Optional.empty(), Optional.empty() );
+
+        assertTrue( policy.isStored( "/org/foo/foo/1.0/foo-1.0.jar" ) );
+        assertTrue( policy.isStored( "/foo/-/foo-1.0.0.TGZ" ) );
+        assertFalse( policy.isStored( "/org/foo/foo/1.0/foo-1.0.pom" ) );
+        // a dot in a directory is no extension
+        assertFalse( policy.isStored( "/org/foo.jar/foo/1.0/maven-metadata" ) );
+        assertFalse( policy.isStored( "/1234" ) );
+    }
+
+    @Test
+    public void testLevels()
+    {
+        CompressionPolicy policy = newPolicy( Optional.of( 3 ), Optional.of( "pom=9, xml = 12,json=x" ) );
+
+        assertEquals( 9, policy.levelFor( "/org/foo/foo/1.0/foo-1.0.pom" ) );
+        assertEquals( Deflater.BEST_COMPRESSION, policy.levelFor( "/org/foo/foo/maven-metadata.xml" ) );
+        assertEquals( 3, policy.levelFor( "/org/foo/foo/maven-metadata.json" ) );
+        assertEquals( 3, policy.levelFor( "/1234" ) );
+    }
+
+    private CompressionPolicy newPolicy( Optional<Integer> level, Optional<String> levels )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setArchiveStoredExtensions( Optional.of( "jar,tgz" ) );
+        preSeedConfig.setArchiveCompressionLevel( level );
+        preSeedConfig.setArchiveCompressionLevels( levels );
+        CompressionPolicy policy = new CompressionPolicy( preSeedConfig );
+        policy.init();
+        return policy;
+    }
+}
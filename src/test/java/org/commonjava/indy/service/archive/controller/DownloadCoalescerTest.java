@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.SHARED_IMPORTS;
+import static org.commonjava.indy.service.archive.util.TestUtil.newEntry;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class DownloadCoalescerTest
+{
+    private static final String URL = "http://indy.example.com/api/content/maven/hosted/shared-imports/foo-1.0.jar";
+
+    private static final String PATH = "/foo-1.0.jar";
+
+    private final byte[] content = "foo".getBytes();
+
+    private File dir;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        dir = Files.createTempDirectory( "coalescer" ).toFile();
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        FileUtils.deleteQuietly( dir );
+    }
+
+    @Test
+    public void testFollowersShareTransfer() throws Exception
+    {
+        DownloadCoalescer coalescer = newCoalescer( true );
+        File leader = new File( dir, "build-1/foo-1.0.jar" );
+        File follower = new File( dir, "build-2/foo-1.0.jar" );
+
+        assertFalse( coalescer.follow( URL, entry( content ), leader ).isPresent() );
+        Optional<CompletableFuture<Boolean>> flight = coalescer.follow( URL, entry( content ), follower );
+        assertTrue( flight.isPresent() );
+        assertFalse( flight.get().isDone() );
+
+        leader.getParentFile().mkdirs();
+        Files.write( leader.toPath(), content );
+        coalescer.land( URL, leader );
+
+        assertTrue( flight.get().get() );
+        assertArrayEquals( content, Files.readAllBytes( follower.toPath() ) );
+        assertEquals( 0, coalescer.getInFlight() );
+
+        // the next request leads a transfer of its own
+        assertFalse( coalescer.follow( URL, entry( content ), follower ).isPresent() );
+    }
+
+    @Test
+    public void testFollowersShareFailure() throws Exception
+    {
+        DownloadCoalescer coalescer = newCoalescer( true );
+        assertFalse( coalescer.follow( URL, entry( content ), new File( dir, "build-1/foo-1.0.jar" ) ).isPresent() );
+        File follower = new File( dir, "build-2/foo-1.0.jar" );
+        Optional<CompletableFuture<Boolean>> flight = coalescer.follow( URL, entry( content ), follower );
+
+        coalescer.land( URL, (byte[]) null );
+
+        assertFalse( flight.get().get() );
+        assertFalse( follower.exists() );
+    }
+
+    @Test
+    public void testFollowerVerifiesContent() throws Exception
+    {
+        DownloadCoalescer coalescer = newCoalescer( true );
+        File leader = new File( dir, "build-1/foo-1.0.jar" );
+        // tracked with another checksum by the following build, and with none at all by the last one
+        File mismatched = new File( dir, "build-2/foo-1.0.jar" );
+        File unverified = new File( dir, "build-3/foo-1.0.jar" );
+
+        assertFalse( coalescer.follow( URL, entry( content ), leader ).isPresent() );
+        Optional<CompletableFuture<Boolean>> other = coalescer.follow( URL, entry( "bar".getBytes() ), mismatched );
+        HistoricalEntryDTO untracked = new HistoricalEntryDTO( SHARED_IMPORTS, PATH );
+        Optional<CompletableFuture<Boolean>> any = coalescer.follow( URL, untracked, unverified );
+
+        leader.getParentFile().mkdirs();
+        Files.write( leader.toPath(), content );
+        coalescer.land( URL, leader );
+
+        assertFalse( other.get().get() );
+        assertFalse( mismatched.exists() );
+        assertTrue( any.get().get() );
+        assertArrayEquals( content, Files.readAllBytes( unverified.toPath() ) );
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        DownloadCoalescer coalescer = newCoalescer( false );
+        assertFalse( coalescer.follow( URL, entry( content ), new File( dir, "build-1/foo-1.0.jar" ) ).isPresent() );
+        assertFalse( coalescer.follow( URL, entry( content ), new File( dir, "build-2/foo-1.0.jar" ) ).isPresent() );
+        assertEquals( 0, coalescer.getInFlight() );
+    }
+
+    private HistoricalEntryDTO entry( final byte[] bytes )
+    {
+        return newEntry( SHARED_IMPORTS, PATH, bytes );
+    }
+
+    private DownloadCoalescer newCoalescer( boolean enabled )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setDownloadCoalescingEnabled( Optional.of( enabled ) );
+        DownloadCoalescer coalescer = new DownloadCoalescer( preSeedConfig );
+        coalescer.init();
+        return coalescer;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class HostCircuitBreakerTest
+{
+    private static final String INDY = "http://indy.example.com/api/content/maven/hosted/shared-imports";
+
+    private static final String OTHER = "http://other.example.com/api/content/maven/hosted/shared-imports";
+
+    @Test
+    public void testOpenOnFailureRate()
+    {
+        HostCircuitBreaker breaker = newBreaker( 60 );
+
+        breaker.acquire( INDY + "/org/foo/foo-1.0.jar" ).recordFailure();
+        breaker.acquire( INDY + "/org/foo/foo-1.0.pom" ).recordSuccess();
+        breaker.acquire( INDY + "/org/bar/bar-1.0.jar" ).recordFailure();
+        assertFalse( breaker.isOpen( INDY ) );
+
+        breaker.acquire( INDY + "/org/bar/bar-1.0.pom" ).recordFailure();
+        assertTrue( breaker.isOpen( INDY ) );
+        assertTrue( breaker.acquire( INDY + "/org/baz/baz-1.0.jar" ).getPauseMillis() > 0 );
+
+        // circuits are per host
+        assertFalse( breaker.isOpen( OTHER ) );
+        assertEquals( 0, breaker.acquire( OTHER + "/org/baz/baz-1.0.jar" ).getPauseMillis() );
+    }
+
+    @Test
+    public void testTrialCloses() throws InterruptedException
+    {
+        HostCircuitBreaker breaker = newBreaker( 1 );
+        open( breaker );
+
+        Thread.sleep( 1100 );
+
+        // one trial goes, the others wait for its outcome
+        HostCircuitBreaker.Ticket trial = breaker.acquire( INDY + "/org/foo/foo-1.0.jar" );
+        assertEquals( 0, trial.getPauseMillis() );
+        assertTrue( breaker.acquire( INDY + "/org/bar/bar-1.0.jar" ).getPauseMillis() > 0 );
+
+        trial.recordSuccess();
+        assertFalse( breaker.isOpen( INDY ) );
+        assertEquals( 0, breaker.acquire( INDY + "/org/bar/bar-1.0.jar" ).getPauseMillis() );
+    }
+
+    @Test
+    public void testOnlyTrialDecides() throws InterruptedException
+    {
+        HostCircuitBreaker breaker = newBreaker( 1 );
+        // in flight when the circuit opens
+        HostCircuitBreaker.Ticket stale = breaker.acquire( INDY + "/org/foo/foo-1.0.pom" );
+        open( breaker );
+
+        Thread.sleep( 1100 );
+
+        HostCircuitBreaker.Ticket trial = breaker.acquire( INDY + "/org/foo/foo-1.0.jar" );
+        assertEquals( 0, trial.getPauseMillis() );
+        stale.recordSuccess();
+        assertTrue( breaker.isOpen( INDY ) );
+
+        trial.recordFailure();
+        assertTrue( breaker.isOpen( INDY ) );
+        // recorded once, a second outcome of the same trial is ignored
+        trial.recordSuccess();
+        assertTrue( breaker.isOpen( INDY ) );
+        assertTrue( breaker.acquire( INDY + "/org/bar/bar-1.0.jar" ).getPauseMillis() > 0 );
+    }
+
+    @Test
+    public void testReleasedTrialIsHandedOn() throws InterruptedException
+    {
+        HostCircuitBreaker breaker = newBreaker( 1 );
+        open( breaker );
+
+        Thread.sleep( 1100 );
+
+        // the trial never reached the host, e.g. its part file could not be opened
+        HostCircuitBreaker.Ticket trial = breaker.acquire( INDY + "/org/foo/foo-1.0.jar" );
+        assertEquals( 0, trial.getPauseMillis() );
+        trial.release();
+
+        HostCircuitBreaker.Ticket next = breaker.acquire( INDY + "/org/bar/bar-1.0.jar" );
+        assertEquals( 0, next.getPauseMillis() );
+        trial.recordFailure();
+        next.recordSuccess();
+        assertFalse( breaker.isOpen( INDY ) );
+    }
+
+    private void open( HostCircuitBreaker breaker )
+    {
+        for ( int i = 0; i < 4; i++ )
+        {
+            breaker.acquire( INDY + "/org/foo/foo-1.0.jar" ).recordFailure();
+        }
+        assertTrue( breaker.isOpen( INDY ) );
+    }
+
+    private HostCircuitBreaker newBreaker( int openSeconds )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setCircuitBreakerWindowSize( Optional.of( 4 ) );
+        preSeedConfig.setCircuitBreakerFailureRate( Optional.of( 50 ) );
+        preSeedConfig.setCircuitBreakerOpenSeconds( Optional.of( openSeconds ) );
+        HostCircuitBreaker breaker = new HostCircuitBreaker( preSeedConfig );
+        breaker.init();
+        return breaker;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class MissingArtifactCacheTest
+{
+    private static final String INDY = "http://indy.example.com/api/content/maven/hosted/shared-imports";
+
+    @Test
+    public void testHitsAndExpiry() throws InterruptedException
+    {
+        MissingArtifactCache cache = newCache( 10, 1 );
+        assertFalse( cache.isMissing( INDY + "/org/foo/foo-1.0.jar" ) );
+
+        cache.recordMissing( INDY + "/org/foo/foo-1.0.jar" );
+        assertTrue( cache.isMissing( INDY + "/org/foo/foo-1.0.jar" ) );
+        assertFalse( cache.isMissing( INDY + "/org/foo/foo-1.0.pom" ) );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 2, cache.getMisses() );
+
+        Thread.sleep( 1100 );
+
+        assertFalse( cache.isMissing( INDY + "/org/foo/foo-1.0.jar" ) );
+        assertEquals( 0, cache.getSize() );
+    }
+
+    @Test
+    public void testBoundedAndFlushed()
+    {
+        MissingArtifactCache cache = newCache( 2, 60 );
+        cache.recordMissing( INDY + "/org/foo/foo-1.0.jar" );
+        cache.recordMissing( INDY + "/org/bar/bar-1.0.jar" );
+        // the least recently used url goes first
+        assertTrue( cache.isMissing( INDY + "/org/foo/foo-1.0.jar" ) );
+        cache.recordMissing( INDY + "/org/baz/baz-1.0.jar" );
+
+        assertEquals( 2, cache.getSize() );
+        assertTrue( cache.isMissing( INDY + "/org/foo/foo-1.0.jar" ) );
+        assertFalse( cache.isMissing( INDY + "/org/bar/bar-1.0.jar" ) );
+
+        assertEquals( 2, cache.flush() );
+        assertFalse( cache.isMissing( INDY + "/org/baz/baz-1.0.jar" ) );
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        MissingArtifactCache cache = newCache( 10, 0 );
+        cache.recordMissing( INDY + "/org/foo/foo-1.0.jar" );
+        assertFalse( cache.isMissing( INDY + "/org/foo/foo-1.0.jar" ) );
+        assertEquals( 0, cache.getSize() );
+    }
+
+    private MissingArtifactCache newCache( int maxEntries, long ttlSeconds )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setMissingCacheMaxEntries( Optional.of( maxEntries ) );
+        preSeedConfig.setMissingCacheTtlSeconds( Optional.of( ttlSeconds ) );
+        MissingArtifactCache cache = new MissingArtifactCache( preSeedConfig );
+        cache.init();
+        return cache;
+    }
+}
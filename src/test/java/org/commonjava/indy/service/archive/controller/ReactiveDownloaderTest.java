@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.http.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.commons.codec.digest.DigestUtils.sha1Hex;
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.commonjava.indy.service.archive.util.TestUtil.newEntry;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ReactiveDownloaderTest
+{
+    private static final int SIZE_2M = 1024 * 1024 * 2;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    ReactiveDownloader downloader;
+
+    @Inject
+    HostCircuitBreaker circuitBreaker;
+
+    private HttpServer server;
+
+    private File storageDir;
+
+    private final byte[] content = getBytes( SIZE_2M );
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        storageDir = Files.createTempDirectory( "archive-reactive" ).toFile();
+        server = vertx.createHttpServer().requestHandler( request -> {
+            if ( request.path().endsWith( ".jar" ) )
+            {
+                request.response().endAndForget( Buffer.buffer( content ) );
+            }
+            else
+            {
+                request.response().setStatusCode( 404 ).endAndForget();
+            }
+        } ).listen( 0 ).await().indefinitely();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        server.close().await().indefinitely();
+        FileUtils.deleteDirectory( storageDir );
+    }
+
+    @Test
+    public void testDownload() throws IOException
+    {
+        File target = new File( storageDir, "org/foo/foo-1.0.jar" );
+        String url = String.format( "http://localhost:%s/org/foo/foo-1.0.jar", server.actualPort() );
+
+        assertTrue( downloader.download( url, newEntry( "/org/foo/foo-1.0.jar", sha1Hex( content ) ), target )
+                              .await()
+                              .indefinitely() );
+        assertThat( FileUtils.readFileToByteArray( target ).length, equalTo( SIZE_2M ) );
+        assertFalse( new File( target.getParentFile(), target.getName() + ".part" ).exists() );
+    }
+
+    @Test
+    public void testDownloadNotFound()
+    {
+        File target = new File( storageDir, "org/foo/foo-1.0.pom" );
+        String url = String.format( "http://localhost:%s/org/foo/foo-1.0.pom", server.actualPort() );
+
+        assertFalse( downloader.download( url, newEntry( "/org/foo/foo-1.0.pom", null ), target )
+                               .await()
+                               .indefinitely() );
+        assertFalse( target.exists() );
+        assertFalse( new File( target.getParentFile(), target.getName() + ".part" ).exists() );
+    }
+
+    @Test
+    public void testDownloadChecksumMismatch()
+    {
+        File target = new File( storageDir, "org/foo/foo-2.0.jar" );
+        String url = String.format( "http://localhost:%s/org/foo/foo-2.0.jar", server.actualPort() );
+
+        assertFalse( downloader.download( url, newEntry( "/org/foo/foo-2.0.jar", sha1Hex( "other" ) ), target )
+                               .await()
+                               .indefinitely() );
+        assertFalse( target.exists() );
+        assertFalse( new File( target.getParentFile(), target.getName() + ".part" ).exists() );
+    }
+
+    @Test
+    public void testChecksumMismatchKeepsCircuitClosed()
+    {
+        String url = String.format( "http://localhost:%s/org/foo/foo-3.0.jar", server.actualPort() );
+        HistoricalEntryDTO entry = newEntry( "/org/foo/foo-3.0.jar", sha1Hex( "other" ) );
+
+        // enough rejected transfers to fill the window of the circuit several times over
+        List<Uni<Boolean>> downloads = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            downloads.add( downloader.download( url, entry, new File( storageDir, "org/foo/" + i + "/foo-3.0.jar" ) ) );
+        }
+        List<Boolean> results = Uni.join().all( downloads ).andFailFast().await().indefinitely();
+
+        assertFalse( results.contains( Boolean.TRUE ) );
+        assertFalse( circuitBreaker.isOpen( url ) );
+    }
+
+    @Test
+    public void testOversizeKeepsCircuitClosed()
+    {
+        String url = String.format( "http://localhost:%s/org/foo/foo-4.0.jar", server.actualPort() );
+        HistoricalEntryDTO entry = newEntry( "/org/foo/foo-4.0.jar", null );
+        // the served body is larger than the tracked one
+        entry.setSize( 1024L );
+
+        List<Uni<Boolean>> downloads = new ArrayList<>();
+        List<File> targets = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            File target = new File( storageDir, "org/foo/" + i + "/foo-4.0.jar" );
+            targets.add( target );
+            downloads.add( downloader.download( url, entry, target ) );
+        }
+        List<Boolean> results = Uni.join().all( downloads ).andFailFast().await().indefinitely();
+
+        assertFalse( results.contains( Boolean.TRUE ) );
+        assertFalse( circuitBreaker.isOpen( url ) );
+        for ( File target : targets )
+        {
+            assertFalse( target.exists() );
+            assertFalse( new File( target.getParentFile(), target.getName() + ".part" ).exists() );
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.http.HttpServer;
+import io.vertx.mutiny.core.http.HttpServerRequest;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.controller.profile.VirtualIndyProfile;
+import org.commonjava.indy.service.archive.model.StoreKey;
+import org.commonjava.indy.service.archive.model.StoreType;
+import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.apache.commons.codec.digest.DigestUtils.sha1Hex;
+import static org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile.INDY_PORT;
+import static org.commonjava.indy.service.archive.controller.profile.LocalIndyProfile.STORAGE_DIR;
+import static org.commonjava.indy.service.archive.controller.profile.VirtualIndyProfile.MAX_CONCURRENCY;
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+@TestProfile( VirtualIndyProfile.class )
+public class VirtualDownloadEngineTest
+{
+    private static final String BUILD = "7003";
+
+    private static final String CONTENT_PATH = "/api/content/maven/hosted/shared-imports";
+
+    private static final int ARTIFACTS = 6;
+
+    private static final int SIZE_100K = 100 * 1024;
+
+    // every answer is held back this long, so the downloads overlap as much as they're let to
+    private static final long RESPONSE_DELAY_MILLIS = 200;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    ArchiveController controller;
+
+    @Inject
+    MissingArtifactCache missingArtifactCache;
+
+    private HttpServer server;
+
+    private final byte[] content = getBytes( SIZE_100K );
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        FileUtils.deleteDirectory( new File( STORAGE_DIR ) );
+        missingArtifactCache.flush();
+        server = vertx.createHttpServer().requestHandler( this::serve ).listen( INDY_PORT ).await().indefinitely();
+    }
+
+    @AfterEach
+    public void destroy() throws IOException
+    {
+        server.close().await().indefinitely();
+        FileUtils.deleteDirectory( new File( STORAGE_DIR ) );
+    }
+
+    @Test
+    public void testGenerateWithinPermits() throws IOException
+    {
+        HistoricalEntryDTO[] entries = new HistoricalEntryDTO[ARTIFACTS];
+        for ( int i = 0; i < ARTIFACTS; i++ )
+        {
+            entries[i] = new HistoricalEntryDTO( new StoreKey( "maven", StoreType.hosted, "shared-imports" ),
+                                                 jarPath( i ) );
+            entries[i].setSize( (long) SIZE_100K );
+            entries[i].setSha1( sha1Hex( content ) );
+        }
+
+        assertTrue( controller.doGenerate( new HistoricalContentDTO( BUILD, entries ) ) );
+
+        assertThat( maxInFlight.get(), greaterThan( 0 ) );
+        assertThat( maxInFlight.get(), lessThanOrEqualTo( MAX_CONCURRENCY ) );
+        try (ZipFile zip = new ZipFile( new File( STORAGE_DIR + "/archive", BUILD + ".zip" ) ))
+        {
+            for ( int i = 0; i < ARTIFACTS; i++ )
+            {
+                ZipEntry entry = zip.getEntry( jarPath( i ) );
+                assertNotNull( entry );
+                assertArrayEquals( content, IOUtils.toByteArray( zip.getInputStream( entry ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreadExecutor() throws Exception
+    {
+        ExecutorService executor = controller.newVirtualThreadExecutor( "newVirtualThreadPerTaskExecutor" );
+        try
+        {
+            Thread thread = executor.submit( Thread::currentThread ).get();
+            Method isVirtual;
+            try
+            {
+                isVirtual = Thread.class.getMethod( "isVirtual" );
+            }
+            catch ( final NoSuchMethodException e )
+            {
+                // no virtual threads on this JVM, the download pool took their place
+                assertThat( thread.getName(), equalTo( "Content-Download" ) );
+                return;
+            }
+            assertTrue( (Boolean) isVirtual.invoke( thread ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadExecutorFallback() throws Exception
+    {
+        ExecutorService executor = controller.newVirtualThreadExecutor( "noSuchExecutorFactory" );
+        try
+        {
+            Thread thread = executor.submit( Thread::currentThread ).get();
+            assertThat( thread.getName(), equalTo( "Content-Download" ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private String jarPath( final int i )
+    {
+        return "/org/foo/foo/1." + i + "/foo-1." + i + ".jar";
+    }
+
+    private void serve( final HttpServerRequest request )
+    {
+        if ( !request.path().startsWith( CONTENT_PATH + "/org/foo/foo/" ) )
+        {
+            request.response().setStatusCode( 404 ).endAndForget();
+            return;
+        }
+        maxInFlight.accumulateAndGet( inFlight.incrementAndGet(), Math::max );
+        vertx.setTimer( RESPONSE_DELAY_MILLIS, id -> {
+            inFlight.decrementAndGet();
+            request.response().endAndForget( Buffer.buffer( content ) );
+        } );
+    }
+}
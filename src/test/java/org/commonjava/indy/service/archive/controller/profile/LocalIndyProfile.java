@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller.profile;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Points the service to an Indy stub served by the test itself on {@link #INDY_PORT}.
+ */
+public class LocalIndyProfile
+                implements QuarkusTestProfile
+{
+    public static final int INDY_PORT = 9797;
+
+    public static final String STORAGE_DIR = "target/local-indy";
+
+    @Override
+    public Map<String, String> getConfigOverrides()
+    {
+        Map<String, String> configs = new HashMap<>();
+        configs.put( "pre-seed.main-indy", "http://localhost:" + INDY_PORT );
+        configs.put( "pre-seed.storage-dir", STORAGE_DIR );
+        configs.put( "pre-seed.content-cache-enabled", "false" );
+        configs.put( "pre-seed.download-retry-initial-delay-ms", "10" );
+        configs.put( "pre-seed.download-retry-max-delay-ms", "50" );
+        return configs;
+    }
+}
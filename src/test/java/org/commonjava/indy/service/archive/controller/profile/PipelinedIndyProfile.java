@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller.profile;
+
+import java.util.Map;
+
+/**
+ * Like {@link LocalIndyProfile}, with the artifacts downloaded and zipped in one pass.
+ */
+public class PipelinedIndyProfile
+                extends LocalIndyProfile
+{
+    @Override
+    public Map<String, String> getConfigOverrides()
+    {
+        Map<String, String> configs = super.getConfigOverrides();
+        configs.put( "pre-seed.archive-pipelined", "true" );
+        return configs;
+    }
+}
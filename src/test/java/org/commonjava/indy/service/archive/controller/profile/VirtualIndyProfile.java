@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.controller.profile;
+
+import java.util.Map;
+
+/**
+ * Like {@link LocalIndyProfile}, with a virtual thread per download and at most {@link #MAX_CONCURRENCY} of them
+ * transferring at a time.
+ */
+public class VirtualIndyProfile
+                extends LocalIndyProfile
+{
+    public static final int MAX_CONCURRENCY = 2;
+
+    @Override
+    public Map<String, String> getConfigOverrides()
+    {
+        Map<String, String> configs = super.getConfigOverrides();
+        configs.put( "pre-seed.download-engine", "virtual" );
+        configs.put( "pre-seed.download-max-concurrency", String.valueOf( MAX_CONCURRENCY ) );
+        return configs;
+    }
+}
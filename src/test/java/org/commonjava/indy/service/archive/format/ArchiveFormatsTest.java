@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.format;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.config.PreSeedConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@QuarkusTest
+public class ArchiveFormatsTest
+{
+    private static final String JAR_PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    private static final String POM_PATH = "/org/foo/foo/1.0/foo-1.0.pom";
+
+    private final byte[] jar = getBytes( 100 * 1024 );
+
+    private final byte[] pom = "<project><artifactId>foo</artifactId></project>".getBytes();
+
+    private File archive;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        archive = Files.createTempFile( "archive", ".zip" ).toFile();
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( archive ) ))
+        {
+            zip.putNextEntry( new ZipEntry( JAR_PATH ) );
+            zip.write( jar );
+            zip.putNextEntry( new ZipEntry( POM_PATH ) );
+            zip.write( pom );
+        }
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        archive.delete();
+    }
+
+    @Test
+    public void testNegotiate()
+    {
+        ArchiveFormats formats = newFormats( "tar.zst" );
+
+        assertEquals( TarZstArchiveFormat.NAME, formats.negotiate( null ).get().getName() );
+        assertEquals( TarZstArchiveFormat.NAME, formats.negotiate( "*/*" ).get().getName() );
+        assertEquals( ZipArchiveFormat.NAME, formats.negotiate( "application/zip" ).get().getName() );
+        assertEquals( TarGzArchiveFormat.NAME,
+                      formats.negotiate( "application/zip;q=0.5, application/gzip" ).get().getName() );
+        assertEquals( ZipArchiveFormat.NAME,
+                      formats.negotiate( "text/html, application/octet-stream;q=0.1" ).get().getName() );
+        // nothing names an archive format, zip needs no transcoding
+        assertEquals( ZipArchiveFormat.NAME, formats.negotiate( "text/html" ).get().getName() );
+        assertEquals( ZipArchiveFormat.NAME,
+                      formats.negotiate( "text/html, application/zstd;q=0" ).get().getName() );
+        assertFalse( formats.negotiate( "text/html, application/zip;q=0" ).isPresent() );
+
+        assertEquals( TarGzArchiveFormat.NAME, formats.get( "TAR.GZ" ).get().getName() );
+        assertFalse( formats.get( "rar" ).isPresent() );
+    }
+
+    @Test
+    public void testTarGz() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TarGzArchiveFormat().transcode( archive, out );
+        verifyTar( new GZIPInputStream( new ByteArrayInputStream( out.toByteArray() ) ) );
+    }
+
+    @Test
+    public void testTarZst() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TarZstArchiveFormat().transcode( archive, out );
+        verifyTar( new ZstdCompressorInputStream( new ByteArrayInputStream( out.toByteArray() ) ) );
+    }
+
+    private void verifyTar( final InputStream in ) throws IOException
+    {
+        try (TarArchiveInputStream tar = new TarArchiveInputStream( in ))
+        {
+            TarArchiveEntry entry = tar.getNextTarEntry();
+            // tar names are relative
+            assertEquals( JAR_PATH.substring( 1 ), entry.getName() );
+            assertArrayEquals( jar, IOUtils.toByteArray( tar ) );
+            entry = tar.getNextTarEntry();
+            assertEquals( POM_PATH.substring( 1 ), entry.getName() );
+            assertArrayEquals( pom, IOUtils.toByteArray( tar ) );
+            assertNull( tar.getNextTarEntry() );
+        }
+    }
+
+    private ArchiveFormats newFormats( final String defaultFormat )
+    {
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setArchiveDefaultFormat( Optional.of( defaultFormat ) );
+        preSeedConfig.setArchiveFormats( Optional.of( "zip" ) );
+        ArchiveFormats formats = new ArchiveFormats( preSeedConfig,
+                                                     Arrays.asList( new ZipArchiveFormat(), new TarGzArchiveFormat(),
+                                                                    new TarZstArchiveFormat() ) );
+        formats.init();
+        return formats;
+    }
+}
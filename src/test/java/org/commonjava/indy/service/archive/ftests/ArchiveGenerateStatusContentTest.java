@@ -74,6 +74,6 @@ public class ArchiveGenerateStatusContentTest
                .get( "/api/archive/status/" + SUCCESS_BUILD )
                .then()
                .statusCode( OK.getStatusCode() )
-               .contentType( MediaType.TEXT_PLAIN );
+               .contentType( MediaType.APPLICATION_JSON );
     }
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.commonjava.indy.service.archive.jaxrs.mock.MockTestProfile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ENTRY_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ENTRY_JAR_PATH;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ENTRY_POM;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ENTRY_POM_PATH;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.NOT_FOUND_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.getEntryJar;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+@QuarkusTest
+@TestProfile( MockTestProfile.class )
+public class ArchiveEntryTest
+{
+    @Test
+    public void testStoredEntry()
+    {
+        byte[] jar = getEntryJar();
+        byte[] body = given().when()
+                             .get( "/api/archive/" + ENTRY_BUILD + "/entry" + ENTRY_JAR_PATH )
+                             .then()
+                             .statusCode( OK.getStatusCode() )
+                             .header( "Content-Length", equalTo( String.valueOf( jar.length ) ) )
+                             .header( "Content-Disposition", equalTo( "attachment;filename=\"foo-1.0.jar\"" ) )
+                             .extract()
+                             .asByteArray();
+        assertArrayEquals( jar, body );
+    }
+
+    @Test
+    public void testDeflatedEntry()
+    {
+        byte[] pom = ENTRY_POM.getBytes( StandardCharsets.UTF_8 );
+        byte[] body = given().when()
+                             .get( "/api/archive/" + ENTRY_BUILD + "/entry" + ENTRY_POM_PATH )
+                             .then()
+                             .statusCode( OK.getStatusCode() )
+                             .header( "Content-Length", equalTo( String.valueOf( pom.length ) ) )
+                             .header( "Content-Disposition", equalTo( "attachment;filename=\"foo-1.0.pom\"" ) )
+                             .extract()
+                             .asByteArray();
+        assertArrayEquals( pom, body );
+    }
+
+    @Test
+    public void testEntryNotFound()
+    {
+        given().when()
+               .get( "/api/archive/" + ENTRY_BUILD + "/entry/org/foo/foo/1.0/foo-1.0-sources.jar" )
+               .then()
+               .statusCode( NOT_FOUND.getStatusCode() );
+
+        given().when()
+               .get( "/api/archive/" + NOT_FOUND_BUILD + "/entry" + ENTRY_JAR_PATH )
+               .then()
+               .statusCode( NOT_FOUND.getStatusCode() );
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController;
+import org.commonjava.indy.service.archive.jaxrs.mock.SendFileTestProfile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.NOT_MODIFIED;
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ENTRY_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.EXIST_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.MOCK_CHECKSUM;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Archive downloads served by {@link ArchiveFileRoute}, and the requests it leaves to the resource.
+ */
+@QuarkusTest
+@TestProfile( SendFileTestProfile.class )
+public class ArchiveFileRouteTest
+{
+    @Inject
+    MockArchiveController controller;
+
+    private byte[] archive;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        File file = controller.getArchiveInputStream( ENTRY_BUILD ).get();
+        archive = FileUtils.readFileToByteArray( file );
+    }
+
+    @Test
+    public void testSendFile()
+    {
+        byte[] body = given().when()
+                             .get( "/api/archive/" + ENTRY_BUILD )
+                             .then()
+                             .statusCode( OK.getStatusCode() )
+                             .header( "Content-Length", equalTo( String.valueOf( archive.length ) ) )
+                             .header( "ETag", equalTo( "\"" + MOCK_CHECKSUM + "\"" ) )
+                             .header( "Accept-Ranges", equalTo( "bytes" ) )
+                             .header( "Content-Disposition",
+                                      equalTo( "attachment;filename=" + ENTRY_BUILD + ".zip" ) )
+                             .extract()
+                             .asByteArray();
+        assertArrayEquals( archive, body );
+    }
+
+    @Test
+    public void testSendFileRange()
+    {
+        byte[] body = given().when()
+                             .header( "Range", "bytes=100-199" )
+                             .get( "/api/archive/" + ENTRY_BUILD )
+                             .then()
+                             .statusCode( PARTIAL_CONTENT.getStatusCode() )
+                             .header( "Content-Length", equalTo( "100" ) )
+                             .header( "Content-Range", equalTo( "bytes 100-199/" + archive.length ) )
+                             .extract()
+                             .asByteArray();
+        assertArrayEquals( Arrays.copyOfRange( archive, 100, 200 ), body );
+    }
+
+    @Test
+    public void testConditionalFallsThrough()
+    {
+        given().when()
+               .header( "If-None-Match", "\"" + MOCK_CHECKSUM + "\"" )
+               .get( "/api/archive/" + ENTRY_BUILD )
+               .then()
+               .statusCode( NOT_MODIFIED.getStatusCode() );
+    }
+
+    @Test
+    public void testMultipleRangesFallThrough()
+    {
+        given().when()
+               .header( "Range", "bytes=0-9,-10" )
+               .get( "/api/archive/" + ENTRY_BUILD )
+               .then()
+               .statusCode( PARTIAL_CONTENT.getStatusCode() )
+               .header( "Content-Type", startsWith( "multipart/byteranges; boundary=" ) );
+    }
+
+    @Test
+    public void testPendingVariant()
+    {
+        given().when()
+               .get( "/api/archive/" + EXIST_BUILD + "?format=tar.gz" )
+               .then()
+               .statusCode( SERVICE_UNAVAILABLE.getStatusCode() )
+               .header( "Retry-After", equalTo( "10" ) );
+    }
+
+    @Test
+    public void testReservedSegments()
+    {
+        given().when()
+               .get( "/api/archive/status?buildConfigId=" + EXIST_BUILD )
+               .then()
+               .statusCode( OK.getStatusCode() );
+
+        // the status resource isn't looked up as an archive
+        assertFalse( controller.getLookups().contains( "status" ) );
+    }
+}
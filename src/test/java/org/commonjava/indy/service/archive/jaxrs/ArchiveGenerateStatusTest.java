@@ -23,10 +23,13 @@ import org.junit.jupiter.api.Test;
 import javax.ws.rs.core.MediaType;
 
 import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 import static javax.ws.rs.core.Response.Status.OK;
 import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.EXIST_BUILD;
 import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.NOT_FOUND_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.SIZE_50K;
+import static org.hamcrest.CoreMatchers.equalTo;
 
 @QuarkusTest
 @TestProfile( MockTestProfile.class )
@@ -39,7 +42,12 @@ public class ArchiveGenerateStatusTest
                .get( "/api/archive/status/" + EXIST_BUILD )
                .then()
                .statusCode( OK.getStatusCode() )
-               .contentType( MediaType.TEXT_PLAIN );
+               .contentType( MediaType.APPLICATION_JSON )
+               .body( "status", equalTo( "completed" ) )
+               .body( "entriesTotal", equalTo( 1 ) )
+               .body( "entriesDone", equalTo( 1 ) )
+               .body( "bytesDone", equalTo( SIZE_50K ) )
+               .body( "eta", equalTo( 0 ) );
     }
 
     @Test
@@ -51,4 +59,49 @@ public class ArchiveGenerateStatusTest
                .statusCode( NOT_FOUND.getStatusCode() )
                .contentType( MediaType.TEXT_PLAIN );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBatchStatusByIds()
+    {
+        given().when()
+               .queryParam( "buildConfigId", EXIST_BUILD, NOT_FOUND_BUILD )
+               .get( "/api/archive/status" )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .contentType( MediaType.APPLICATION_JSON )
+               .body( "size()", equalTo( 1 ) )
+               .body( "[0].buildConfigId", equalTo( EXIST_BUILD ) )
+               .body( "[0].status", equalTo( "completed" ) );
+    }
+
+    @Test
+    public void testBatchStatusByPostedIds()
+    {
+        given().when()
+               .body( "[\"" + EXIST_BUILD + "\", \"" + NOT_FOUND_BUILD + "\"]" )
+               .contentType( MediaType.APPLICATION_JSON )
+               .post( "/api/archive/status" )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .contentType( MediaType.APPLICATION_JSON )
+               .body( "size()", equalTo( 1 ) )
+               .body( "[0].buildConfigId", equalTo( EXIST_BUILD ) );
+    }
+
+    @Test
+    public void testBatchStatusByPrefix()
+    {
+        given().when()
+               .queryParam( "prefix", NOT_FOUND_BUILD )
+               .get( "/api/archive/status" )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .body( "size()", equalTo( 0 ) );
+    }
+
+    @Test
+    public void testBatchStatusWithoutIds()
+    {
+        given().when().get( "/api/archive/status" ).then().statusCode( BAD_REQUEST.getStatusCode() );
+    }
+}
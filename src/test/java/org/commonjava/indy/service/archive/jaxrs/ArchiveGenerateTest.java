@@ -58,6 +58,18 @@ public class ArchiveGenerateTest
                .statusCode( anyOf( is( 202 ), is( 200 ) ) );
     }
 
+    @Test
+    public void testForcedGenerate()
+    {
+        given().when()
+               .body( SUCCESS_TRACKED.getBytes() )
+               .contentType( MediaType.APPLICATION_JSON )
+               .queryParam( "force", true )
+               .post( "/api/archive/generate" )
+               .then()
+               .statusCode( ACCEPTED.getStatusCode() );
+    }
+
     @Test
     public void testFailedGenerate()
     {
@@ -23,13 +23,22 @@ import org.junit.jupiter.api.Test;
 import javax.ws.rs.core.MediaType;
 
 import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.NOT_ACCEPTABLE;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.NOT_MODIFIED;
 import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
 import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ERR_BUILD;
 import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.EXIST_BUILD;
 import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.EXIST_LARGE_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.MOCK_CHECKSUM;
 import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.NOT_FOUND_BUILD;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
 
 @QuarkusTest
 @TestProfile( MockTestProfile.class )
@@ -70,4 +79,103 @@ public class ArchiveRetrieveTest
 
         given().when().head( "/api/archive/" + EXIST_LARGE_BUILD ).then().statusCode( OK.getStatusCode() );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testArchiveETag()
+    {
+        given().when()
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .header( "ETag", equalTo( "\"" + MOCK_CHECKSUM + "\"" ) )
+               .header( "Accept-Ranges", equalTo( "bytes" ) )
+               .header( "Content-Length", notNullValue() );
+
+        given().when()
+               .header( "If-None-Match", "\"" + MOCK_CHECKSUM + "\"" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( NOT_MODIFIED.getStatusCode() );
+
+        given().when()
+               .header( "If-None-Match", "\"other\"" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( OK.getStatusCode() );
+    }
+
+    @Test
+    public void testArchiveSingleRange()
+    {
+        given().when()
+               .header( "Range", "bytes=0-99" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( PARTIAL_CONTENT.getStatusCode() )
+               .contentType( MediaType.APPLICATION_OCTET_STREAM )
+               .header( "Content-Length", equalTo( "100" ) )
+               .header( "Content-Range", startsWith( "bytes 0-99/" ) );
+
+        // a stale If-Range gets the whole archive
+        given().when()
+               .header( "Range", "bytes=0-99" )
+               .header( "If-Range", "\"other\"" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( OK.getStatusCode() );
+    }
+
+    @Test
+    public void testArchiveMultipleRanges()
+    {
+        given().when()
+               .header( "Range", "bytes=0-9,-10" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( PARTIAL_CONTENT.getStatusCode() )
+               .header( "Content-Type", startsWith( "multipart/byteranges; boundary=" ) );
+    }
+
+    @Test
+    public void testArchiveRangeNotSatisfiable()
+    {
+        given().when()
+               .header( "Range", "bytes=" + Integer.MAX_VALUE + "-" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode() )
+               .header( "Content-Range", startsWith( "bytes */" ) );
+    }
+
+    @Test
+    public void testArchiveFormat()
+    {
+        given().when()
+               .header( "Accept", "application/zip" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .contentType( MediaType.APPLICATION_OCTET_STREAM )
+               .header( "Content-Disposition", equalTo( "attachment;filename=" + EXIST_BUILD + ".zip" ) )
+               .header( "Vary", equalTo( "Accept" ) );
+
+        given().when()
+               .get( "/api/archive/" + EXIST_BUILD + "?format=rar" )
+               .then()
+               .statusCode( BAD_REQUEST.getStatusCode() );
+
+        // a browser names no archive format and gets the zip
+        given().when()
+               .header( "Accept", "text/html,application/xhtml+xml,application/xml;q=0.9" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .header( "Content-Disposition", equalTo( "attachment;filename=" + EXIST_BUILD + ".zip" ) );
+
+        given().when()
+               .header( "Accept", "text/html, application/zip;q=0" )
+               .get( "/api/archive/" + EXIST_BUILD )
+               .then()
+               .statusCode( NOT_ACCEPTABLE.getStatusCode() );
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.commonjava.indy.service.archive.jaxrs.mock.MockTestProfile;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.NO_CONTENT;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.BUSY_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.ERR_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.EXIST_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.NOT_FOUND_BUILD;
+import static org.commonjava.indy.service.archive.jaxrs.mock.MockArchiveController.SUCCESS_BUILD;
+
+@QuarkusTest
+@TestProfile( MockTestProfile.class )
+public class ArchiveRetryTest
+{
+    @Test
+    public void testRetryFailedEntries()
+    {
+        given().when().post( "/api/archive/" + SUCCESS_BUILD + "/retry" ).then().statusCode( ACCEPTED.getStatusCode() );
+    }
+
+    @Test
+    public void testNothingToRetry()
+    {
+        given().when().post( "/api/archive/" + EXIST_BUILD + "/retry" ).then().statusCode( NO_CONTENT.getStatusCode() );
+    }
+
+    @Test
+    public void testRetryNotFound()
+    {
+        given().when()
+               .post( "/api/archive/" + NOT_FOUND_BUILD + "/retry" )
+               .then()
+               .statusCode( NOT_FOUND.getStatusCode() );
+
+        given().when()
+               .get( "/api/archive/" + NOT_FOUND_BUILD + "/result" )
+               .then()
+               .statusCode( NOT_FOUND.getStatusCode() );
+    }
+
+    @Test
+    public void testRetryWhileGenerating()
+    {
+        given().when()
+               .post( "/api/archive/" + BUSY_BUILD + "/retry" )
+               .then()
+               .statusCode( CONFLICT.getStatusCode() );
+    }
+
+    @Test
+    public void testRetryErr()
+    {
+        given().when()
+               .post( "/api/archive/" + ERR_BUILD + "/retry" )
+               .then()
+               .statusCode( INTERNAL_SERVER_ERROR.getStatusCode() );
+    }
+}
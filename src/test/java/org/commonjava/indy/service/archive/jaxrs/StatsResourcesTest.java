@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.commonjava.indy.service.archive.jaxrs.mock.MockTestProfile;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.core.MediaType;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+@QuarkusTest
+@TestProfile( MockTestProfile.class )
+public class StatsResourcesTest
+{
+    @Test
+    public void testArchiveJobStats()
+    {
+        given().when()
+               .get( "/api/stats/archive-jobs" )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .contentType( MediaType.APPLICATION_JSON )
+               .body( "running", notNullValue() )
+               .body( "queued", notNullValue() )
+               .body( "maxConcurrent", equalTo( 2 ) )
+               .body( "queueSize", equalTo( 100 ) );
+    }
+
+    @Test
+    public void testMissingArtifacts()
+    {
+        given().when()
+               .get( "/api/stats/missing-artifacts" )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .contentType( MediaType.APPLICATION_JSON )
+               .body( "size", notNullValue() )
+               .body( "hits", notNullValue() )
+               .body( "misses", notNullValue() )
+               .body( "maxEntries", equalTo( 10000 ) );
+
+        given().when()
+               .delete( "/api/admin/missing-artifacts" )
+               .then()
+               .statusCode( OK.getStatusCode() )
+               .contentType( MediaType.APPLICATION_JSON )
+               .body( "flushed", notNullValue() );
+    }
+}
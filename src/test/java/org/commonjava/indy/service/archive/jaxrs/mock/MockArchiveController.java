@@ -17,14 +17,30 @@ package org.commonjava.indy.service.archive.jaxrs.mock;
 
 import org.apache.commons.io.FileUtils;
 import org.commonjava.indy.service.archive.controller.ArchiveController;
+import org.commonjava.indy.service.archive.controller.ArchiveJobConflictException;
+import org.commonjava.indy.service.archive.controller.ArchiveVariantPendingException;
+import org.commonjava.indy.service.archive.format.ArchiveFormat;
+import org.commonjava.indy.service.archive.format.ZipArchiveFormat;
+import org.commonjava.indy.service.archive.model.ArchiveJob;
+import org.commonjava.indy.service.archive.model.ArchiveMetadata;
+import org.commonjava.indy.service.archive.model.ArchiveProgress;
 import org.commonjava.indy.service.archive.model.ArchiveStatus;
+import org.commonjava.indy.service.archive.model.dto.ArchiveStatusDTO;
 import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
 
@@ -47,10 +63,27 @@ public class MockArchiveController
 
     public static final String SUCCESS_BUILD = "5555";
 
+    public static final String BUSY_BUILD = "6666";
+
+    public static final String ENTRY_BUILD = "7777";
+
+    public static final String ENTRY_BUILD_ARCHIVE = "7777.zip";
+
+    public static final String ENTRY_JAR_PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    public static final String ENTRY_POM_PATH = "/org/foo/foo/1.0/foo-1.0.pom";
+
+    public static final String ENTRY_POM = "<project><groupId>org.foo</groupId><artifactId>foo</artifactId></project>";
+
+    public static final String MOCK_CHECKSUM = "5ba93c9db0cff93f52b521d7420e43f6eda2784f";
+
     public static final int SIZE_50K = 1024 * 50; // 50K
 
     public static final int SIZE_200M = 1024 * 1024 * 200; // 200M
 
+    // build config ids looked up for a download in some format
+    private final Set<String> lookups = ConcurrentHashMap.newKeySet();
+
     @Override
     protected Boolean doGenerate( HistoricalContentDTO content )
     {
@@ -71,6 +104,13 @@ public class MockArchiveController
                 File large = new File( "data/archive", EXIST_LARGE_BUILD_ARCHIVE );
                 FileUtils.write( large, new String( getBytes( SIZE_200M ) ), "UTF-8" );
                 return Optional.of( large );
+            case ENTRY_BUILD:
+                File archive = new File( "data/archive", ENTRY_BUILD_ARCHIVE );
+                if ( !archive.exists() )
+                {
+                    writeEntryArchive( archive );
+                }
+                return Optional.of( archive );
             case ERR_BUILD:
                 throw new IOException();
             default:
@@ -78,6 +118,66 @@ public class MockArchiveController
         }
     }
 
+    /**
+     * The content of the stored jar entry of {@link #ENTRY_BUILD}.
+     */
+    public static byte[] getEntryJar()
+    {
+        byte[] jar = new byte[SIZE_50K];
+        new Random( 7777 ).nextBytes( jar );
+        return jar;
+    }
+
+    private void writeEntryArchive( final File archive ) throws IOException
+    {
+        archive.getParentFile().mkdirs();
+        byte[] jar = getEntryJar();
+        CRC32 crc = new CRC32();
+        crc.update( jar );
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( archive ) ))
+        {
+            ZipEntry stored = new ZipEntry( ENTRY_JAR_PATH );
+            stored.setMethod( ZipEntry.STORED );
+            stored.setSize( jar.length );
+            stored.setCompressedSize( jar.length );
+            stored.setCrc( crc.getValue() );
+            zip.putNextEntry( stored );
+            zip.write( jar );
+            zip.closeEntry();
+
+            zip.putNextEntry( new ZipEntry( ENTRY_POM_PATH ) );
+            zip.write( ENTRY_POM.getBytes( StandardCharsets.UTF_8 ) );
+            zip.closeEntry();
+        }
+    }
+
+    @Override
+    public Optional<ArchiveMetadata> getArchive( String buildConfigId ) throws IOException
+    {
+        return getArchiveInputStream( buildConfigId ).map(
+                        file -> new ArchiveMetadata( buildConfigId, file, file.length(), file.lastModified(),
+                                                     MOCK_CHECKSUM ) );
+    }
+
+    /**
+     * {@link #EXIST_BUILD} is being transcoded to any format but zip.
+     */
+    @Override
+    public Optional<ArchiveMetadata> getArchive( String buildConfigId, ArchiveFormat format ) throws IOException
+    {
+        lookups.add( buildConfigId );
+        if ( buildConfigId.equals( EXIST_BUILD ) && !format.getName().equals( ZipArchiveFormat.NAME ) )
+        {
+            throw new ArchiveVariantPendingException( buildConfigId, format.getName() );
+        }
+        return super.getArchive( buildConfigId, format );
+    }
+
+    public Set<String> getLookups()
+    {
+        return lookups;
+    }
+
     @Override
     public void deleteArchive( String buildConfigId ) throws IOException
     {
@@ -89,6 +189,24 @@ public class MockArchiveController
         throw new IOException();
     }
 
+    @Override
+    public Optional<Integer> retryFailed( String buildConfigId ) throws IOException
+    {
+        switch ( buildConfigId )
+        {
+            case EXIST_BUILD:
+                return Optional.of( 0 );
+            case SUCCESS_BUILD:
+                return Optional.of( 1 );
+            case ERR_BUILD:
+                throw new IOException();
+            case BUSY_BUILD:
+                throw new ArchiveJobConflictException( buildConfigId );
+            default:
+                return Optional.empty();
+        }
+    }
+
     @Override
     public boolean statusExists( final String buildConfigId )
     {
@@ -100,4 +218,21 @@ public class MockArchiveController
     {
         return buildConfigId.equals( EXIST_BUILD ) ? ArchiveStatus.completed.getArchiveStatus() : null;
     }
+
+    @Override
+    public Optional<ArchiveStatusDTO> getJobStatus( String buildConfigId )
+    {
+        if ( !buildConfigId.equals( EXIST_BUILD ) )
+        {
+            return Optional.empty();
+        }
+        ArchiveProgress progress = new ArchiveProgress();
+        progress.start( 1, SIZE_50K );
+        progress.downloaded( SIZE_50K );
+        progress.archived();
+        progress.finish();
+        ArchiveJob job = new ArchiveJob( buildConfigId ).transition( ArchiveStatus.completed,
+                                                                     System.currentTimeMillis() );
+        return Optional.of( new ArchiveStatusDTO( job, progress ) );
+    }
 }
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/service-parent)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.jaxrs.mock;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Like {@link MockTestProfile}, with the archive downloads served by sendFile.
+ */
+public class SendFileTestProfile
+                extends MockTestProfile
+{
+    @Override
+    public Map<String, String> getConfigOverrides()
+    {
+        return Collections.singletonMap( "pre-seed.archive-send-file", "true" );
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@QuarkusTest
+public class ByteRangeTest
+{
+    private static final long LENGTH = 1000;
+
+    @Test
+    public void testParseRanges()
+    {
+        assertEquals( Optional.of( Collections.singletonList( new ByteRange( 0, 99 ) ) ),
+                      ByteRange.parse( "bytes=0-99", LENGTH ) );
+
+        List<ByteRange> expected = Arrays.asList( new ByteRange( 500, 999 ), new ByteRange( 900, 999 ),
+                                                  new ByteRange( 990, 999 ) );
+        assertEquals( Optional.of( expected ), ByteRange.parse( "bytes=500-, 900-5000,-10", LENGTH ) );
+
+        // a suffix longer than the file is the whole file
+        assertEquals( Optional.of( Collections.singletonList( new ByteRange( 0, 999 ) ) ),
+                      ByteRange.parse( "bytes=-5000", LENGTH ) );
+    }
+
+    @Test
+    public void testUnsatisfiableRanges()
+    {
+        assertEquals( Optional.of( Collections.emptyList() ), ByteRange.parse( "bytes=1000-", LENGTH ) );
+        assertEquals( Optional.of( Collections.emptyList() ), ByteRange.parse( "bytes=-0", LENGTH ) );
+    }
+
+    @Test
+    public void testIgnoredRanges()
+    {
+        assertFalse( ByteRange.parse( null, LENGTH ).isPresent() );
+        assertFalse( ByteRange.parse( "items=0-99", LENGTH ).isPresent() );
+        assertFalse( ByteRange.parse( "bytes=99-0", LENGTH ).isPresent() );
+        assertFalse( ByteRange.parse( "bytes=abc", LENGTH ).isPresent() );
+        assertFalse( ByteRange.parse( "bytes=-", LENGTH ).isPresent() );
+    }
+}
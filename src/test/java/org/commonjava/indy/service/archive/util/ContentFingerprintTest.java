@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.newEntry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@QuarkusTest
+public class ContentFingerprintTest
+{
+    @Test
+    public void testOrderAndUrlsDontMatter()
+    {
+        HistoricalEntryDTO core = newEntry( "/org/apache/maven/maven-core/3.0/maven-core-3.0.jar", "73728ce3" );
+        HistoricalEntryDTO model = newEntry( "/org/apache/maven/maven-model/3.0/maven-model-3.0.jar", "2a7a1d5e" );
+        String fingerprint = ContentFingerprint.of( new HistoricalEntryDTO[] { core, model } );
+
+        HistoricalEntryDTO relocated = newEntry( "/org/apache/maven/maven-core/3.0/maven-core-3.0.jar", "73728CE3" );
+        relocated.setLocalUrl( "http://indy.example.com/api/content/maven/hosted/shared-imports" );
+        relocated.setSize( 527040L );
+        assertEquals( fingerprint, ContentFingerprint.of( new HistoricalEntryDTO[] { model, relocated, core } ) );
+    }
+
+    @Test
+    public void testChangedEntrySetChangesFingerprint()
+    {
+        HistoricalEntryDTO core = newEntry( "/org/apache/maven/maven-core/3.0/maven-core-3.0.jar", "73728ce3" );
+        HistoricalEntryDTO model = newEntry( "/org/apache/maven/maven-model/3.0/maven-model-3.0.jar", "2a7a1d5e" );
+        String fingerprint = ContentFingerprint.of( new HistoricalEntryDTO[] { core, model } );
+
+        assertNotEquals( fingerprint, ContentFingerprint.of( new HistoricalEntryDTO[] { core } ) );
+        HistoricalEntryDTO rebuilt = newEntry( "/org/apache/maven/maven-model/3.0/maven-model-3.0.jar", "5f1e9c07" );
+        assertNotEquals( fingerprint, ContentFingerprint.of( new HistoricalEntryDTO[] { core, rebuilt } ) );
+        HistoricalEntryDTO moved = newEntry( "/org/apache/maven/maven-model/3.0.1/maven-model-3.0.jar", "2a7a1d5e" );
+        assertNotEquals( fingerprint, ContentFingerprint.of( new HistoricalEntryDTO[] { core, moved } ) );
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.service.archive.util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkus.test.junit.QuarkusTest;
 import org.commonjava.indy.service.archive.config.PreSeedConfig;
 import org.commonjava.indy.service.archive.model.StoreKey;
@@ -23,6 +24,12 @@ import org.commonjava.indy.service.archive.model.dto.HistoricalContentDTO;
 import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
 import org.junit.jupiter.api.Test;
 
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +43,8 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 @QuarkusTest
 public class HistoricalContentListReaderTest
 {
+    @Inject
+    ObjectMapper objectMapper;
 
     private final String MAIN_INDY = "indy.main.server";
 
@@ -104,4 +113,43 @@ public class HistoricalContentListReaderTest
         //npm package metadata will be ignored
         assertNull( paths.get( storePath + NPM_METADATA_PATH ) );
     }
+
+    @Test
+    public void testSpool() throws IOException
+    {
+        // the id comes last and unknown fields are skipped
+        String json = "{\"downloads\":[{\"storeKey\":\"maven:hosted:test\",\"path\":\"" + MAVEN_PATH
+                        + "\",\"size\":10},{\"storeKey\":\"maven:hosted:test\",\"path\":\"" + MAVEN_METADATA_PATH
+                        + "\"}],\"extra\":{\"a\":[1,2]},\"buildConfigId\":\"8888\"}";
+
+        PreSeedConfig preSeedConfig = new PreSeedConfig();
+        preSeedConfig.setMainIndy( Optional.of( MAIN_INDY ) );
+        HistoricalContentListReader reader = new HistoricalContentListReader( preSeedConfig, objectMapper );
+
+        File spool = Files.createTempFile( "tracked", ".json" ).toFile();
+        try
+        {
+            HistoricalContentDTO content =
+                            reader.spool( new ByteArrayInputStream( json.getBytes( StandardCharsets.UTF_8 ) ), spool );
+            assertThat( content.getBuildConfigId(), equalTo( "8888" ) );
+            assertNull( content.getDownloads() );
+
+            Map<String, HistoricalEntryDTO> entries = reader.readEntries( content.getSpool() );
+            assertThat( entries.size(), equalTo( 1 ) );
+            HistoricalEntryDTO entry = entries.values().iterator().next();
+            assertThat( entry.getPath(), equalTo( MAVEN_PATH ) );
+            assertThat( entry.getSize(), equalTo( 10L ) );
+
+            // the spool is tracked content again
+            HistoricalContentDTO spooled = objectMapper.readValue( spool, HistoricalContentDTO.class );
+            assertThat( spooled.getBuildConfigId(), equalTo( "8888" ) );
+            assertThat( spooled.getDownloads().length, equalTo( 2 ) );
+
+            assertNull( reader.spool( new ByteArrayInputStream( new byte[0] ), spool ) );
+        }
+        finally
+        {
+            spool.delete();
+        }
+    }
 }
@@ -15,10 +15,18 @@
  */
 package org.commonjava.indy.service.archive.util;
 
+import org.commonjava.indy.service.archive.model.StoreKey;
+import org.commonjava.indy.service.archive.model.StoreType;
+import org.commonjava.indy.service.archive.model.dto.HistoricalEntryDTO;
+
 import java.util.Random;
 
+import static org.apache.commons.codec.digest.DigestUtils.sha1Hex;
+
 public class TestUtil
 {
+    public static final StoreKey SHARED_IMPORTS = new StoreKey( "maven", StoreType.hosted, "shared-imports" );
+
     public static byte[] getBytes( int size )
     {
         byte[] bytes = new byte[size];
@@ -26,4 +34,25 @@ public class TestUtil
         rd.nextBytes( bytes );
         return bytes;
     }
+
+    public static HistoricalEntryDTO newEntry( String path, String sha1 )
+    {
+        HistoricalEntryDTO entry = new HistoricalEntryDTO( SHARED_IMPORTS, path );
+        entry.setSha1( sha1 );
+        return entry;
+    }
+
+    /**
+     * An entry expecting the size and sha1 of the content, or none if it's null.
+     */
+    public static HistoricalEntryDTO newEntry( StoreKey storeKey, String path, byte[] bytes )
+    {
+        HistoricalEntryDTO entry = new HistoricalEntryDTO( storeKey, path );
+        if ( bytes != null )
+        {
+            entry.setSize( (long) bytes.length );
+            entry.setSha1( sha1Hex( bytes ) );
+        }
+        return entry;
+    }
 }
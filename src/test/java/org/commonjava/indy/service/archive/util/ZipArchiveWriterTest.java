@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ZipArchiveWriterTest
+{
+    private static final String JAR_PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    private static final String POM_PATH = "/org/foo/foo/1.0/foo-1.0.pom";
+
+    private final byte[] jar = getBytes( 100 * 1024 );
+
+    private final byte[] pom = "<project><artifactId>foo</artifactId></project>".getBytes();
+
+    private File archive;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        archive = Files.createTempFile( "archive", ".zip" ).toFile();
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        archive.delete();
+    }
+
+    @Test
+    public void testWriteRawEntries() throws IOException
+    {
+        byte[] deflated = deflate( pom );
+        try (ZipArchiveWriter zip = new ZipArchiveWriter( new FileOutputStream( archive ) ))
+        {
+            zip.putRawEntry( JAR_PATH, ZipEntry.STORED, crc( jar ), jar.length, jar.length,
+                             new ByteArrayInputStream( jar ) );
+            zip.putRawEntry( POM_PATH, ZipEntry.DEFLATED, crc( pom ), deflated.length, pom.length,
+                             new ByteArrayInputStream( deflated ) );
+        }
+
+        try (ZipFile zip = new ZipFile( archive ))
+        {
+            assertEquals( 2, zip.size() );
+            assertEquals( ZipEntry.STORED, zip.getEntry( JAR_PATH ).getMethod() );
+            assertArrayEquals( jar, IOUtils.toByteArray( zip.getInputStream( zip.getEntry( JAR_PATH ) ) ) );
+            assertEquals( ZipEntry.DEFLATED, zip.getEntry( POM_PATH ).getMethod() );
+            assertArrayEquals( pom, IOUtils.toByteArray( zip.getInputStream( zip.getEntry( POM_PATH ) ) ) );
+        }
+    }
+
+    @Test
+    public void testRejectShortContent() throws IOException
+    {
+        try (ZipArchiveWriter zip = new ZipArchiveWriter( new FileOutputStream( archive ) ))
+        {
+            assertThrows( ZipException.class,
+                          () -> zip.putRawEntry( JAR_PATH, ZipEntry.STORED, crc( jar ), jar.length + 1, jar.length + 1,
+                                                 new ByteArrayInputStream( jar ) ) );
+        }
+    }
+
+    @Test
+    public void testAppendEntries() throws IOException
+    {
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( archive ) ))
+        {
+            zip.putNextEntry( new ZipEntry( POM_PATH ) );
+            zip.write( pom );
+            zip.closeEntry();
+        }
+
+        File appended = Files.createTempFile( "appended", ".zip" ).toFile();
+        try
+        {
+            try (ZipArchiveWriter zip = ZipArchiveWriter.append( archive, new FileOutputStream( appended ) ))
+            {
+                assertTrue( zip.contains( POM_PATH ) );
+                assertFalse( zip.contains( JAR_PATH ) );
+                zip.putRawEntry( JAR_PATH, ZipEntry.STORED, crc( jar ), jar.length, jar.length,
+                                 new ByteArrayInputStream( jar ) );
+            }
+
+            try (ZipFile zip = new ZipFile( appended ))
+            {
+                assertEquals( 2, zip.size() );
+                assertArrayEquals( pom, IOUtils.toByteArray( zip.getInputStream( zip.getEntry( POM_PATH ) ) ) );
+                assertArrayEquals( jar, IOUtils.toByteArray( zip.getInputStream( zip.getEntry( JAR_PATH ) ) ) );
+            }
+
+            // the central directory agrees with the local headers, the copied ones included
+            List<ArchiveEntry> entries = new ArrayList<>();
+            ZipCentralDirectory.read( appended, entries::add );
+            try (FileChannel channel = FileChannel.open( appended.toPath(), StandardOpenOption.READ ))
+            {
+                for ( ArchiveEntry entry : entries )
+                {
+                    ByteBuffer local = ByteBuffer.allocate( 30 ).order( ByteOrder.LITTLE_ENDIAN );
+                    channel.read( local, entry.getHeaderOffset() );
+                    assertEquals( local.getShort( 6 ) & 0xFFFF, entry.getFlags() );
+                    assertEquals( local.getInt( 10 ), entry.getDosTime() );
+                }
+            }
+        }
+        finally
+        {
+            appended.delete();
+        }
+    }
+
+    @Test
+    public void testCopyEntries() throws IOException
+    {
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( archive ) ))
+        {
+            zip.putNextEntry( new ZipEntry( POM_PATH ) );
+            zip.write( pom );
+            zip.closeEntry();
+            zip.putNextEntry( new ZipEntry( JAR_PATH ) );
+            zip.write( jar );
+            zip.closeEntry();
+        }
+        List<ArchiveEntry> entries = new ArrayList<>();
+        ZipCentralDirectory.read( archive, entries::add );
+
+        // the jar is dropped, the pom copied as it is and a new entry added after it
+        String added = "/org/foo/foo/1.1/foo-1.1.pom";
+        File copy = Files.createTempFile( "copy", ".zip" ).toFile();
+        try
+        {
+            try (FileChannel source = FileChannel.open( archive.toPath(), StandardOpenOption.READ );
+                 ZipArchiveWriter zip = new ZipArchiveWriter( new FileOutputStream( copy ) ))
+            {
+                zip.copyEntry( source, entries.get( 0 ) );
+                zip.putRawEntry( added, ZipEntry.STORED, crc( pom ), pom.length, pom.length,
+                                 new ByteArrayInputStream( pom ) );
+            }
+
+            try (ZipFile zip = new ZipFile( copy ))
+            {
+                assertEquals( 2, zip.size() );
+                assertEquals( ZipEntry.DEFLATED, zip.getEntry( POM_PATH ).getMethod() );
+                assertArrayEquals( pom, IOUtils.toByteArray( zip.getInputStream( zip.getEntry( POM_PATH ) ) ) );
+                assertArrayEquals( pom, IOUtils.toByteArray( zip.getInputStream( zip.getEntry( added ) ) ) );
+            }
+        }
+        finally
+        {
+            copy.delete();
+        }
+    }
+
+    private static long crc( final byte[] content )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( content );
+        return crc.getValue();
+    }
+
+    private static byte[] deflate( final byte[] content ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream( out, deflater ))
+        {
+            deflate.write( content );
+        }
+        finally
+        {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2011-2021 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.archive.util;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.commonjava.indy.service.archive.model.ArchiveEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.commonjava.indy.service.archive.util.TestUtil.getBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ZipCentralDirectoryTest
+{
+    private static final String JAR_PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    private static final String POM_PATH = "/org/foo/foo/1.0/foo-1.0.pom";
+
+    private final byte[] jar = getBytes( 100 * 1024 );
+
+    private final byte[] pom = "<project><artifactId>foo</artifactId></project>".getBytes();
+
+    private File archive;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        archive = Files.createTempFile( "archive", ".zip" ).toFile();
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( archive ) ))
+        {
+            ZipEntry stored = new ZipEntry( JAR_PATH );
+            stored.setMethod( ZipEntry.STORED );
+            stored.setSize( jar.length );
+            CRC32 crc = new CRC32();
+            crc.update( jar );
+            stored.setCrc( crc.getValue() );
+            zip.putNextEntry( stored );
+            zip.write( jar );
+            zip.closeEntry();
+
+            zip.putNextEntry( new ZipEntry( POM_PATH ) );
+            zip.write( pom );
+            zip.closeEntry();
+        }
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        archive.delete();
+    }
+
+    @Test
+    public void testReadEntries() throws IOException
+    {
+        Map<String, ArchiveEntry> entries = new LinkedHashMap<>();
+        long total = ZipCentralDirectory.read( archive, entry -> entries.put( entry.getName(), entry ) );
+
+        assertEquals( 2, total );
+        assertTrue( entries.get( JAR_PATH ).isStored() );
+        assertEquals( jar.length, entries.get( JAR_PATH ).getSize() );
+        assertFalse( entries.get( POM_PATH ).isStored() );
+        assertEquals( pom.length, entries.get( POM_PATH ).getSize() );
+
+        assertArrayEquals( jar, readEntry( entries.get( JAR_PATH ) ) );
+        assertArrayEquals( pom, readEntry( entries.get( POM_PATH ) ) );
+    }
+
+    private byte[] readEntry( final ArchiveEntry entry ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ZipEntryStreamingOutput( FileChannel.open( archive.toPath() ), entry ).write( out );
+        return out.toByteArray();
+    }
+}